@@ -0,0 +1,91 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * This class converts a barcode {@link BitMatrix} directly into the encoded
+ * data of a 1-bit gray PDF image (FlateDecode), without an intermediate PNG.
+ * <p>
+ * The conversion is done once, images for several documents (e.g. page and
+ * visual signature template) are created from the same encoded data and don't
+ * need any decoding.
+ */
+public class BitMatrixImage implements CreateVisibleSignatureMy.SignatureImage {
+
+	private final int width;
+
+	private final int height;
+
+	private final byte[] data;
+
+	/**
+	 * @param matrix barcode, set bits are black
+	 */
+	public BitMatrixImage(final BitMatrix matrix) {
+		this.width = matrix.getWidth();
+		this.height = matrix.getHeight();
+
+		// DeviceGray with 1 bit per component: 0 is black, 1 is white, rows start
+		// at a byte boundary
+		final var rowBytes = (this.width + 7) / 8;
+		final var row = new byte[rowBytes];
+		final var bos = new ByteArrayOutputStream(rowBytes * this.height / 4);
+		final var deflater = new Deflater(Deflater.BEST_SPEED);
+		try (var dos = new DeflaterOutputStream(bos, deflater)) {
+			for (var y = 0; y < this.height; ++y) {
+				for (var i = 0; i < rowBytes; ++i) {
+					var b = 0;
+					for (var bit = 0; bit < 8; ++bit) {
+						final var x = i * 8 + bit;
+						if (x >= this.width || !matrix.get(x, y)) {
+							b |= 0x80 >> bit;
+						}
+					}
+					row[i] = (byte) b;
+				}
+				dos.write(row);
+			}
+		} catch (final IOException e) {
+			// not possible for in-memory streams
+			throw new UncheckedIOException(e);
+		} finally {
+			deflater.end();
+		}
+		this.data = bos.toByteArray();
+	}
+
+	public PDImageXObject createImage(final PDDocument doc) throws IOException {
+		return new PDImageXObject(doc, new ByteArrayInputStream(this.data), COSName.FLATE_DECODE, this.width,
+				this.height, 1, PDDeviceGray.INSTANCE);
+	}
+
+	@Override
+	public void draw(final PDDocument doc, final PDPageContentStream cs, final float width) throws IOException {
+		CreateVisibleSignatureMy.SignatureImage.drawScaled(cs, createImage(doc), width);
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+}
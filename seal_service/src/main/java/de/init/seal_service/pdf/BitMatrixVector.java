@@ -0,0 +1,69 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * This class draws a barcode as vector graphic: a white background and the
+ * black modules as filled path rectangles, so it stays crisp at any zoom and
+ * print resolution and needs no image XObject.
+ */
+public class BitMatrixVector implements CreateVisibleSignatureMy.SignatureImage {
+
+	private final int width;
+
+	private final int height;
+
+	private final List<Rectangle> rectangles;
+
+	/**
+	 * @param width      barcode width (pixels)
+	 * @param height     barcode height (pixels)
+	 * @param rectangles merged black modules, y grows downwards
+	 */
+	public BitMatrixVector(final int width, final int height, final List<Rectangle> rectangles) {
+		this.width = width;
+		this.height = height;
+		this.rectangles = List.copyOf(rectangles);
+	}
+
+	@Override
+	public void draw(final PDDocument doc, final PDPageContentStream cs, final float width) throws IOException {
+		// scale like an image of the barcode size, y axis downwards like the matrix
+		final var scale = width / this.width;
+		cs.transform(new Matrix(scale, 0, 0, -scale, 0, this.height * scale));
+
+		// white quiet zone and modules, the area may have a background
+		cs.setNonStrokingColor(Color.white);
+		cs.addRect(0, 0, this.width, this.height);
+		cs.fill();
+
+		cs.setNonStrokingColor(Color.black);
+		for (final Rectangle rectangle : this.rectangles) {
+			cs.addRect(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+		}
+		cs.fill();
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	public List<Rectangle> getRectangles() {
+		return this.rectangles;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+}
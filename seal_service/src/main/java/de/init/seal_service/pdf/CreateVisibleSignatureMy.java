@@ -32,7 +32,6 @@ import java.util.Calendar;
 
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -47,6 +46,7 @@ import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
 import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
 import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
@@ -55,14 +55,50 @@ import org.apache.pdfbox.util.Matrix;
 import de.init.seal_service.pdf.pdfbox_signature.CreateSignatureBase;
 import de.init.seal_service.pdf.pdfbox_signature.CreateVisibleSignature2;
 import de.init.seal_service.pdf.pdfbox_signature.SigUtils;
+import de.init.seal_service.pdf.pdfbox_signature.ValidationTimeStamp;
 
 /**
  * This is an adapted {@link CreateVisibleSignature2}, that prevents file using,
  * allows instance reusing and makes some visual adaptions.
+ * <p>
+ * The instance only holds the immutable key material and certificate chain.
+ * All per-request state (signature options, visual template, TSA) lives in the
+ * scope of {@link #signPDF}, so a single instance can seal concurrently.
  */
 public class CreateVisibleSignatureMy extends CreateSignatureBase {
 
-	private SignatureOptions signatureOptions;
+	/**
+	 * Signature image, drawn into every document it is added to (page and visual
+	 * signature template).
+	 */
+	@FunctionalInterface
+	public interface SignatureImage {
+
+		/**
+		 * Draws an image XObject with its lower left corner at the origin.
+		 *
+		 * @param cs    content stream
+		 * @param img   image
+		 * @param width target width, the height is scaled proportionally
+		 */
+		static void drawScaled(final PDPageContentStream cs, final PDImageXObject img, final float width)
+				throws IOException {
+			final var scale = width / img.getWidth();
+			cs.transform(Matrix.getScaleInstance(scale, scale));
+			cs.drawImage(img, 0, 0);
+		}
+
+		/**
+		 * Draws the image with its lower left corner at the origin of the current
+		 * graphics state, which is saved and restored by the caller.
+		 *
+		 * @param doc   target document
+		 * @param cs    content stream of the document
+		 * @param width target width, the height is scaled proportionally
+		 */
+		void draw(PDDocument doc, PDPageContentStream cs, float width) throws IOException;
+
+	}
 
 	private boolean lateExternalSigning = false;
 
@@ -99,7 +135,7 @@ public class CreateVisibleSignatureMy extends CreateSignatureBase {
 	 * @throws IOException problems...
 	 */
 	private void addImageAndTextToPage(final PDDocument doc, final int pageNum, final PDRectangle rect,
-			final PDSignature signature, final byte[] image) throws IOException {
+			final PDSignature signature, final SignatureImage image) throws IOException {
 		final var page = doc.getPage(pageNum);
 		final PDFont font = new PDType1Font(FontName.HELVETICA_BOLD);
 		final var height = rect.getHeight();
@@ -112,11 +148,8 @@ public class CreateVisibleSignatureMy extends CreateSignatureBase {
 
 			if (image != null) {
 				cs.saveGraphicsState();
-				final var img = PDImageXObject.createFromByteArray(doc, image, "SignatureImage");
-				final var scale = rect.getWidth() / img.getWidth();
 				cs.transform(Matrix.getTranslateInstance(rect.getLowerLeftX(), rect.getLowerLeftY()));
-				cs.transform(Matrix.getScaleInstance(scale, scale));
-				cs.drawImage(img, 0, 0);
+				image.draw(doc, cs, rect.getWidth());
 				cs.restoreGraphicsState();
 			}
 
@@ -176,8 +209,12 @@ public class CreateVisibleSignatureMy extends CreateSignatureBase {
 
 	// create a template PDF document with empty signature and return it as a
 	// stream.
+	// Built per seal: SignatureOptions only takes a serialized document, and only
+	// the form geometry would be the same across seals. Patching image and reason
+	// into a cached serialized template would mean rewriting stream lengths and
+	// the xref table.
 	private InputStream createVisualSignatureTemplate(final PDDocument srcDoc, final int pageNum,
-			final PDRectangle rect, final PDSignature signature, final byte[] image) throws IOException {
+			final PDRectangle rect, final PDSignature signature, final SignatureImage image) throws IOException {
 		try (var doc = new PDDocument()) {
 			final var page = new PDPage(srcDoc.getPage(pageNum).getMediaBox());
 			doc.addPage(page);
@@ -249,11 +286,8 @@ public class CreateVisibleSignatureMy extends CreateSignatureBase {
 					// show background image
 					// save and restore graphics if the image is too large and needs to be scaled
 					cs.saveGraphicsState();
-					final var img = PDImageXObject.createFromByteArray(doc, image, "SignatureImage");
 					// Scale image width, optionally preserve vertical space for upper text
-					final var scale = rect.getWidth() / img.getWidth();
-					cs.transform(Matrix.getScaleInstance(scale, scale));
-					cs.drawImage(img, 0, 0);
+					image.draw(doc, cs, rect.getWidth());
 					cs.restoreGraphicsState();
 				}
 
@@ -366,15 +400,94 @@ public class CreateVisibleSignatureMy extends CreateSignatureBase {
 	public byte[] signPDF(final byte[] inputFile, final Rectangle2D humanRect, final String tsaUrl,
 			final String signatureFieldName, final byte[] image, final String name, final String location,
 			final String reason, final String contactInfo) throws IOException {
+		ValidationTimeStamp validationTimeStamp = null;
+		if (tsaUrl != null && !tsaUrl.isEmpty()) {
+			try {
+				validationTimeStamp = new ValidationTimeStamp(tsaUrl);
+			} catch (final NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+		}
+		return signPDF(inputFile, humanRect, validationTimeStamp, signatureFieldName, image, name, location, reason,
+				contactInfo);
+	}
+
+	/**
+	 * Sign pdf file and create new file that ends with "_signed.pdf".
+	 *
+	 * @param inputFile           The source pdf document file.
+	 * @param humanRect           rectangle from a human viewpoint (coordinates
+	 *                            start at top left)
+	 * @param validationTimeStamp optional (shared) TSA timestamping
+	 * @param signatureFieldName  optional name of an existing (unsigned) signature
+	 *                            field
+	 * @throws IOException
+	 */
+	public byte[] signPDF(final byte[] inputFile, final Rectangle2D humanRect,
+			final ValidationTimeStamp validationTimeStamp, final String signatureFieldName, final byte[] image,
+			final String name, final String location, final String reason, final String contactInfo)
+			throws IOException {
 		if (inputFile == null) {
 			throw new IOException("Document for signing does not exist");
 		}
 
-		setTsaUrl(tsaUrl);
+		try (var doc = Loader.loadPDF(inputFile)) {
+			return signPDF(doc, humanRect, validationTimeStamp, signatureFieldName, image, name, location, reason,
+					contactInfo);
+		}
+	}
 
+	/**
+	 * Sign an already loaded pdf document, e.g. after adding further content to
+	 * it. All changes are written with the signature in one incremental update.
+	 *
+	 * @param doc                 The loaded source pdf document, is not closed.
+	 * @param humanRect           rectangle from a human viewpoint (coordinates
+	 *                            start at top left)
+	 * @param validationTimeStamp optional (shared) TSA timestamping
+	 * @param signatureFieldName  optional name of an existing (unsigned) signature
+	 *                            field
+	 * @return signed pdf
+	 * @throws IOException
+	 */
+	public byte[] signPDF(final PDDocument doc, final Rectangle2D humanRect,
+			final ValidationTimeStamp validationTimeStamp, final String signatureFieldName, final byte[] image,
+			final String name, final String location, final String reason, final String contactInfo)
+			throws IOException {
+		final SignatureImage signatureImage = image == null ? null
+				: (d, cs, width) -> SignatureImage.drawScaled(cs,
+						PDImageXObject.createFromByteArray(d, image, "SignatureImage"), width);
+		return signPDF(doc, humanRect, validationTimeStamp, signatureFieldName, signatureImage, name, location,
+				reason, contactInfo);
+	}
+
+	/**
+	 * Like {@link #signPDF(PDDocument, Rectangle2D, ValidationTimeStamp, String,
+	 * byte[], String, String, String, String)}, but with an image source instead of
+	 * an encoded image file, e.g. a {@link BitMatrixImage} that is converted once
+	 * and added to page and visual signature template without decoding.
+	 *
+	 * @param doc                 The loaded source pdf document, is not closed.
+	 * @param humanRect           rectangle from a human viewpoint (coordinates
+	 *                            start at top left)
+	 * @param validationTimeStamp optional (shared) TSA timestamping
+	 * @param signatureFieldName  optional name of an existing (unsigned) signature
+	 *                            field
+	 * @param image               optional signature image
+	 * @return signed pdf
+	 * @throws IOException
+	 */
+	public byte[] signPDF(final PDDocument doc, final Rectangle2D humanRect,
+			final ValidationTimeStamp validationTimeStamp, final String signatureFieldName, final SignatureImage image,
+			final String name, final String location, final String reason, final String contactInfo)
+			throws IOException {
 		// creating output document and prepare the IO streams.
 
-		try (var fos = new ByteArrayOutputStream(); var doc = Loader.loadPDF(inputFile)) {
+		// Do not close signatureOptions before saving, because some COSStream objects
+		// within are transferred to the signed document. Resources are closed in
+		// reverse order, so signatureOptions is closed after saving and before doc.
+		// See https://issues.apache.org/jira/browse/PDFBOX-3743
+		try (var fos = new ByteArrayOutputStream(); var signatureOptions = new SignatureOptions()) {
 			// call SigUtils.checkCrossReferenceTable(doc) if Adobe complains
 			// and read https://stackoverflow.com/a/71293901/535646
 			// and https://issues.apache.org/jira/browse/PDFBOX-5382
@@ -458,19 +571,20 @@ public class CreateVisibleSignatureMy extends CreateSignatureBase {
 			addImageAndTextToPage(doc, 0, rect, signature, image);
 
 			// do not set SignatureInterface instance, if external signing used
-			final var signatureInterface = isExternalSigning() ? null : this;
+			// TSA is bound to this call and not to the shared instance
+			final SignatureInterface signatureInterface = isExternalSigning() ? null
+					: content -> sign(content, validationTimeStamp);
 
 			// register signature dictionary and sign interface
-			this.signatureOptions = new SignatureOptions();
-			this.signatureOptions.setPreferredSignatureSize(16384); // Default not sufficient with TSA
-			this.signatureOptions.setVisualSignature(createVisualSignatureTemplate(doc, 0, rect, signature, image));
-			this.signatureOptions.setPage(0);
-			doc.addSignature(signature, signatureInterface, this.signatureOptions);
+			signatureOptions.setPreferredSignatureSize(16384); // Default not sufficient with TSA
+			signatureOptions.setVisualSignature(createVisualSignatureTemplate(doc, 0, rect, signature, image));
+			signatureOptions.setPage(0);
+			doc.addSignature(signature, signatureInterface, signatureOptions);
 
 			if (isExternalSigning()) {
 				final var externalSigning = doc.saveIncrementalForExternalSigning(fos);
 				// invoke external signature service
-				final var cmsSignature = sign(externalSigning.getContent());
+				final var cmsSignature = sign(externalSigning.getContent(), validationTimeStamp);
 
 				// Explanation of late external signing (off by default):
 				// If you want to add the signature in a separate step, then set an empty byte
@@ -511,16 +625,6 @@ public class CreateVisibleSignatureMy extends CreateSignatureBase {
 				doc.saveIncremental(fos);
 			}
 			return fos.toByteArray();
-		} finally {
-			// Do not close signatureOptions before saving, because some COSStream objects
-			// within
-			// are transferred to the signed document.
-			// Do not allow signatureOptions get out of scope before saving, because then
-			// the COSDocument
-			// in signature options might by closed by gc, which would close COSStream
-			// objects prematurely.
-			// See https://issues.apache.org/jira/browse/PDFBOX-3743
-			IOUtils.closeQuietly(this.signatureOptions);
 		}
 	}
 
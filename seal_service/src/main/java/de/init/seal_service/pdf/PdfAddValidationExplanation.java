@@ -3,84 +3,292 @@
  */
 package de.init.seal_service.pdf;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.imageio.ImageIO;
 
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts.FontName;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+/**
+ * This class adds the validation explanation (text with link and QR-Code) to
+ * the first page of a PDF.
+ * <p>
+ * The overlay is rendered once at startup. Only the encoded bytes are kept:
+ * the content stream and the pixels of the QR-Code. Per document, a new Form
+ * XObject is built from these bytes (no shared PDFBox objects, no lock, no
+ * image decoding) and drawn relative to the upper page border.
+ */
+@ApplicationScoped
 public class PdfAddValidationExplanation {
 
-	public static byte[] addExplanation(final byte[] pdf) throws IOException {
-		// Load the PDF document
-		final var document = Loader.loadPDF(pdf);
+	/**
+	 * Encoded image, 8 bit RGB with optional alpha channel (FlateDecode).
+	 */
+	private record EncodedImage(int width, int height, byte[] rgb, byte[] alpha) {
+
+		private static byte[] deflate(final BufferedImage image, final boolean alpha) {
+			final var bos = new ByteArrayOutputStream();
+			final var deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			try (var dos = new DeflaterOutputStream(bos, deflater)) {
+				final var row = new byte[image.getWidth() * (alpha ? 1 : 3)];
+				for (var y = 0; y < image.getHeight(); ++y) {
+					for (var x = 0; x < image.getWidth(); ++x) {
+						final var argb = image.getRGB(x, y);
+						if (alpha) {
+							row[x] = (byte) (argb >>> 24);
+						} else {
+							row[3 * x] = (byte) (argb >> 16);
+							row[3 * x + 1] = (byte) (argb >> 8);
+							row[3 * x + 2] = (byte) argb;
+						}
+					}
+					dos.write(row);
+				}
+			} catch (final IOException e) {
+				// not possible for in-memory streams
+				throw new UncheckedIOException(e);
+			} finally {
+				deflater.end();
+			}
+			return bos.toByteArray();
+		}
+
+		private static EncodedImage of(final BufferedImage image) {
+			return new EncodedImage(image.getWidth(), image.getHeight(), deflate(image, false),
+					image.getColorModel().hasAlpha() ? deflate(image, true) : null);
+		}
+
+		private PDImageXObject create(final PDDocument document) throws IOException {
+			final var image = new PDImageXObject(document, new ByteArrayInputStream(this.rgb), COSName.FLATE_DECODE,
+					this.width, this.height, 8, PDDeviceRGB.INSTANCE);
+			if (this.alpha != null) {
+				final var mask = new PDImageXObject(document, new ByteArrayInputStream(this.alpha),
+						COSName.FLATE_DECODE, this.width, this.height, 8, PDDeviceGray.INSTANCE);
+				image.getCOSObject().setItem(COSName.SMASK, mask);
+			}
+			return image;
+		}
+
+	}
+
+	/**
+	 * Font of the overlay with its resource name in the content stream.
+	 */
+	private record FontResource(COSName name, FontName font) {
+	}
+
+	private static final float TEMPLATE_WIDTH = 1000;
+
+	private static final float TEMPLATE_HEIGHT = 800;
+
+	@ConfigProperty(name = "seal.pdf.explanation.enabled", defaultValue = "true")
+	boolean enabled;
+
+	@ConfigProperty(name = "seal.pdf.explanation.headline", defaultValue = "Siegelvalidierung")
+	String headline;
+
+	@ConfigProperty(name = "seal.pdf.explanation.lines")
+	List<String> lines;
+
+	@ConfigProperty(name = "seal.pdf.explanation.link", defaultValue = "https://zab.de/validierung.html")
+	String link;
+
+	@ConfigProperty(name = "seal.pdf.explanation.image", defaultValue = "/qr-code.png")
+	String image;
+
+	// encoded content stream of the overlay and its filter
+	private byte[] content;
 
+	private COSBase contentFilter;
+
+	private final List<FontResource> fonts = new ArrayList<>();
+
+	private COSName imageName;
+
+	private EncodedImage qrCode;
+
+	public byte[] addExplanation(final byte[] pdf) throws IOException {
+		return addExplanation(new RandomAccessReadBuffer(pdf));
+	}
+
+	/**
+	 * Adds the explanation to the first page of the loaded document. Changed
+	 * objects are marked, so the explanation is also written by an incremental
+	 * save (e.g. together with the signature).
+	 *
+	 * @param document loaded PDF document
+	 */
+	public void addExplanation(final PDDocument document) throws IOException {
+		if (!this.enabled) {
+			return;
+		}
 		// Get the first page
 		final var firstPage = document.getPage(0);
 
-		// Create a content stream for adding content to the first page
-		final var contentStream = new PDPageContentStream(document, firstPage, AppendMode.APPEND, true);
-
-		// Write the headline
-		final var helveticaBoldFont = new PDType1Font(FontName.HELVETICA_BOLD);
-		contentStream.setFont(helveticaBoldFont, 18);
-		contentStream.beginText();
-		contentStream.newLineAtOffset(300, firstPage.getMediaBox().getHeight() - 600);
-		contentStream.showText("Siegelvalidierung");
-		contentStream.endText();
-
-		// Write the text
-		final var helveticaFont = new PDType1Font(FontName.HELVETICA);
-		contentStream.setFont(helveticaFont, 12);
-		contentStream.beginText();
-		contentStream.newLineAtOffset(300, firstPage.getMediaBox().getHeight() - 620);
-		contentStream.showText("Das Dokument ist mit einem Siegel (links) versehen.");
-		contentStream.endText();
-
-		contentStream.beginText();
-		contentStream.newLineAtOffset(300, firstPage.getMediaBox().getHeight() - 640);
-		contentStream.showText("Dieses sollten Sie auf folgender Webseite prüfen:");
-		contentStream.endText();
-
-		// Write the link
-		contentStream.beginText();
-		contentStream.setNonStrokingColor(0, 0, 1);
-		contentStream.setFont(helveticaFont, 12);
-		contentStream.newLineAtOffset(300, firstPage.getMediaBox().getHeight() - 660);
-		contentStream.showText("https://zab.de/validierung.html");
-		contentStream.endText();
+		// Build the overlay for this document from the precompiled bytes
+		final var overlay = createOverlay(document);
+
+		// Draw the overlay aligned to the upper page border
+		try (var contentStream = new PDPageContentStream(document, firstPage, AppendMode.APPEND, true, true)) {
+			contentStream.saveGraphicsState();
+			contentStream.transform(
+					Matrix.getTranslateInstance(0, firstPage.getMediaBox().getHeight() - TEMPLATE_HEIGHT));
+			contentStream.drawForm(overlay);
+			contentStream.restoreGraphicsState();
+		}
+
+		// Mark page and (possibly shared) resources for incremental save
+		firstPage.getCOSObject().setNeedToBeUpdated(true);
+		final var resources = firstPage.getResources().getCOSObject();
+		resources.setNeedToBeUpdated(true);
+		for (final COSName name : new COSName[] { COSName.FONT, COSName.XOBJECT }) {
+			final var subResources = resources.getCOSDictionary(name);
+			if (subResources != null) {
+				subResources.setNeedToBeUpdated(true);
+			}
+		}
+	}
+
+	/**
+	 * @param pdf PDF source, e.g. a streamed upload, is closed with the document
+	 */
+	public byte[] addExplanation(final RandomAccessRead pdf) throws IOException {
+		// Load the PDF document
+		try (var document = Loader.loadPDF(pdf)) {
+			addExplanation(document);
+
+			// Save the modified PDF document to a byte array
+			final var outputStream = new ByteArrayOutputStream();
+			document.save(outputStream);
+
+			// Output PDF byte array
+			return outputStream.toByteArray();
+		}
+	}
 
+	private PDFormXObject createOverlay(final PDDocument document) throws IOException {
+		final var overlay = new PDFormXObject(document);
+		// already encoded, no need to compress it again
+		try (var os = overlay.getCOSObject().createRawOutputStream()) {
+			os.write(this.content);
+		}
+		if (this.contentFilter != null) {
+			overlay.getCOSObject().setItem(COSName.FILTER, this.contentFilter);
+		}
+		overlay.setBBox(new PDRectangle(TEMPLATE_WIDTH, TEMPLATE_HEIGHT));
+		final var resources = new PDResources();
+		for (final FontResource font : this.fonts) {
+			resources.put(font.name(), new PDType1Font(font.font()));
+		}
+		resources.put(this.imageName, this.qrCode.create(document));
+		overlay.setResources(resources);
+		return overlay;
+	}
+
+	@PostConstruct
+	void postConstruct() throws IOException {
 		// Load the image
-		final var imageInputStream = PdfAddValidationExplanation.class.getResourceAsStream("/qr-code.png");
-		final var imageBytes = imageInputStream.readAllBytes();
+		final byte[] imageBytes;
+		try (var imageInputStream = PdfAddValidationExplanation.class.getResourceAsStream(this.image)) {
+			if (imageInputStream == null) {
+				throw new IOException("Couldn't find explanation image: " + this.image);
+			}
+			imageBytes = imageInputStream.readAllBytes();
+		}
+		final var bufferedImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
+		if (bufferedImage == null) {
+			throw new IOException("Unsupported explanation image: " + this.image);
+		}
+		this.qrCode = EncodedImage.of(bufferedImage);
+
+		// Render the overlay into a scratch page and keep the encoded result
+		try (var template = new PDDocument()) {
+			final var page = new PDPage(new PDRectangle(TEMPLATE_WIDTH, TEMPLATE_HEIGHT));
+			template.addPage(page);
+			final var helveticaBoldFont = new PDType1Font(FontName.HELVETICA_BOLD);
+			final var helveticaFont = new PDType1Font(FontName.HELVETICA);
+			final var qrCodeImage = this.qrCode.create(template);
+
+			// Create a content stream for adding content to the template page, y
+			// coordinates are relative to the upper page border
+			try (var contentStream = new PDPageContentStream(template, page)) {
+				// Write the headline
+				var y = TEMPLATE_HEIGHT - 600;
+				contentStream.setFont(helveticaBoldFont, 18);
+				contentStream.beginText();
+				contentStream.newLineAtOffset(300, y);
+				contentStream.showText(this.headline);
+				contentStream.endText();
 
-		// Create the PDImageXObject from the byte array
-		final var imageName = "qr-code";
-		final var qrCodeImage = PDImageXObject.createFromByteArray(document, imageBytes, imageName);
+				// Write the text
+				contentStream.setFont(helveticaFont, 12);
+				for (final String line : this.lines) {
+					y -= 20;
+					contentStream.beginText();
+					contentStream.newLineAtOffset(300, y);
+					contentStream.showText(line);
+					contentStream.endText();
+				}
 
-		// Scale the image
-		final var imageWidth = 100F;
-		final var imageHeight = 100F;
-		final var imageXPosition = 350F;
-		final var imageYPosition = firstPage.getMediaBox().getHeight() - 770;
+				// Write the link
+				y -= 20;
+				contentStream.beginText();
+				contentStream.setNonStrokingColor(0, 0, 1);
+				contentStream.setFont(helveticaFont, 12);
+				contentStream.newLineAtOffset(300, y);
+				contentStream.showText(this.link);
+				contentStream.endText();
 
-		// Add the image to the content stream
-		contentStream.drawImage(qrCodeImage, imageXPosition, imageYPosition, imageWidth, imageHeight);
+				// Scale the image
+				final var imageWidth = 100F;
+				final var imageHeight = 100F;
+				final var imageXPosition = 350F;
+				final var imageYPosition = y - 110;
 
-		// Close the content stream
-		contentStream.close();
+				// Add the image to the content stream
+				contentStream.drawImage(qrCodeImage, imageXPosition, imageYPosition, imageWidth, imageHeight);
+			}
 
-		// Save the modified PDF document to a byte array
-		final var outputStream = new ByteArrayOutputStream();
-		document.save(outputStream);
-		document.close();
+			final var contents = page.getCOSObject().getCOSStream(COSName.CONTENTS);
+			try (var is = contents.createRawInputStream()) {
+				this.content = is.readAllBytes();
+			}
+			this.contentFilter = contents.getFilters();
 
-		// Output PDF byte array
-		return outputStream.toByteArray();
+			// the resources are already registered, add() returns their names
+			final var resources = page.getResources();
+			this.fonts.add(new FontResource(resources.add(helveticaBoldFont), FontName.HELVETICA_BOLD));
+			this.fonts.add(new FontResource(resources.add(helveticaFont), FontName.HELVETICA));
+			this.imageName = resources.add(qrCodeImage);
+		}
 	}
 
-}
\ No newline at end of file
+}
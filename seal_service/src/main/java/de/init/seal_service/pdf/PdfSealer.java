@@ -10,6 +10,7 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.time.Duration;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -17,18 +18,45 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
 
-import de.init.seal_service.pdf.pdfbox_signature.validation.AddValidationInformation;
+import de.init.seal_service.pdf.CreateVisibleSignatureMy.SignatureImage;
+import de.init.seal_service.pdf.ltv.ValidationMaterialService;
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
+import de.init.seal_service.pdf.pdfbox_signature.util.DeadlineExceededException;
+import de.init.seal_service.pdf.tsa.TsaClients;
 import de.init.seal_service.visual.BarcodeProcessor;
 import de.init.seal_service.visual.SealEncoder;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * This class seals a PDF, visually (DataMatrix) and in PDF metadata (PAdES).
  */
 @ApplicationScoped
 public class PdfSealer {
 
+	/**
+	 * Stage of a seal with its own share of the deadline.
+	 *
+	 * @param budget      sub-budget
+	 * @param consumption used share of the sub-budget
+	 * @param exceeded    seals exceeding the sub-budget
+	 */
+	private record Stage(Duration budget, DistributionSummary consumption, Counter exceeded) {
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(PdfSealer.class);
+
 	private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("#\\{(.+?)\\}");
 
 	private static String replaceAttributes(final String input, final Map<String, String> attributeMap) {
@@ -65,6 +93,24 @@ public class PdfSealer {
 	@ConfigProperty(name = "seal.pdf.ltv")
 	boolean sealLtv;
 
+	@ConfigProperty(name = "seal.pdf.deadline.total", defaultValue = "30s")
+	Duration deadlineTotal;
+
+	@ConfigProperty(name = "seal.pdf.deadline.sign", defaultValue = "10s")
+	Duration deadlineSign;
+
+	@ConfigProperty(name = "seal.pdf.deadline.ltv", defaultValue = "20s")
+	Duration deadlineLtv;
+
+	@ConfigProperty(name = "seal.pdf.deadline.ltv-fallback", defaultValue = "true")
+	boolean ltvFallback;
+
+	@ConfigProperty(name = "seal.pdf.network.timeout", defaultValue = "30s")
+	Duration networkTimeout;
+
+	@ConfigProperty(name = "seal.pdf.datamatrix.vector", defaultValue = "false")
+	boolean sealDataMatrixVector;
+
 	@ConfigProperty(name = "seal.pdf.name")
 	String sealName;
 
@@ -80,6 +126,31 @@ public class PdfSealer {
 	@Inject
 	SealEncoder sealEncoder;
 
+	@Inject
+	TsaClients tsaClients;
+
+	@Inject
+	ValidationMaterialService validationMaterial;
+
+	@Inject
+	PdfAddValidationExplanation validationExplanation;
+
+	@Inject
+	MeterRegistry meterRegistry;
+
+	private Stage signStage;
+
+	private Stage ltvStage;
+
+	private Stage createStage(final String name, final Duration budget) {
+		return new Stage(budget,
+				DistributionSummary.builder("seal.deadline.consumption")
+						.description("Used share of the stage deadline").tag("stage", name)
+						.publishPercentiles(0.5, 0.9, 0.99).register(this.meterRegistry),
+				Counter.builder("seal.deadline.exceeded").description("Seals exceeding the stage deadline")
+						.tag("stage", name).register(this.meterRegistry));
+	}
+
 	@PostConstruct
 	void postConstruct() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException,
 			UnrecoverableKeyException {
@@ -93,6 +164,13 @@ public class PdfSealer {
 		}
 		keystore.getKey(this.pdfPrivateAlias, pin);
 		this.createVisibleSignature = new CreateVisibleSignatureMy(keystore, pin);
+
+		Deadline.setDefaultTimeout(this.networkTimeout);
+		this.signStage = createStage("sign", this.deadlineSign);
+		this.ltvStage = createStage("ltv", this.deadlineLtv);
+		if (this.sealLtv) {
+			this.validationMaterial.start(this::signReference);
+		}
 	}
 
 	/**
@@ -106,27 +184,144 @@ public class PdfSealer {
 	 * @throws IOException
 	 */
 	public byte[] sealPdf(final byte[] pdf, final Map<String, String> docValues) throws IOException {
-		// Add PDF Verification Info (QR-Code with URL)
-		// TODO Following callout is just for test. It's not configurable and very
-		// ZAB-specific. Better do it before as part of the Input PDF.
-		final var pdfExpl = PdfAddValidationExplanation.addExplanation(pdf);
+		return sealPdf(new RandomAccessReadBuffer(pdf), docValues);
+	}
+
+	/**
+	 * Like {@link #sealPdf(byte[], Map)}, but parses the PDF directly from the
+	 * given source (e.g. a streamed request body or an uploaded file), without an
+	 * intermediate byte array.
+	 * <p>
+	 * All network calls (TSA, OCSP, CRL, AIA) of the seal share one deadline,
+	 * with sub-budgets for signing and LTV. If the LTV info can't be added in time,
+	 * the PDF is returned without it (unless the fallback is disabled).
+	 *
+	 * @param pdf       original PDF (not sealed yet), is closed after reading
+	 * @param docValues values for Visual Seal
+	 * @return sealed PDF (including Visual Seal and Metadata Seal with Timestamp
+	 *         and LTV)
+	 * @throws IOException
+	 */
+	public byte[] sealPdf(final RandomAccessRead pdf, final Map<String, String> docValues) throws IOException {
+		final var deadline = Deadline.after(this.deadlineTotal);
+		return addValidationInformation(signPdf(pdf, docValues, deadline), deadline);
+	}
+
+	/**
+	 * Adds the Long Term Validation (LTV) info to a document of
+	 * {@link #signPdf(RandomAccessRead, Map)}, if enabled.
+	 *
+	 * @param signedPdf sealed PDF without LTV
+	 * @return sealed PDF with LTV
+	 * @throws IOException
+	 */
+	public byte[] addValidationInformation(final byte[] signedPdf) throws IOException {
+		return addValidationInformation(signedPdf, Deadline.after(this.deadlineTotal));
+	}
+
+	private byte[] addValidationInformation(final byte[] signedPdf, final Deadline deadline) throws IOException {
+		// PDFBox only parses the objects needed for the DSS (trailer, catalog,
+		// signature) of the signed revision
+		if (!this.sealLtv) {
+			return signedPdf;
+		}
+		final var ltvDeadline = deadline.limit(this.ltvStage.budget());
+		try {
+			return runStage(this.ltvStage, ltvDeadline,
+					() -> this.validationMaterial.addValidationInformation(signedPdf));
+		} catch (final IOException e) {
+			// OCSP / CRL failures are wrapped, the deadline tells whether they timed out
+			if (!this.ltvFallback || !(e instanceof DeadlineExceededException || ltvDeadline.isExpired())) {
+				throw e;
+			}
+			LOGGER.warn("Deadline exceeded while adding the LTV info, sealed without LTV info: " + e.getMessage());
+			return signedPdf;
+		}
+	}
+
+	private <T> T runStage(final Stage stage, final Deadline deadline, final Deadline.Task<T, IOException> task)
+			throws IOException {
+		final var start = System.nanoTime();
+		try {
+			return deadline.call(task);
+		} catch (final IOException e) {
+			if (e instanceof DeadlineExceededException) {
+				stage.exceeded().increment();
+				throw e;
+			}
+			if (deadline.isExpired()) {
+				// e.g. a read timeout cut short by the deadline
+				stage.exceeded().increment();
+				throw new DeadlineExceededException("Deadline exceeded: " + e.getMessage(), e);
+			}
+			throw e;
+		} finally {
+			stage.consumption().record((System.nanoTime() - start) / (double) stage.budget().toNanos());
+		}
+	}
 
+	/**
+	 * Like {@link #sealPdf(RandomAccessRead, Map)}, but without LTV info: the
+	 * signature only includes the timestamp (PAdES-B-T).
+	 *
+	 * @param pdf       original PDF (not sealed yet), is closed after reading
+	 * @param docValues values for Visual Seal
+	 * @return sealed PDF (including Visual Seal and Metadata Seal with Timestamp)
+	 * @throws IOException
+	 */
+	public byte[] signPdf(final RandomAccessRead pdf, final Map<String, String> docValues) throws IOException {
+		return signPdf(pdf, docValues, Deadline.after(this.deadlineTotal));
+	}
+
+	private byte[] signPdf(final RandomAccessRead pdf, final Map<String, String> docValues, final Deadline deadline)
+			throws IOException {
+		try {
+			return runStage(this.signStage, deadline.limit(this.signStage.budget()), () -> sign(pdf, docValues));
+		} finally {
+			// also if the seal failed before the PDF was parsed, e.g. a temporary file
+			IOUtils.closeQuietly(pdf);
+		}
+	}
+
+	private byte[] sign(final RandomAccessRead pdf, final Map<String, String> docValues) throws IOException {
 		// Create Visual Seal data stream
 		final var seal = this.sealEncoder.encode(docValues);
+		// converted once and used for page and signature template
+		final var dataMatrix = this.barcodeProcessor.encodeDataMatrix(seal, 200, 200);
+		final SignatureImage dataMatrixSeal = this.sealDataMatrixVector
+				? new BitMatrixVector(dataMatrix.getWidth(), dataMatrix.getHeight(),
+						this.barcodeProcessor.toRectangles(dataMatrix))
+				: new BitMatrixImage(dataMatrix);
 
-		// Add Visual Seal to PDF and Sign PDF
-		final var dataMatrixSeal = this.barcodeProcessor.encodeDataMatrix(seal, "png", 200, 200);
-		final var rect = new Rectangle2D.Float(70, 580, 200, 220);
-		final var sealed_pdf = this.createVisibleSignature.signPDF(pdfExpl, rect, this.sealTsa, "Siegel",
-				dataMatrixSeal, this.sealName, this.sealLocation, replaceAttributes(this.sealReason, docValues),
-				this.sealContact);
+		// Parse the PDF once, explanation and signature go into one incremental update
+		try (var doc = Loader.loadPDF(pdf)) {
+			// Add PDF Verification Info (QR-Code with URL), texts, link and image are
+			// configured by seal.pdf.explanation.* (can be disabled)
+			this.validationExplanation.addExplanation(doc);
 
-		// Add Long Term Validation (LTV) info
-		if (!this.sealLtv) {
-			return sealed_pdf;
+			// Add Visual Seal to PDF and Sign PDF
+			final var rect = new Rectangle2D.Float(70, 580, 200, 220);
+			return this.createVisibleSignature.signPDF(doc, rect,
+					this.tsaClients.getValidationTimeStamp(this.sealTsa), "Siegel", dataMatrixSeal, this.sealName,
+					this.sealLocation, replaceAttributes(this.sealReason, docValues), this.sealContact);
+		}
+	}
+
+	/**
+	 * Signs an empty page like a seal (same certificate and TSA), for the
+	 * precomputed LTV material.
+	 *
+	 * @return signed reference PDF
+	 * @throws IOException
+	 */
+	byte[] signReference() throws IOException {
+		try (var doc = new PDDocument()) {
+			doc.addPage(new PDPage());
+			final var rect = new Rectangle2D.Float(70, 580, 200, 220);
+			return this.createVisibleSignature.signPDF(doc, rect,
+					this.tsaClients.getValidationTimeStamp(this.sealTsa), "Siegel", (SignatureImage) null,
+					this.sealName, this.sealLocation, "LTV reference", this.sealContact);
 		}
-		final var addValidationInformation = new AddValidationInformation();
-		return addValidationInformation.validateSignature(sealed_pdf);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,237 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.ltv;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import de.init.seal_service.pdf.ltv.LtvJobStore.Status;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * This class adds LTV information to signed documents in the background, for
+ * clients that want the timestamped document (PAdES-B-T) immediately. Jobs are
+ * kept in a {@link LtvJobStore}, pending jobs are resumed after a restart. The
+ * result can be polled by job id; optionally a callback URL is notified when
+ * the job is finished.
+ */
+@ApplicationScoped
+public class LtvJobService {
+
+	private static final Logger LOGGER = Logger.getLogger(LtvJobService.class);
+
+	private static final Duration CALLBACK_TIMEOUT = Duration.ofSeconds(10);
+
+	private static final Duration PURGE_INTERVAL = Duration.ofMinutes(10);
+
+	@ConfigProperty(name = "seal.pdf.ltv")
+	boolean sealLtv;
+
+	@ConfigProperty(name = "seal.pdf.ltv.async.enabled", defaultValue = "false")
+	boolean enabled;
+
+	@ConfigProperty(name = "seal.pdf.ltv.async.directory")
+	Optional<String> directory;
+
+	@ConfigProperty(name = "seal.pdf.ltv.async.workers", defaultValue = "2")
+	int workers;
+
+	@ConfigProperty(name = "seal.pdf.ltv.async.max-jobs", defaultValue = "1000")
+	int maxJobs;
+
+	@ConfigProperty(name = "seal.pdf.ltv.async.retention", defaultValue = "24h")
+	Duration retention;
+
+	@ConfigProperty(name = "seal.pdf.ltv.async.callbacks", defaultValue = "false")
+	boolean callbacks;
+
+	@Inject
+	LtvResources ltvResources;
+
+	@Inject
+	ValidationMaterialService validationMaterial;
+
+	@Inject
+	MeterRegistry meterRegistry;
+
+	private LtvJobStore store;
+
+	private ExecutorService executor;
+
+	private HttpClient httpClient;
+
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private Counter submitted;
+
+	private Counter rejected;
+
+	private Counter done;
+
+	private Counter failed;
+
+	/**
+	 * @param id job id
+	 * @return status or {@code null}, if the job doesn't exist
+	 */
+	public Status getStatus(final String id) {
+		return this.store == null ? null : this.store.getStatus(id);
+	}
+
+	/**
+	 * @return whether jobs are accepted
+	 */
+	public boolean isEnabled() {
+		return this.store != null;
+	}
+
+	private void notifyCallback(final String id, final Status status) {
+		if (this.httpClient == null) {
+			return;
+		}
+		try {
+			final var callback = this.store.readCallback(id);
+			if (callback == null) {
+				return;
+			}
+			final var request = HttpRequest.newBuilder(URI.create(callback)).timeout(CALLBACK_TIMEOUT)
+					.header("Content-Type", "application/json")
+					.POST(BodyPublishers.ofString("{\"id\":\"" + id + "\",\"status\":\"" + status + "\"}")).build();
+			final var response = this.httpClient.send(request, BodyHandlers.discarding());
+			if (response.statusCode() >= 300) {
+				LOGGER.warn("Callback of LTV job " + id + " returned HTTP " + response.statusCode());
+			}
+		} catch (final IOException | IllegalArgumentException e) {
+			LOGGER.warn("Couldn't notify callback of LTV job " + id + "!", e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	void onStart(@Observes final StartupEvent event) throws IOException {
+		if (!this.enabled || !this.sealLtv) {
+			return;
+		}
+		final var jobDirectory = this.directory.map(Path::of)
+				.orElseGet(() -> Path.of(System.getProperty("java.io.tmpdir"), "seal_service", "ltv-jobs"));
+		this.store = new LtvJobStore(jobDirectory, this.maxJobs);
+		final var counter = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(this.workers, r -> {
+			final var thread = new Thread(r, "seal-ltv-job-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (this.callbacks) {
+			this.httpClient = HttpClient.newBuilder().connectTimeout(CALLBACK_TIMEOUT).build();
+		}
+
+		this.submitted = Counter.builder("seal.ltv.async.jobs").description("Asynchronous LTV jobs")
+				.tag("result", "submitted").register(this.meterRegistry);
+		this.rejected = Counter.builder("seal.ltv.async.jobs").description("Asynchronous LTV jobs")
+				.tag("result", "rejected").register(this.meterRegistry);
+		this.done = Counter.builder("seal.ltv.async.jobs").description("Asynchronous LTV jobs")
+				.tag("result", "done").register(this.meterRegistry);
+		this.failed = Counter.builder("seal.ltv.async.jobs").description("Asynchronous LTV jobs")
+				.tag("result", "failed").register(this.meterRegistry);
+		this.meterRegistry.gauge("seal.ltv.async.pending", this.pending);
+
+		// resume the jobs of the last run
+		final var resumed = this.store.getPending();
+		resumed.forEach(this::schedule);
+		if (!resumed.isEmpty()) {
+			LOGGER.info("Resumed " + resumed.size() + " pending LTV jobs");
+		}
+		this.ltvResources.getScheduler().scheduleWithFixedDelay(
+				() -> this.store.purge(Instant.now().minus(this.retention)), PURGE_INTERVAL.toMillis(),
+				PURGE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	void preDestroy() {
+		// pending jobs are resumed after the restart
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param id job id
+	 * @return document with LTV information of a done job
+	 * @throws IOException if the document can't be read
+	 */
+	public byte[] readResult(final String id) throws IOException {
+		return this.store.readResult(id);
+	}
+
+	private void run(final String id) {
+		try {
+			this.store.complete(id, this.validationMaterial.addValidationInformation(this.store.readInput(id)));
+			this.done.increment();
+			notifyCallback(id, Status.DONE);
+		} catch (final Exception e) {
+			LOGGER.error("Couldn't add LTV information for job " + id + "!", e);
+			try {
+				this.store.fail(id, e.getMessage());
+			} catch (final IOException e1) {
+				LOGGER.error("Couldn't store the failure of LTV job " + id + "!", e1);
+			}
+			this.failed.increment();
+			notifyCallback(id, Status.FAILED);
+		} finally {
+			this.pending.decrementAndGet();
+		}
+	}
+
+	private void schedule(final String id) {
+		this.pending.incrementAndGet();
+		this.executor.execute(() -> run(id));
+	}
+
+	/**
+	 * Creates a job for adding the LTV information.
+	 *
+	 * @param signedPdf signed document without LTV information
+	 * @param callback  optional URL notified with the job id and status when the
+	 *                  job is finished, ignored if callbacks aren't enabled
+	 * @return job id or {@code null}, if not enabled or too many jobs
+	 * @throws IOException if the job can't be stored
+	 */
+	public String submit(final byte[] signedPdf, final String callback) throws IOException {
+		if (this.store == null) {
+			return null;
+		}
+		final var id = this.store.create(signedPdf, this.callbacks ? callback : null);
+		if (id == null) {
+			this.rejected.increment();
+			return null;
+		}
+		this.submitted.increment();
+		schedule(id);
+		return id;
+	}
+
+}
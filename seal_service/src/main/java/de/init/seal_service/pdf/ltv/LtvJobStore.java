@@ -0,0 +1,279 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.ltv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Filesystem store of asynchronous LTV jobs, so they survive restarts. Per job
+ * there is the signed document ({@code <id>.pdf}), an optional callback URL
+ * ({@code <id>.callback}) and, when finished, the result ({@code <id>.ltv.pdf})
+ * or the error message ({@code <id>.error}). The number of jobs is bounded:
+ * a job reserves its slot before it is written, the slot is released when the
+ * job is removed by {@link #purge(Instant)} or couldn't be written.
+ */
+public class LtvJobStore {
+
+	/**
+	 * State of a job.
+	 */
+	public enum Status {
+		PENDING, DONE, FAILED
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(LtvJobStore.class);
+
+	private static final String CALLBACK = ".callback";
+
+	private static final String ERROR = ".error";
+
+	private static final String INPUT = ".pdf";
+
+	private static final String RESULT = ".ltv.pdf";
+
+	/**
+	 * @param id job id
+	 * @return whether the id is a valid job id (no path)
+	 */
+	private static boolean isValid(final String id) {
+		try {
+			return id != null && UUID.fromString(id).toString().equals(id);
+		} catch (final IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private final Map<String, Status> jobs = new ConcurrentHashMap<>();
+
+	// reserved slots, including jobs being written
+	private final AtomicInteger slots = new AtomicInteger();
+
+	private final Path directory;
+
+	private final int maxJobs;
+
+	/**
+	 * Loads the jobs of the directory.
+	 *
+	 * @param directory job directory, created if missing
+	 * @param maxJobs   maximum number of pending and finished jobs
+	 * @throws IOException if the directory can't be read
+	 */
+	public LtvJobStore(final Path directory, final int maxJobs) throws IOException {
+		this.directory = directory;
+		this.maxJobs = maxJobs;
+		Files.createDirectories(directory);
+		try (var files = Files.list(directory)) {
+			for (final Path file : files.toList()) {
+				final var name = file.getFileName().toString();
+				if (name.endsWith(".tmp")) {
+					// interrupted write
+					Files.deleteIfExists(file);
+				} else if (name.endsWith(INPUT) && !name.endsWith(RESULT)) {
+					final var id = name.substring(0, name.length() - INPUT.length());
+					if (isValid(id)) {
+						this.jobs.put(id, readStatus(id));
+						this.slots.incrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks a job as done.
+	 *
+	 * @param id     job id
+	 * @param ltvPdf document with LTV information
+	 * @throws IOException if the result can't be written
+	 */
+	public void complete(final String id, final byte[] ltvPdf) throws IOException {
+		writeAtomic(file(id, RESULT), ltvPdf);
+		this.jobs.put(id, Status.DONE);
+	}
+
+	/**
+	 * Creates a pending job.
+	 *
+	 * @param signedPdf signed document without LTV information
+	 * @param callback  optional URL notified when the job is finished
+	 * @return job id or {@code null}, if the store is full
+	 * @throws IOException if the job can't be written
+	 */
+	public String create(final byte[] signedPdf, final String callback) throws IOException {
+		if (!reserve()) {
+			return null;
+		}
+		final var id = UUID.randomUUID().toString();
+		try {
+			if (callback != null) {
+				writeAtomic(file(id, CALLBACK), callback.getBytes(StandardCharsets.UTF_8));
+			}
+			// the input file makes the job visible after a restart
+			writeAtomic(file(id, INPUT), signedPdf);
+		} catch (final IOException | RuntimeException e) {
+			delete(id);
+			this.slots.decrementAndGet();
+			throw e;
+		}
+		this.jobs.put(id, Status.PENDING);
+		return id;
+	}
+
+	private void delete(final String id) {
+		for (final String suffix : List.of(INPUT, CALLBACK, RESULT, ERROR)) {
+			try {
+				Files.deleteIfExists(file(id, suffix));
+			} catch (final IOException e) {
+				LOGGER.warn("Couldn't delete " + file(id, suffix) + "!", e);
+			}
+		}
+	}
+
+	/**
+	 * Marks a job as failed.
+	 *
+	 * @param id      job id
+	 * @param message error message
+	 * @throws IOException if the error can't be written
+	 */
+	public void fail(final String id, final String message) throws IOException {
+		writeAtomic(file(id, ERROR), String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+		this.jobs.put(id, Status.FAILED);
+	}
+
+	private Path file(final String id, final String suffix) {
+		return this.directory.resolve(id + suffix);
+	}
+
+	/**
+	 * @return ids of the pending jobs
+	 */
+	public List<String> getPending() {
+		final List<String> pending = new ArrayList<>();
+		this.jobs.forEach((id, status) -> {
+			if (status == Status.PENDING) {
+				pending.add(id);
+			}
+		});
+		return pending;
+	}
+
+	/**
+	 * @param id job id
+	 * @return status or {@code null}, if the job doesn't exist
+	 */
+	public Status getStatus(final String id) {
+		return isValid(id) ? this.jobs.get(id) : null;
+	}
+
+	/**
+	 * Removes finished jobs.
+	 *
+	 * @param finishedBefore jobs finished before are removed
+	 * @return number of removed jobs
+	 */
+	public int purge(final Instant finishedBefore) {
+		var removed = 0;
+		for (final var job : this.jobs.entrySet()) {
+			if (job.getValue() == Status.PENDING) {
+				continue;
+			}
+			final var id = job.getKey();
+			try {
+				final var finished = file(id, job.getValue() == Status.DONE ? RESULT : ERROR);
+				if (Files.getLastModifiedTime(finished).toInstant().isBefore(finishedBefore)
+						&& this.jobs.remove(id) != null) {
+					delete(id);
+					this.slots.decrementAndGet();
+					++removed;
+				}
+			} catch (final IOException e) {
+				LOGGER.warn("Couldn't remove LTV job " + id + "!", e);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @param id job id
+	 * @return callback URL or {@code null}
+	 * @throws IOException if the callback can't be read
+	 */
+	public String readCallback(final String id) throws IOException {
+		try {
+			return Files.readString(file(id, CALLBACK), StandardCharsets.UTF_8);
+		} catch (final NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param id job id
+	 * @return signed document of the job
+	 * @throws IOException if the document can't be read
+	 */
+	public byte[] readInput(final String id) throws IOException {
+		return Files.readAllBytes(file(id, INPUT));
+	}
+
+	/**
+	 * @param id job id
+	 * @return document with LTV information of a done job
+	 * @throws IOException if the document can't be read
+	 */
+	public byte[] readResult(final String id) throws IOException {
+		return Files.readAllBytes(file(id, RESULT));
+	}
+
+	private Status readStatus(final String id) {
+		if (Files.exists(file(id, RESULT))) {
+			return Status.DONE;
+		}
+		return Files.exists(file(id, ERROR)) ? Status.FAILED : Status.PENDING;
+	}
+
+	/**
+	 * @return whether a slot was reserved, {@code false} if the store is full
+	 */
+	private boolean reserve() {
+		while (true) {
+			final var reserved = this.slots.get();
+			if (reserved >= this.maxJobs) {
+				return false;
+			}
+			if (this.slots.compareAndSet(reserved, reserved + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return number of pending and finished jobs
+	 */
+	public int size() {
+		return this.jobs.size();
+	}
+
+	private void writeAtomic(final Path file, final byte[] data) throws IOException {
+		final var tmp = Files.createTempFile(this.directory, file.getFileName().toString(), ".tmp");
+		Files.write(tmp, data);
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
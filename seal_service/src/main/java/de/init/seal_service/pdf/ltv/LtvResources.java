@@ -0,0 +1,149 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.ltv;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import de.init.seal_service.pdf.pdfbox_signature.cert.CaIssuerCache;
+import de.init.seal_service.pdf.pdfbox_signature.cert.CertificateVerifier;
+import de.init.seal_service.pdf.pdfbox_signature.cert.CrlStore;
+import de.init.seal_service.pdf.pdfbox_signature.cert.OcspResponseCache;
+import de.init.seal_service.pdf.pdfbox_signature.validation.AddValidationInformation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class holds the resources shared by the LTV information of all seals:
+ * the executor for OCSP / CRL requests, the OCSP response cache, the CRL store
+ * and the CA issuer certificate cache, so seals with the same chain don't query
+ * the responders again.
+ */
+@ApplicationScoped
+public class LtvResources {
+
+	@ConfigProperty(name = "seal.pdf.ltv.fetch-threads", defaultValue = "8")
+	int fetchThreads;
+
+	@ConfigProperty(name = "seal.pdf.ltv.ocsp-cache.enabled", defaultValue = "true")
+	boolean ocspCacheEnabled;
+
+	@ConfigProperty(name = "seal.pdf.ltv.ocsp-cache.max-entries", defaultValue = "1000")
+	int ocspCacheMaxEntries;
+
+	@ConfigProperty(name = "seal.pdf.ltv.ocsp-cache.max-age", defaultValue = "12h")
+	Duration ocspCacheMaxAge;
+
+	@ConfigProperty(name = "seal.pdf.ltv.ocsp-cache.directory")
+	Optional<String> ocspCacheDirectory;
+
+	@ConfigProperty(name = "seal.pdf.ltv.crl-store.enabled", defaultValue = "true")
+	boolean crlStoreEnabled;
+
+	@ConfigProperty(name = "seal.pdf.ltv.crl-store.refresh-ahead", defaultValue = "10m")
+	Duration crlStoreRefreshAhead;
+
+	@ConfigProperty(name = "seal.pdf.ltv.crl-store.retry-interval", defaultValue = "1m")
+	Duration crlStoreRetryInterval;
+
+	@ConfigProperty(name = "seal.pdf.ltv.crl-store.idle-timeout", defaultValue = "24h")
+	Duration crlStoreIdleTimeout;
+
+	@ConfigProperty(name = "seal.pdf.ltv.aia-cache.enabled", defaultValue = "true")
+	boolean aiaCacheEnabled;
+
+	@ConfigProperty(name = "seal.pdf.ltv.aia-cache.ttl", defaultValue = "24h")
+	Duration aiaCacheTtl;
+
+	@ConfigProperty(name = "seal.pdf.ltv.aia-cache.negative-ttl", defaultValue = "5m")
+	Duration aiaCacheNegativeTtl;
+
+	@ConfigProperty(name = "seal.pdf.ltv.aia-cache.directory")
+	Optional<String> aiaCacheDirectory;
+
+	@Inject
+	MeterRegistry meterRegistry;
+
+	private ExecutorService executor;
+
+	private OcspResponseCache ocspResponseCache;
+
+	private ScheduledExecutorService scheduler;
+
+	private CrlStore crlStore;
+
+	private CaIssuerCache caIssuerCache;
+
+	/**
+	 * @return new LTV helper (one per seal) using the shared resources
+	 */
+	public AddValidationInformation createAddValidationInformation() {
+		final var addValidationInformation = new AddValidationInformation(this.executor);
+		addValidationInformation.setOcspResponseCache(this.ocspResponseCache);
+		addValidationInformation.setCrlStore(this.crlStore);
+		addValidationInformation.setCaIssuerCache(this.caIssuerCache);
+		return addValidationInformation;
+	}
+
+	/**
+	 * @return scheduler for background refreshes
+	 */
+	ScheduledExecutorService getScheduler() {
+		return this.scheduler;
+	}
+
+	@PostConstruct
+	void postConstruct() throws IOException {
+		// shared by all seals, bounds the concurrent OCSP / CRL requests
+		final var counter = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(this.fetchThreads, r -> {
+			final var thread = new Thread(r, "seal-ltv-fetch-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		if (this.ocspCacheEnabled) {
+			this.ocspResponseCache = new OcspResponseCache(this.ocspCacheMaxEntries, this.ocspCacheMaxAge,
+					this.ocspCacheDirectory.map(Path::of).orElse(null), this.meterRegistry);
+		}
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			final var thread = new Thread(r, "seal-ltv-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (this.crlStoreEnabled) {
+			this.crlStore = new CrlStore(this.scheduler, this.crlStoreRefreshAhead, this.crlStoreRetryInterval,
+					this.crlStoreIdleTimeout, this.meterRegistry);
+		}
+
+		if (this.aiaCacheEnabled) {
+			this.caIssuerCache = new CaIssuerCache(this.aiaCacheTtl, this.aiaCacheNegativeTtl,
+					this.aiaCacheDirectory.map(Path::of).orElse(null), this.meterRegistry);
+			// chain building in CRL and timestamp verification
+			CertificateVerifier.setCaIssuerCache(this.caIssuerCache);
+		}
+	}
+
+	@PreDestroy
+	void preDestroy() {
+		this.executor.shutdownNow();
+		this.scheduler.shutdownNow();
+		CertificateVerifier.setCaIssuerCache(null);
+	}
+
+}
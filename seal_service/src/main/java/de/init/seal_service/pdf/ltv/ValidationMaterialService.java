@@ -0,0 +1,158 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.ltv;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import de.init.seal_service.pdf.pdfbox_signature.validation.ValidationMaterial;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class keeps precomputed LTV material for the fixed signing and TSA
+ * chain. A reference document is signed and completed with LTV information
+ * periodically in the background; seals then only append the ready-made DSS
+ * content plus the VRI entry of their signature. Without fresh material (or for
+ * another signer), the LTV information is collected for the document itself.
+ */
+@ApplicationScoped
+public class ValidationMaterialService {
+
+	private static final Logger LOGGER = Logger.getLogger(ValidationMaterialService.class);
+
+	@ConfigProperty(name = "seal.pdf.ltv.material.enabled", defaultValue = "true")
+	boolean enabled;
+
+	@ConfigProperty(name = "seal.pdf.ltv.material.refresh-interval", defaultValue = "1h")
+	Duration refreshInterval;
+
+	@ConfigProperty(name = "seal.pdf.ltv.material.retry-interval", defaultValue = "5m")
+	Duration retryInterval;
+
+	@ConfigProperty(name = "seal.pdf.ltv.material.max-age", defaultValue = "4h")
+	Duration maxAge;
+
+	@ConfigProperty(name = "seal.pdf.ltv.material.min-validity", defaultValue = "1h")
+	Duration minValidity;
+
+	@Inject
+	LtvResources ltvResources;
+
+	@Inject
+	MeterRegistry meterRegistry;
+
+	private final AtomicReference<ValidationMaterial> material = new AtomicReference<>();
+
+	private volatile Callable<byte[]> referenceSigner;
+
+	private Counter hits;
+
+	private Counter stale;
+
+	private Counter mismatches;
+
+	private Counter refreshes;
+
+	private Counter refreshFailures;
+
+	/**
+	 * Adds LTV information to a signed document, from the precomputed material if
+	 * possible.
+	 *
+	 * @param signedPdf signed document
+	 * @return document with DSS
+	 * @throws IOException if the LTV information can't be added
+	 */
+	public byte[] addValidationInformation(final byte[] signedPdf) throws IOException {
+		final var current = this.material.get();
+		if (current != null) {
+			if (isFresh(current, Instant.now())) {
+				final var ltvPdf = current.apply(signedPdf);
+				if (ltvPdf != null) {
+					this.hits.increment();
+					return ltvPdf;
+				}
+				this.mismatches.increment();
+			} else {
+				this.stale.increment();
+			}
+		}
+		return this.ltvResources.createAddValidationInformation().validateSignature(signedPdf);
+	}
+
+	// material age and remaining validity of its revocation data
+	private boolean isFresh(final ValidationMaterial material, final Instant now) {
+		if (Duration.between(material.getCreated(), now).compareTo(this.maxAge) > 0) {
+			return false;
+		}
+		return material.getNextUpdate() == null || now.plus(this.minValidity).isBefore(material.getNextUpdate());
+	}
+
+	@PostConstruct
+	void postConstruct() {
+		this.hits = Counter.builder("seal.ltv.material.use").description("Seals with precomputed LTV material")
+				.tag("result", "hit").register(this.meterRegistry);
+		this.stale = Counter.builder("seal.ltv.material.use").description("Seals with precomputed LTV material")
+				.tag("result", "stale").register(this.meterRegistry);
+		this.mismatches = Counter.builder("seal.ltv.material.use").description("Seals with precomputed LTV material")
+				.tag("result", "mismatch").register(this.meterRegistry);
+		this.refreshes = Counter.builder("seal.ltv.material.refresh").description("LTV material refreshes")
+				.tag("result", "success").register(this.meterRegistry);
+		this.refreshFailures = Counter.builder("seal.ltv.material.refresh").description("LTV material refreshes")
+				.tag("result", "failure").register(this.meterRegistry);
+		this.meterRegistry.gauge("seal.ltv.material.age", this.material, reference -> {
+			final var current = reference.get();
+			return current == null ? Double.NaN
+					: Duration.between(current.getCreated(), Instant.now()).toMillis() / 1000.0;
+		});
+	}
+
+	private void refresh() {
+		try {
+			final var ltvPdf = this.ltvResources.createAddValidationInformation()
+					.validateSignature(this.referenceSigner.call());
+			final var refreshed = ValidationMaterial.capture(ltvPdf);
+			this.material.set(refreshed);
+			this.refreshes.increment();
+			LOGGER.info("LTV material refreshed, revocation data valid until " + refreshed.getNextUpdate());
+			schedule(this.refreshInterval);
+		} catch (final Exception e) {
+			LOGGER.warn("Couldn't refresh LTV material, retrying in " + this.retryInterval + "!", e);
+			this.refreshFailures.increment();
+			schedule(this.retryInterval);
+		}
+	}
+
+	private void schedule(final Duration delay) {
+		this.ltvResources.getScheduler().schedule(this::refresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts refreshing the material in the background, if enabled.
+	 *
+	 * @param referenceSigner signs a reference document like a seal (same
+	 *                        certificate and TSA)
+	 */
+	public void start(final Callable<byte[]> referenceSigner) {
+		if (!this.enabled) {
+			return;
+		}
+		this.referenceSigner = referenceSigner;
+		schedule(Duration.ZERO);
+	}
+
+}
@@ -133,6 +133,45 @@ public abstract class CreateSignatureBase implements SignatureInterface
     public byte[] sign(InputStream content) throws IOException
     {
         // cannot be done private (interface)
+        return sign(content, tsaUrl);
+    }
+
+    /**
+     * Create the PKCS #7 signature with an explicit TSA url instead of the instance setting. Only
+     * immutable key material of this instance is used, so concurrent calls are safe.
+     *
+     * @param content the bytes given by the byte range
+     * @param tsaUrl optional TSA url
+     * @return the encoded CMS signature
+     * @throws IOException
+     */
+    public byte[] sign(InputStream content, String tsaUrl) throws IOException
+    {
+        ValidationTimeStamp validation = null;
+        if (tsaUrl != null && tsaUrl.length() > 0)
+        {
+            try
+            {
+                validation = new ValidationTimeStamp(tsaUrl);
+            }
+            catch (GeneralSecurityException e)
+            {
+                throw new IOException(e);
+            }
+        }
+        return sign(content, validation);
+    }
+
+    /**
+     * Create the PKCS #7 signature and timestamp it with the given (usually shared) validation.
+     *
+     * @param content the bytes given by the byte range
+     * @param validation optional timestamping, may be null
+     * @return the encoded CMS signature
+     * @throws IOException
+     */
+    public byte[] sign(InputStream content, ValidationTimeStamp validation) throws IOException
+    {
         try
         {
             CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
@@ -142,9 +181,8 @@ public abstract class CreateSignatureBase implements SignatureInterface
             gen.addCertificates(new JcaCertStore(Arrays.asList(certificateChain)));
             CMSProcessableInputStream msg = new CMSProcessableInputStream(content);
             CMSSignedData signedData = gen.generate(msg, false);
-            if (tsaUrl != null && tsaUrl.length() > 0)
+            if (validation != null)
             {
-                ValidationTimeStamp validation = new ValidationTimeStamp(tsaUrl);
                 signedData = validation.addSignedTimeStamp(signedData);
             }
             return signedData.getEncoded();
@@ -65,6 +65,7 @@ import org.bouncycastle.util.Store;
 import de.init.seal_service.pdf.pdfbox_signature.cert.CertificateVerificationException;
 import de.init.seal_service.pdf.pdfbox_signature.cert.CertificateVerifier;
 import de.init.seal_service.pdf.pdfbox_signature.util.ConnectedInputStream;
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
 
 /**
  * Utility class for the signature / timestamp examples.
@@ -432,6 +433,7 @@ public class SigUtils
             return url.openStream();
         }
         HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        Deadline.configure(con);
         int responseCode = con.getResponseCode();
         LOG.info(responseCode + " " + con.getResponseMessage());
         if (responseCode == HttpURLConnection.HTTP_MOVED_TEMP ||
@@ -448,6 +450,7 @@ public class SigUtils
                 LOG.info("redirection to " + location + " followed");
                 con.disconnect();
                 con = (HttpURLConnection) new URL(location).openConnection();
+                Deadline.configure(con);
             }
             else
             {
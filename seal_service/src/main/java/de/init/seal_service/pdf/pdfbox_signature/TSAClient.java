@@ -25,6 +25,7 @@ import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
 import java.util.Random;
@@ -41,12 +42,19 @@ import org.bouncycastle.tsp.TimeStampRequestGenerator;
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
+import de.init.seal_service.pdf.tsa.TimeStamper;
+
 /**
  * Time Stamping Authority (TSA) Client [RFC 3161].
+ * <p>
+ * Instances are thread-safe, the message digest is created per request. Subclasses may replace
+ * the transport by overriding {@link #getTSAResponse(byte[])}.
+ *
  * @author Vakhtang Koroghlishvili
  * @author John Hewson
  */
-public class TSAClient
+public class TSAClient implements TimeStamper
 {
     private static final Log LOG = LogFactory.getLog(TSAClient.class);
 
@@ -56,7 +64,7 @@ public class TSAClient
     private final URL url;
     private final String username;
     private final String password;
-    private final MessageDigest digest;
+    private final String digestAlgorithm;
 
     // SecureRandom.getInstanceStrong() would be better, but sometimes blocks on Linux
     private static final Random RANDOM = new SecureRandom();
@@ -69,11 +77,31 @@ public class TSAClient
      * @param digest the message digest to use
      */
     public TSAClient(URL url, String username, String password, MessageDigest digest)
+    {
+        this(url, username, password, digest.getAlgorithm());
+    }
+
+    /**
+     *
+     * @param url the URL of the TSA service
+     * @param username user name of TSA
+     * @param password password of TSA
+     * @param digestAlgorithm the message digest algorithm to use, e.g. "SHA-256"
+     */
+    public TSAClient(URL url, String username, String password, String digestAlgorithm)
     {
         this.url = url;
         this.username = username;
         this.password = password;
-        this.digest = digest;
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * @return the URL of the TSA service
+     */
+    public URL getUrl()
+    {
+        return url;
     }
 
     /**
@@ -83,9 +111,18 @@ public class TSAClient
      * @throws IOException if there was an error with the connection or data from the TSA server,
      *                     or if the time stamp response could not be validated
      */
+    @Override
     public TimeStampToken getTimeStampToken(InputStream content) throws IOException
     {
-        digest.reset();
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(digestAlgorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException(e);
+        }
         DigestInputStream dis = new DigestInputStream(content, digest);
         while (dis.read() != -1)
         {
@@ -128,30 +165,43 @@ public class TSAClient
         return timeStampToken;
     }
 
-    // gets response data for the given encoded TimeStampRequest data
-    // throws IOException if a connection to the TSA cannot be established
-    private byte[] getTSAResponse(byte[] request) throws IOException
+    /**
+     * @return the value of the "Authorization" header, or null if no credentials are configured
+     */
+    protected String getAuthorization()
+    {
+        if (username == null || password == null || username.isEmpty() || password.isEmpty())
+        {
+            return null;
+        }
+        return "Basic " + Base64.getEncoder().encodeToString(
+                (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets response data for the given encoded TimeStampRequest data.
+     *
+     * @param request the encoded TimeStampRequest
+     * @return the encoded TimeStampResponse
+     * @throws IOException if a connection to the TSA cannot be established
+     */
+    protected byte[] getTSAResponse(byte[] request) throws IOException
     {
         LOG.debug("Opening connection to TSA server");
 
         // todo: support proxy servers
         URLConnection connection = url.openConnection();
+        Deadline.configure(connection);
         connection.setDoOutput(true);
         connection.setDoInput(true);
         connection.setRequestProperty("Content-Type", "application/timestamp-query");
 
         LOG.debug("Established connection to TSA server");
 
-        if (username != null && password != null && !username.isEmpty() && !password.isEmpty())
+        String authorization = getAuthorization();
+        if (authorization != null)
         {
-            String contentEncoding = connection.getContentEncoding();
-            if (contentEncoding == null)
-            {
-                contentEncoding = StandardCharsets.UTF_8.name();
-            }
-            connection.setRequestProperty("Authorization", 
-                    "Basic " + new String(Base64.getEncoder().encode((username + ":" + password).
-                            getBytes(contentEncoding))));
+            connection.setRequestProperty("Authorization", authorization);
         }
 
         // read response
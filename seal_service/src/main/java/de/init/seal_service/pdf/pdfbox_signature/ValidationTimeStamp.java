@@ -41,6 +41,8 @@ import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationStore;
 import org.bouncycastle.tsp.TimeStampToken;
 
+import de.init.seal_service.pdf.tsa.TimeStamper;
+
 /**
  * This class wraps the TSAClient and the work that has to be done with it. Like Adding Signed
  * TimeStamps to a signature, or creating a CMS timestamp attribute (with a signed timestamp)
@@ -50,7 +52,7 @@ import org.bouncycastle.tsp.TimeStampToken;
  */
 public class ValidationTimeStamp
 {
-    private TSAClient tsaClient;
+    private TimeStamper tsaClient;
 
     /**
      * @param tsaUrl The url where TS-Request will be done.
@@ -66,6 +68,14 @@ public class ValidationTimeStamp
         }
     }
 
+    /**
+     * @param tsaClient a (long-lived) time stamper, e.g. shared between requests
+     */
+    public ValidationTimeStamp(TimeStamper tsaClient)
+    {
+        this.tsaClient = tsaClient;
+    }
+
     /**
      * Creates a signed timestamp token by the given input stream.
      * 
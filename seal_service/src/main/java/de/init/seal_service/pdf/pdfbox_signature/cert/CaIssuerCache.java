@@ -0,0 +1,290 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.pdfbox_signature.cert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.jboss.logging.Logger;
+
+import de.init.seal_service.pdf.pdfbox_signature.SigUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Cache of CA issuer certificates downloaded from AIA (authority information
+ * access) URLs, by URL and by subject key identifier. Successful downloads are
+ * kept for the TTL, failing URLs aren't tried again for the negative TTL. The
+ * key identifier index expires with the download the certificate came from.
+ * <p>
+ * Optionally, the certificates are also written to a directory, content
+ * addressed by their SHA-256 hash, together with a small index file per URL,
+ * so a restarted instance builds known chains without downloads.
+ */
+public class CaIssuerCache {
+
+	private record Entry(List<X509Certificate> certificates, Instant expires) {
+	}
+
+	private record Indexed(X509Certificate certificate, Instant expires) {
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(CaIssuerCache.class);
+
+	/**
+	 * @param certificate certificate
+	 * @return authority key identifier (hex) or {@code null}
+	 */
+	static String getAuthorityKeyIdentifier(final X509Certificate certificate) throws IOException {
+		final var extensionValue = certificate.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+		if (extensionValue == null) {
+			return null;
+		}
+		final var keyIdentifier = AuthorityKeyIdentifier
+				.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue)).getKeyIdentifier();
+		return keyIdentifier == null ? null : HexFormat.of().formatHex(keyIdentifier);
+	}
+
+	/**
+	 * @param certificate certificate
+	 * @return subject key identifier (hex) or {@code null}
+	 */
+	static String getSubjectKeyIdentifier(final X509Certificate certificate) throws IOException {
+		final var extensionValue = certificate.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+		if (extensionValue == null) {
+			return null;
+		}
+		return HexFormat.of().formatHex(
+				ASN1OctetString.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue)).getOctets());
+	}
+
+	private static String sha256(final byte[] data) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 isn't available", e);
+		}
+	}
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final Map<String, Instant> failures = new ConcurrentHashMap<>();
+
+	private final Map<String, Indexed> bySubjectKeyIdentifier = new ConcurrentHashMap<>();
+
+	private final Duration ttl;
+
+	private final Duration negativeTtl;
+
+	private final Path directory;
+
+	private final Counter hits;
+
+	private final Counter diskHits;
+
+	private final Counter misses;
+
+	private final Counter negativeHits;
+
+	/**
+	 * @param ttl           how long downloaded certificates are used
+	 * @param negativeTtl   how long a failing URL isn't tried again
+	 * @param directory     optional directory for persisted certificates, created
+	 *                      if missing
+	 * @param meterRegistry for hit / miss metrics
+	 */
+	public CaIssuerCache(final Duration ttl, final Duration negativeTtl, final Path directory,
+			final MeterRegistry meterRegistry) throws IOException {
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.directory = directory;
+		if (directory != null) {
+			Files.createDirectories(directory);
+		}
+		this.hits = Counter.builder("seal.ltv.aia.cache").description("CA issuer certificate cache lookups")
+				.tag("result", "hit").register(meterRegistry);
+		this.diskHits = Counter.builder("seal.ltv.aia.cache").description("CA issuer certificate cache lookups")
+				.tag("result", "disk-hit").register(meterRegistry);
+		this.misses = Counter.builder("seal.ltv.aia.cache").description("CA issuer certificate cache lookups")
+				.tag("result", "miss").register(meterRegistry);
+		this.negativeHits = Counter.builder("seal.ltv.aia.cache").description("CA issuer certificate cache lookups")
+				.tag("result", "negative").register(meterRegistry);
+		meterRegistry.gaugeMapSize("seal.ltv.aia.cache.size", Tags.empty(), this.entries);
+	}
+
+	private List<X509Certificate> download(final String url) throws IOException, CertificateException {
+		try (var in = SigUtils.openURL(url)) {
+			final List<X509Certificate> certificates = new ArrayList<>();
+			for (final var certificate : CertificateFactory.getInstance("X.509").generateCertificates(in)) {
+				certificates.add((X509Certificate) certificate);
+			}
+			return certificates;
+		}
+	}
+
+	/**
+	 * @param certificate certificate whose issuer is looked for
+	 * @return a cached certificate whose subject key identifier is the authority
+	 *         key identifier of the given certificate, or {@code null} (also if
+	 *         its TTL is over)
+	 */
+	public X509Certificate findIssuer(final X509Certificate certificate) {
+		try {
+			final var authorityKeyIdentifier = getAuthorityKeyIdentifier(certificate);
+			if (authorityKeyIdentifier == null) {
+				return null;
+			}
+			final var indexed = this.bySubjectKeyIdentifier.get(authorityKeyIdentifier);
+			if (indexed == null) {
+				return null;
+			}
+			if (!Instant.now().isBefore(indexed.expires())) {
+				// downloaded again by URL, if still needed
+				this.bySubjectKeyIdentifier.remove(authorityKeyIdentifier, indexed);
+				return null;
+			}
+			final var issuer = indexed.certificate();
+			if (!issuer.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+				return null;
+			}
+			this.hits.increment();
+			return issuer;
+		} catch (final IOException e) {
+			LOGGER.warn("Invalid authority key identifier in " + certificate.getSubjectX500Principal(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param url CA issuers URL
+	 * @return the (cached) certificates of the URL
+	 * @throws IOException          if the download fails or failed recently
+	 * @throws CertificateException if the certificates can't be parsed
+	 */
+	public List<X509Certificate> getCertificates(final String url) throws IOException, CertificateException {
+		final var now = Instant.now();
+		final var entry = this.entries.get(url);
+		if (entry != null && now.isBefore(entry.expires())) {
+			this.hits.increment();
+			return entry.certificates();
+		}
+		final var failedUntil = this.failures.get(url);
+		if (failedUntil != null && now.isBefore(failedUntil)) {
+			this.negativeHits.increment();
+			throw new IOException("CA issuers URL " + url + " failed recently, not trying again until " + failedUntil);
+		}
+		final var persisted = read(url, now);
+		if (persisted != null) {
+			put(url, persisted);
+			this.diskHits.increment();
+			return persisted.certificates();
+		}
+
+		this.misses.increment();
+		final List<X509Certificate> certificates;
+		try {
+			certificates = download(url);
+		} catch (IOException | CertificateException e) {
+			this.failures.put(url, now.plus(this.negativeTtl));
+			throw e;
+		}
+		this.failures.remove(url);
+		put(url, new Entry(List.copyOf(certificates), now.plus(this.ttl)));
+		write(url, certificates);
+		return certificates;
+	}
+
+	private void put(final String url, final Entry entry) {
+		this.entries.put(url, entry);
+		for (final X509Certificate certificate : entry.certificates()) {
+			try {
+				final var subjectKeyIdentifier = getSubjectKeyIdentifier(certificate);
+				if (subjectKeyIdentifier != null) {
+					this.bySubjectKeyIdentifier.put(subjectKeyIdentifier, new Indexed(certificate, entry.expires()));
+				}
+			} catch (final IOException e) {
+				LOGGER.warn("Invalid subject key identifier in " + certificate.getSubjectX500Principal(), e);
+			}
+		}
+	}
+
+	private Entry read(final String url, final Instant now) {
+		if (this.directory == null) {
+			return null;
+		}
+		final var index = this.directory.resolve(sha256(url.getBytes(StandardCharsets.UTF_8)) + ".url");
+		try {
+			if (!Files.isRegularFile(index)) {
+				return null;
+			}
+			final var expires = Files.getLastModifiedTime(index).toInstant().plus(this.ttl);
+			if (!now.isBefore(expires)) {
+				return null;
+			}
+			final var certificateFactory = CertificateFactory.getInstance("X.509");
+			final List<X509Certificate> certificates = new ArrayList<>();
+			for (final String hash : Files.readAllLines(index, StandardCharsets.US_ASCII)) {
+				final var encoded = Files.readAllBytes(this.directory.resolve(hash + ".cer"));
+				certificates.add((X509Certificate) certificateFactory
+						.generateCertificate(new ByteArrayInputStream(encoded)));
+			}
+			return new Entry(List.copyOf(certificates), expires);
+		} catch (IOException | CertificateException e) {
+			LOGGER.warn("Couldn't read persisted CA issuer certificates of " + url + "!", e);
+			return null;
+		}
+	}
+
+	private void write(final String url, final List<X509Certificate> certificates) {
+		if (this.directory == null) {
+			return;
+		}
+		try {
+			final List<String> hashes = new ArrayList<>();
+			for (final X509Certificate certificate : certificates) {
+				final var encoded = certificate.getEncoded();
+				final var hash = sha256(encoded);
+				final var file = this.directory.resolve(hash + ".cer");
+				if (!Files.exists(file)) {
+					writeAtomic(file, encoded);
+				}
+				hashes.add(hash);
+			}
+			writeAtomic(this.directory.resolve(sha256(url.getBytes(StandardCharsets.UTF_8)) + ".url"),
+					String.join("\n", hashes).getBytes(StandardCharsets.US_ASCII));
+		} catch (IOException | CertificateEncodingException e) {
+			LOGGER.warn("Couldn't persist CA issuer certificates of " + url + "!", e);
+		}
+	}
+
+	private void writeAtomic(final Path file, final byte[] data) throws IOException {
+		final var tmp = Files.createTempFile(this.directory, file.getFileName().toString(), ".tmp");
+		Files.write(tmp, data);
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
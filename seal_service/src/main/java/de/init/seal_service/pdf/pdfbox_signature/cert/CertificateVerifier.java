@@ -75,11 +75,24 @@ public final class CertificateVerifier
 {
     private static final Log LOG = LogFactory.getLog(CertificateVerifier.class);
 
+    private static volatile CaIssuerCache caIssuerCache;
+
     private CertificateVerifier()
     {
 
     }
 
+    /**
+     * Sets a cache for the certificates downloaded from CA issuers URLs, used by
+     * {@link #downloadExtraCertificates(X509Extension)}.
+     *
+     * @param cache shared cache or null to download every time
+     */
+    public static void setCaIssuerCache(CaIssuerCache cache)
+    {
+        caIssuerCache = cache;
+    }
+
     /**
      * Attempts to build a certification chain for given certificate and to
      * verify it. Relies on a set of root CA certificates and intermediate
@@ -297,6 +310,18 @@ public final class CertificateVerifier
         // https://tools.ietf.org/html/rfc3280#section-4.2.2.1
         // https://tools.ietf.org/html/rfc4325
         Set<X509Certificate> resultSet = new HashSet<>();
+        CaIssuerCache cache = caIssuerCache;
+        if (cache != null && ext instanceof X509Certificate)
+        {
+            // known issuer (by key identifier) within the TTL of its download, no need to
+            // look at the URLs; after the TTL the URLs are checked again
+            X509Certificate issuer = cache.findIssuer((X509Certificate) ext);
+            if (issuer != null)
+            {
+                resultSet.add(issuer);
+                return resultSet;
+            }
+        }
         byte[] authorityExtensionValue = ext.getExtensionValue(Extension.authorityInfoAccess.getId());
         if (authorityExtensionValue == null)
         {
@@ -332,10 +357,9 @@ public final class CertificateVerifier
             ASN1OctetString uri = (ASN1OctetString) location.getBaseObject();
             String urlString = new String(uri.getOctets());
             LOG.info("CA issuers URL: " + urlString);
-            try (InputStream in = SigUtils.openURL(urlString))
+            try
             {
-                CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-                Collection<? extends Certificate> altCerts = certFactory.generateCertificates(in);
+                Collection<? extends Certificate> altCerts = fetchCaIssuerCertificates(urlString, cache);
                 altCerts.forEach(altCert -> resultSet.add((X509Certificate) altCert));
                 LOG.info("CA issuers URL: " + altCerts.size() + " certificate(s) downloaded");
             }
@@ -352,6 +376,20 @@ public final class CertificateVerifier
         return resultSet;
     }
 
+    private static Collection<? extends Certificate> fetchCaIssuerCertificates(String urlString,
+            CaIssuerCache cache) throws IOException, CertificateException
+    {
+        if (cache != null)
+        {
+            return cache.getCertificates(urlString);
+        }
+        try (InputStream in = SigUtils.openURL(urlString))
+        {
+            CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
+            return certFactory.generateCertificates(in);
+        }
+    }
+
     /**
      * Attempts to build a certification chain for given certificate and to
      * verify it. Relies on a set of root CA certificates (trust anchors) and a
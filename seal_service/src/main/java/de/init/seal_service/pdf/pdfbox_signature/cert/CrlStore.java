@@ -0,0 +1,364 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.pdfbox_signature.cert;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.CRLReason;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.ASN1IA5String;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Store of parsed CRLs, keyed by distribution point URL. Each CRL is downloaded
+ * once and refreshed in the background before its nextUpdate, so a seal only
+ * waits for the first download of a distribution point. If the CRL advertises a
+ * delta CRL (freshest CRL extension), only the delta is downloaded until the
+ * base CRL is due.
+ * <p>
+ * The revoked serial numbers of base and delta CRL are indexed in a hash map,
+ * so a revocation check doesn't scan a large CRL.
+ * <p>
+ * There is at most one scheduled refresh per URL: scheduling a refresh (after
+ * a download on a miss or after a refresh) cancels the one scheduled before.
+ */
+public class CrlStore {
+
+	/**
+	 * Parsed CRL of a distribution point.
+	 */
+	private static final class Entry {
+
+		private final X509CRL base;
+
+		private final Instant baseNextUpdate;
+
+		private final X509CRL delta;
+
+		private final Map<BigInteger, X509CRLEntry> revoked;
+
+		private volatile Instant lastAccess = Instant.now();
+
+		Entry(final X509CRL base, final Instant baseNextUpdate, final X509CRL delta) {
+			this.base = base;
+			this.baseNextUpdate = baseNextUpdate;
+			this.delta = delta;
+			final var revoked = new HashMap<BigInteger, X509CRLEntry>();
+			addAll(revoked, base);
+			if (delta != null) {
+				addAll(revoked, delta);
+			}
+			this.revoked = revoked;
+		}
+
+		private static void addAll(final Map<BigInteger, X509CRLEntry> revoked, final X509CRL crl) {
+			if (crl.getRevokedCertificates() == null) {
+				return;
+			}
+			for (final X509CRLEntry crlEntry : crl.getRevokedCertificates()) {
+				// a delta CRL can release a certificate on hold
+				if (crlEntry.getRevocationReason() == CRLReason.REMOVE_FROM_CRL) {
+					revoked.remove(crlEntry.getSerialNumber());
+				} else {
+					revoked.put(crlEntry.getSerialNumber(), crlEntry);
+				}
+			}
+		}
+
+		Instant getNextUpdate() {
+			if (this.delta == null) {
+				return this.baseNextUpdate;
+			}
+			final var deltaNextUpdate = this.delta.getNextUpdate().toInstant();
+			return deltaNextUpdate.isBefore(this.baseNextUpdate) ? deltaNextUpdate : this.baseNextUpdate;
+		}
+
+		boolean isExpired(final Instant now) {
+			return !now.isBefore(getNextUpdate());
+		}
+
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(CrlStore.class);
+
+	private static BigInteger getCrlNumber(final X509CRL crl, final ASN1ObjectIdentifier extension)
+			throws IOException {
+		final var extensionValue = crl.getExtensionValue(extension.getId());
+		return extensionValue == null ? null
+				: ASN1Integer.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue)).getValue();
+	}
+
+	/**
+	 * @param crl base CRL
+	 * @return URLs of the delta CRL (freshest CRL extension), empty if none is
+	 *         advertised
+	 */
+	static List<String> getDeltaCrlUrls(final X509CRL crl) throws IOException {
+		final List<String> urls = new ArrayList<>();
+		final var extensionValue = crl.getExtensionValue(Extension.freshestCRL.getId());
+		if (extensionValue == null) {
+			return urls;
+		}
+		final var distPoint = CRLDistPoint.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue));
+		for (final DistributionPoint dp : distPoint.getDistributionPoints()) {
+			final var dpn = dp.getDistributionPoint();
+			if (dpn != null && dpn.getType() == DistributionPointName.FULL_NAME) {
+				for (final GeneralName genName : GeneralNames.getInstance(dpn.getName()).getNames()) {
+					if (genName.getTagNo() == GeneralName.uniformResourceIdentifier) {
+						final var url = ASN1IA5String.getInstance(genName.getName()).getString();
+						if (url.startsWith("http://") || url.startsWith("https://")) {
+							urls.add(url);
+						}
+					}
+				}
+			}
+		}
+		return urls;
+	}
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final Map<String, CompletableFuture<Entry>> downloads = new ConcurrentHashMap<>();
+
+	private final Map<String, ScheduledFuture<?>> refreshTasks = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService scheduler;
+
+	private final Duration refreshAhead;
+
+	private final Duration retryInterval;
+
+	private final Duration idleTimeout;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private final Counter refreshes;
+
+	private final Counter refreshFailures;
+
+	/**
+	 * @param scheduler     runs the background refreshes
+	 * @param refreshAhead  how long before nextUpdate a CRL is refreshed
+	 * @param retryInterval delay after a failed refresh
+	 * @param idleTimeout   CRLs not used for this time aren't refreshed anymore
+	 * @param meterRegistry for lookup and refresh metrics
+	 */
+	public CrlStore(final ScheduledExecutorService scheduler, final Duration refreshAhead,
+			final Duration retryInterval, final Duration idleTimeout, final MeterRegistry meterRegistry) {
+		this.scheduler = scheduler;
+		this.refreshAhead = refreshAhead;
+		this.retryInterval = retryInterval;
+		this.idleTimeout = idleTimeout;
+		this.hits = Counter.builder("seal.ltv.crl.store").description("CRL store lookups").tag("result", "hit")
+				.register(meterRegistry);
+		this.misses = Counter.builder("seal.ltv.crl.store").description("CRL store lookups").tag("result", "miss")
+				.register(meterRegistry);
+		this.refreshes = Counter.builder("seal.ltv.crl.refresh").description("Background CRL refreshes")
+				.tag("result", "success").register(meterRegistry);
+		this.refreshFailures = Counter.builder("seal.ltv.crl.refresh").description("Background CRL refreshes")
+				.tag("result", "failure").register(meterRegistry);
+		meterRegistry.gaugeMapSize("seal.ltv.crl.store.size", Tags.empty(), this.entries);
+	}
+
+	/**
+	 * Checks whether the certificate was revoked at signing time, using the index
+	 * of the stored CRL (including its delta CRL).
+	 *
+	 * @param crl      CRL returned by {@link #getCrl(String)}
+	 * @param cert     certificate to be checked
+	 * @param signDate date the certificate was used for signing
+	 * @param url      distribution point URL of the CRL
+	 * @throws RevokedCertificateException if the certificate was revoked at
+	 *                                     signing time
+	 */
+	public void checkRevocation(final X509CRL crl, final X509Certificate cert, final Date signDate, final String url)
+			throws RevokedCertificateException {
+		final var entry = this.entries.get(url);
+		if (entry == null || entry.base != crl) {
+			// replaced by a refresh in between
+			CRLVerifier.checkRevocation(crl, cert, signDate, url);
+			return;
+		}
+		final var revokedEntry = entry.revoked.get(cert.getSerialNumber());
+		if (revokedEntry != null && revokedEntry.getRevocationDate().compareTo(signDate) <= 0) {
+			throw new RevokedCertificateException(
+					"The certificate was revoked by CRL " + url + " on " + revokedEntry.getRevocationDate(),
+					revokedEntry.getRevocationDate());
+		}
+	}
+
+	private Entry download(final String url, final Entry previous) throws IOException, GeneralSecurityException {
+		final var now = Instant.now();
+		final X509CRL base;
+		final Instant baseNextUpdate;
+		if (previous != null && previous.baseNextUpdate.isAfter(now.plus(this.refreshAhead))) {
+			// base CRL isn't due yet, only its delta
+			base = previous.base;
+			baseNextUpdate = previous.baseNextUpdate;
+		} else {
+			base = CRLVerifier.downloadCRLFromWeb(url);
+			// without nextUpdate the CRL is downloaded again after the retry interval
+			baseNextUpdate = base.getNextUpdate() == null ? now.plus(this.retryInterval).plus(this.refreshAhead)
+					: base.getNextUpdate().toInstant();
+		}
+		X509CRL delta = null;
+		for (final String deltaUrl : getDeltaCrlUrls(base)) {
+			try {
+				delta = CRLVerifier.downloadCRLFromWeb(deltaUrl);
+			} catch (IOException | GeneralSecurityException e) {
+				LOGGER.warn("Couldn't download delta CRL " + deltaUrl + "!", e);
+				continue;
+			}
+			// the delta must refer to this base CRL (or an older one)
+			final var baseNumber = getCrlNumber(base, Extension.cRLNumber);
+			final var deltaBaseNumber = getCrlNumber(delta, Extension.deltaCRLIndicator);
+			if (baseNumber == null || deltaBaseNumber == null || deltaBaseNumber.compareTo(baseNumber) > 0
+					|| delta.getNextUpdate() == null) {
+				LOGGER.warn("Ignoring delta CRL " + deltaUrl + ", it doesn't match the base CRL " + url);
+				delta = null;
+				continue;
+			}
+			break;
+		}
+		return new Entry(base, baseNextUpdate, delta);
+	}
+
+	/**
+	 * @param url CRL distribution point URL
+	 * @return the stored CRL, downloaded only if it isn't stored yet (or expired
+	 *         since its refreshes failed); not verified
+	 */
+	public X509CRL getCrl(final String url) throws IOException, GeneralSecurityException {
+		final var entry = getEntry(url);
+		entry.lastAccess = Instant.now();
+		return entry.base;
+	}
+
+	/**
+	 * @param url CRL distribution point URL
+	 * @return the current delta CRL of the stored CRL or {@code null}
+	 */
+	public X509CRL getDeltaCrl(final String url) {
+		final var entry = this.entries.get(url);
+		return entry == null ? null : entry.delta;
+	}
+
+	private Entry getEntry(final String url) throws IOException, GeneralSecurityException {
+		final var entry = this.entries.get(url);
+		if (entry != null && !entry.isExpired(Instant.now())) {
+			this.hits.increment();
+			return entry;
+		}
+		this.misses.increment();
+
+		// one download per URL, concurrent seals wait for it
+		final var download = new CompletableFuture<Entry>();
+		final var running = this.downloads.putIfAbsent(url, download);
+		if (running != null) {
+			return join(running);
+		}
+		try {
+			final var downloaded = download(url, entry);
+			this.entries.put(url, downloaded);
+			scheduleRefresh(url, downloaded);
+			download.complete(downloaded);
+			return downloaded;
+		} catch (IOException | GeneralSecurityException | RuntimeException e) {
+			download.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.downloads.remove(url, download);
+		}
+	}
+
+	private Entry join(final CompletableFuture<Entry> download) throws IOException, GeneralSecurityException {
+		try {
+			return download.join();
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof final GeneralSecurityException gse) {
+				throw gse;
+			}
+			if (e.getCause() instanceof final IOException ioe) {
+				throw ioe;
+			}
+			throw e;
+		}
+	}
+
+	private void refresh(final String url) {
+		final var entry = this.entries.get(url);
+		if (entry == null) {
+			return;
+		}
+		if (Duration.between(entry.lastAccess, Instant.now()).compareTo(this.idleTimeout) > 0) {
+			LOGGER.info("CRL " + url + " wasn't used for " + this.idleTimeout + ", removing it");
+			// unless downloaded again in between, the refresh task is this one
+			this.refreshTasks.compute(url, (key, task) -> this.entries.remove(url, entry) ? null : task);
+			return;
+		}
+		try {
+			final var refreshed = download(url, entry);
+			refreshed.lastAccess = entry.lastAccess;
+			this.entries.put(url, refreshed);
+			this.refreshes.increment();
+			scheduleRefresh(url, refreshed);
+		} catch (IOException | GeneralSecurityException | RuntimeException e) {
+			LOGGER.warn("Couldn't refresh CRL " + url + ", retrying in " + this.retryInterval + "!", e);
+			this.refreshFailures.increment();
+			schedule(url, this.retryInterval);
+		}
+	}
+
+	private void schedule(final String url, final Duration delay) {
+		this.refreshTasks.compute(url, (key, previous) -> {
+			if (previous != null) {
+				// replaced, e.g. by a download after the entry expired
+				previous.cancel(false);
+			}
+			return this.scheduler.schedule(() -> refresh(url), delay.toMillis(), TimeUnit.MILLISECONDS);
+		});
+	}
+
+	private void scheduleRefresh(final String url, final Entry entry) {
+		var delay = Duration.between(Instant.now(), entry.getNextUpdate().minus(this.refreshAhead));
+		if (delay.compareTo(this.retryInterval) < 0) {
+			// short-lived CRLs, don't download them continuously
+			delay = this.retryInterval;
+		}
+		schedule(url, delay);
+	}
+
+}
@@ -68,6 +68,7 @@ import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
 
 import de.init.seal_service.pdf.pdfbox_signature.SigUtils;
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
 
 /**
  * Helper Class for OCSP-Operations with bouncy castle.
@@ -85,6 +86,7 @@ public class OcspHelper
     private final String ocspUrl;
     private DEROctetString encodedNonce;
     private X509Certificate ocspResponderCertificate;
+    private OcspResponseCache cache;
     private final JcaX509CertificateConverter certificateConverter = new JcaX509CertificateConverter();
     
     // SecureRandom.getInstanceStrong() would be better, but sometimes blocks on Linux
@@ -132,11 +134,36 @@ public class OcspHelper
      */
     public OCSPResp getResponseOcsp() throws IOException, OCSPException, RevokedCertificateException
     {
+        if (cache != null)
+        {
+            OCSPResp cachedResponse = cache.get(issuerCertificate, certificateToCheck);
+            if (cachedResponse != null)
+            {
+                // no nonce was sent, so the response is verified based on time
+                encodedNonce = null;
+                verifyOcspResponse(cachedResponse);
+                return cachedResponse;
+            }
+        }
         OCSPResp ocspResponse = performRequest(ocspUrl);
         verifyOcspResponse(ocspResponse);
+        if (cache != null)
+        {
+            cache.put(issuerCertificate, certificateToCheck, ocspResponse);
+        }
         return ocspResponse;
     }
 
+    /**
+     * Sets a cache for verified responses, which is consulted before the OCSP request.
+     *
+     * @param cache shared response cache or null
+     */
+    public void setCache(OcspResponseCache cache)
+    {
+        this.cache = cache;
+    }
+
     /**
      * Get responder certificate. This is available after {@link #getResponseOcsp()} has been
      * called. This method should be used instead of {@code basicResponse.getCerts()[0]}
@@ -418,11 +445,16 @@ public class OcspHelper
      * Checks if the nonce in the response matches.
      * 
      * @param basicResponse Response to be checked
-     * @return true if the nonce is present and matches, false if nonce is missing.
+     * @return true if the nonce is present and matches, false if nonce is missing or none was
+     * sent (cached response).
      * @throws OCSPException if the nonce is different
      */
     private boolean checkNonce(BasicOCSPResp basicResponse) throws OCSPException
     {
+        if (encodedNonce == null)
+        {
+            return false;
+        }
         Extension nonceExt = basicResponse.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
         if (nonceExt != null)
         {
@@ -460,6 +492,7 @@ public class OcspHelper
         HttpURLConnection httpConnection = (HttpURLConnection) url.openConnection();
         try
         {
+            Deadline.configure(httpConnection);
             httpConnection.setRequestProperty("Content-Type", "application/ocsp-request");
             httpConnection.setRequestProperty("Accept", "application/ocsp-response");
             httpConnection.setRequestMethod("POST");
@@ -0,0 +1,224 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.pdfbox_signature.cert;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Shared cache of successful OCSP responses, keyed by issuer key hash and
+ * serial number (like the OCSP CertID). Entries expire at the nextUpdate of the
+ * response, but latest after the max age; responses without nextUpdate aren't
+ * cached.
+ * <p>
+ * Optionally, responses are also written to a directory and read from there
+ * after a restart, so a new instance doesn't query the responder for every
+ * certificate at once.
+ */
+public class OcspResponseCache {
+
+	private record Entry(OCSPResp response, Instant expires) {
+	}
+
+	private record Key(String issuerKeyHash, BigInteger serialNumber) {
+
+		String getFileName() {
+			return this.issuerKeyHash + "-" + this.serialNumber.toString(16) + ".ocsp";
+		}
+
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(OcspResponseCache.class);
+
+	private static Instant getNextUpdate(final OCSPResp response) throws OCSPException {
+		final var basicResponse = (BasicOCSPResp) response.getResponseObject();
+		if (basicResponse == null || basicResponse.getResponses().length != 1) {
+			return null;
+		}
+		final var nextUpdate = basicResponse.getResponses()[0].getNextUpdate();
+		return nextUpdate == null ? null : nextUpdate.toInstant();
+	}
+
+	private static Key key(final X509Certificate issuer, final X509Certificate certificate) {
+		try {
+			// SHA-1 of the issuer public key, as in the OCSP CertID
+			final var publicKey = SubjectPublicKeyInfo.getInstance(issuer.getPublicKey().getEncoded())
+					.getPublicKeyData().getBytes();
+			final var issuerKeyHash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(publicKey));
+			return new Key(issuerKeyHash, certificate.getSerialNumber());
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 isn't available", e);
+		}
+	}
+
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	private final int maxEntries;
+
+	private final Duration maxAge;
+
+	private final Path directory;
+
+	private final Counter hits;
+
+	private final Counter diskHits;
+
+	private final Counter misses;
+
+	/**
+	 * @param maxEntries    maximum number of cached responses in memory
+	 * @param maxAge        maximum age of a cached response, even if its
+	 *                      nextUpdate is later
+	 * @param directory     optional directory for persisted responses, created if
+	 *                      missing
+	 * @param meterRegistry for hit / miss metrics
+	 */
+	public OcspResponseCache(final int maxEntries, final Duration maxAge, final Path directory,
+			final MeterRegistry meterRegistry) throws IOException {
+		this.maxEntries = maxEntries;
+		this.maxAge = maxAge;
+		this.directory = directory;
+		if (directory != null) {
+			Files.createDirectories(directory);
+		}
+		this.hits = Counter.builder("seal.ltv.ocsp.cache").description("OCSP response cache lookups")
+				.tag("result", "hit").register(meterRegistry);
+		this.diskHits = Counter.builder("seal.ltv.ocsp.cache").description("OCSP response cache lookups")
+				.tag("result", "disk-hit").register(meterRegistry);
+		this.misses = Counter.builder("seal.ltv.ocsp.cache").description("OCSP response cache lookups")
+				.tag("result", "miss").register(meterRegistry);
+		meterRegistry.gaugeMapSize("seal.ltv.ocsp.cache.size", Tags.empty(), this.entries);
+	}
+
+	private Instant expires(final OCSPResp response, final Instant stored) throws OCSPException {
+		final var nextUpdate = getNextUpdate(response);
+		if (nextUpdate == null) {
+			return null;
+		}
+		final var maxExpires = stored.plus(this.maxAge);
+		return nextUpdate.isBefore(maxExpires) ? nextUpdate : maxExpires;
+	}
+
+	/**
+	 * @param issuer      issuer of the certificate
+	 * @param certificate certificate to check
+	 * @return cached, not yet expired response (not verified again) or
+	 *         {@code null}
+	 */
+	public OCSPResp get(final X509Certificate issuer, final X509Certificate certificate) {
+		final var key = key(issuer, certificate);
+		final var now = Instant.now();
+		final var entry = this.entries.get(key);
+		if (entry != null) {
+			if (now.isBefore(entry.expires())) {
+				this.hits.increment();
+				return entry.response();
+			}
+			this.entries.remove(key, entry);
+		}
+		final var persisted = read(key, now);
+		if (persisted != null) {
+			this.entries.put(key, persisted);
+			this.diskHits.increment();
+			return persisted.response();
+		}
+		this.misses.increment();
+		return null;
+	}
+
+	/**
+	 * Caches a verified, successful response.
+	 *
+	 * @param issuer      issuer of the certificate
+	 * @param certificate checked certificate
+	 * @param response    OCSP response
+	 */
+	public void put(final X509Certificate issuer, final X509Certificate certificate, final OCSPResp response) {
+		final var now = Instant.now();
+		final Instant expires;
+		try {
+			expires = expires(response, now);
+		} catch (final OCSPException e) {
+			LOGGER.warn("Couldn't read OCSP response for caching!", e);
+			return;
+		}
+		if (expires == null || !now.isBefore(expires)) {
+			return;
+		}
+		if (this.entries.size() >= this.maxEntries) {
+			removeEldest(now);
+		}
+		final var key = key(issuer, certificate);
+		this.entries.put(key, new Entry(response, expires));
+		write(key, response);
+	}
+
+	private Entry read(final Key key, final Instant now) {
+		if (this.directory == null) {
+			return null;
+		}
+		final var file = this.directory.resolve(key.getFileName());
+		try {
+			if (!Files.isRegularFile(file)) {
+				return null;
+			}
+			final var response = new OCSPResp(Files.readAllBytes(file));
+			final var expires = expires(response, Files.getLastModifiedTime(file).toInstant());
+			if (expires == null || !now.isBefore(expires)) {
+				Files.deleteIfExists(file);
+				return null;
+			}
+			return new Entry(response, expires);
+		} catch (final IOException | OCSPException e) {
+			LOGGER.warn("Couldn't read persisted OCSP response " + file + "!", e);
+			return null;
+		}
+	}
+
+	// drop expired entries, then the entry expiring first
+	private void removeEldest(final Instant now) {
+		this.entries.values().removeIf(entry -> !now.isBefore(entry.expires()));
+		if (this.entries.size() < this.maxEntries) {
+			return;
+		}
+		this.entries.entrySet().stream().min((a, b) -> a.getValue().expires().compareTo(b.getValue().expires()))
+				.ifPresent(eldest -> this.entries.remove(eldest.getKey(), eldest.getValue()));
+	}
+
+	private void write(final Key key, final OCSPResp response) {
+		if (this.directory == null) {
+			return;
+		}
+		final var file = this.directory.resolve(key.getFileName());
+		try {
+			final var tmp = Files.createTempFile(this.directory, key.getFileName(), ".tmp");
+			Files.write(tmp, response.getEncoded());
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			LOGGER.warn("Couldn't persist OCSP response " + file + "!", e);
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.pdfbox_signature.util;
+
+import java.net.URLConnection;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Point in time until a seal must be finished. The deadline of the current
+ * seal is bound to the thread (see {@link #call(Task)}), so the network calls
+ * deep inside the signature and validation code (TSA, OCSP, CRL, AIA) limit
+ * their connect and read timeouts to the remaining time. Without a deadline,
+ * the default timeout applies.
+ */
+public final class Deadline {
+
+	/**
+	 * Task running with a deadline.
+	 */
+	@FunctionalInterface
+	public interface Task<T, E extends Exception> {
+
+		T call() throws E;
+
+	}
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	private static volatile Duration defaultTimeout = Duration.ofSeconds(30);
+
+	/**
+	 * @param budget time from now
+	 * @return new deadline
+	 */
+	public static Deadline after(final Duration budget) {
+		return new Deadline(System.nanoTime() + budget.toNanos());
+	}
+
+	/**
+	 * Sets connect and read timeout of a connection, see {@link #timeout()}.
+	 *
+	 * @param connection connection, not connected yet
+	 * @throws DeadlineExceededException if the deadline has passed
+	 */
+	public static void configure(final URLConnection connection) throws DeadlineExceededException {
+		final var timeout = (int) Math.min(Integer.MAX_VALUE, timeout().toMillis());
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+	}
+
+	/**
+	 * @return deadline of the current thread or {@code null}
+	 */
+	public static Deadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @param executor executor
+	 * @return executor running the tasks with the deadline of the current thread
+	 */
+	public static Executor propagate(final Executor executor) {
+		final var deadline = current();
+		if (deadline == null) {
+			return executor;
+		}
+		return command -> executor.execute(() -> deadline.call(() -> {
+			command.run();
+			return null;
+		}));
+	}
+
+	/**
+	 * @param defaultTimeout timeout of network calls without deadline
+	 */
+	public static void setDefaultTimeout(final Duration defaultTimeout) {
+		Deadline.defaultTimeout = defaultTimeout;
+	}
+
+	/**
+	 * @return timeout for a network call: the default timeout, at most the
+	 *         remaining time of the current deadline
+	 * @throws DeadlineExceededException if the deadline has passed
+	 */
+	public static Duration timeout() throws DeadlineExceededException {
+		return timeout(defaultTimeout);
+	}
+
+	/**
+	 * @param timeout timeout of the call
+	 * @return given timeout, at most the remaining time of the current deadline
+	 *         (at least 1 ms, 0 would be infinite for connections)
+	 * @throws DeadlineExceededException if the deadline has passed
+	 */
+	public static Duration timeout(final Duration timeout) throws DeadlineExceededException {
+		final var deadline = current();
+		if (deadline == null) {
+			return timeout;
+		}
+		final var remaining = deadline.remaining();
+		if (remaining.isNegative() || remaining.isZero()) {
+			throw new DeadlineExceededException("Deadline exceeded by " + remaining.negated().toMillis() + " ms");
+		}
+		final var limited = remaining.compareTo(timeout) < 0 ? remaining : timeout;
+		return limited.toMillis() < 1 ? Duration.ofMillis(1) : limited;
+	}
+
+	private final long expires;
+
+	private Deadline(final long expires) {
+		this.expires = expires;
+	}
+
+	/**
+	 * Runs the task with this deadline bound to the current thread.
+	 *
+	 * @param task task
+	 * @return result of the task
+	 * @throws E exception of the task
+	 */
+	public <T, E extends Exception> T call(final Task<T, E> task) throws E {
+		final var previous = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			return task.call();
+		} finally {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the deadline has passed
+	 */
+	public boolean isExpired() {
+		return System.nanoTime() - this.expires >= 0;
+	}
+
+	/**
+	 * @param budget sub-budget of a stage
+	 * @return deadline after the budget, at most this deadline
+	 */
+	public Deadline limit(final Duration budget) {
+		final var limited = System.nanoTime() + budget.toNanos();
+		return limited - this.expires < 0 ? new Deadline(limited) : this;
+	}
+
+	/**
+	 * @return remaining time, negative if the deadline has passed
+	 */
+	public Duration remaining() {
+		return Duration.ofNanos(this.expires - System.nanoTime());
+	}
+
+}
@@ -0,0 +1,29 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.pdfbox_signature.util;
+
+import java.io.InterruptedIOException;
+
+/**
+ * The {@link Deadline} of a seal passed before a network call could be
+ * completed.
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+
+	private static final long serialVersionUID = -4702187446025693915L;
+
+	public DeadlineExceededException(final String message) {
+		super(message);
+	}
+
+	/**
+	 * @param message message
+	 * @param cause   failure of the network call after the deadline passed
+	 */
+	public DeadlineExceededException(final String message, final Throwable cause) {
+		super(message);
+		initCause(cause);
+	}
+
+}
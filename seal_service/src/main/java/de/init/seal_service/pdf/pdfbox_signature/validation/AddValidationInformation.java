@@ -28,12 +28,17 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
 import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -52,6 +57,7 @@ import org.bouncycastle.asn1.BEROctetString;
 import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.tsp.TSPException;
@@ -59,9 +65,13 @@ import org.bouncycastle.tsp.TimeStampToken;
 
 import de.init.seal_service.pdf.pdfbox_signature.SigUtils;
 import de.init.seal_service.pdf.pdfbox_signature.cert.CRLVerifier;
+import de.init.seal_service.pdf.pdfbox_signature.cert.CaIssuerCache;
 import de.init.seal_service.pdf.pdfbox_signature.cert.CertificateVerificationException;
+import de.init.seal_service.pdf.pdfbox_signature.cert.CrlStore;
 import de.init.seal_service.pdf.pdfbox_signature.cert.OcspHelper;
+import de.init.seal_service.pdf.pdfbox_signature.cert.OcspResponseCache;
 import de.init.seal_service.pdf.pdfbox_signature.cert.RevokedCertificateException;
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
 import de.init.seal_service.pdf.pdfbox_signature.validation.CertInformationCollector.CertSignatureInformation;
 
 /**
@@ -73,12 +83,26 @@ import de.init.seal_service.pdf.pdfbox_signature.validation.CertInformationColle
  * <p>
  * See also <a href="http://eprints.hsr.ch/id/eprint/616">Bachelor thesis (in
  * German) about LTV</a>
+ * <p>
+ * With an executor, the OCSP responses (and CRLs as fallback) of all
+ * certificates are fetched concurrently up front and then added in the same
+ * order as the serial walk through the chains, so the DSS stays deterministic.
  *
  * @author Alexis Suter
  */
 public class AddValidationInformation {
+	private record OcspResult(OcspHelper helper, OCSPResp response) {
+	}
+
 	private static final Log LOG = LogFactory.getLog(AddValidationInformation.class);
 
+	private static IOException toIOException(final Throwable cause) {
+		if (cause instanceof final IOException ioe) {
+			return ioe;
+		}
+		return new IOException(cause);
+	}
+
 	/**
 	 * Gets or creates a dictionary entry. If existing checks for the type and sets
 	 * need to be updated.
@@ -89,7 +113,7 @@ public class AddValidationInformation {
 	 * @return a Element of given class, new or existing
 	 * @throws IOException when the type of the element is wrong
 	 */
-	private static <T extends COSBase & COSUpdateInfo> T getOrCreateDictionaryEntry(final Class<T> clazz,
+	static <T extends COSBase & COSUpdateInfo> T getOrCreateDictionaryEntry(final Class<T> clazz,
 			final COSDictionary parent, final String name) throws IOException {
 		T result;
 		final var element = parent.getDictionaryObject(name);
@@ -155,6 +179,34 @@ public class AddValidationInformation {
 	// ocspChecked was added last,
 	// because of a problem with freetsa.
 
+	private final Executor executor;
+
+	private final Map<X509Certificate, CompletableFuture<OcspResult>> prefetchedOcsps = new HashMap<>();
+
+	private final Map<X509Certificate, CompletableFuture<X509CRL>> prefetchedCrls = new HashMap<>();
+
+	private OcspResponseCache ocspResponseCache;
+
+	private CrlStore crlStore;
+
+	private CaIssuerCache caIssuerCache;
+
+	/**
+	 * Fetches revocation information serially, one certificate after the other.
+	 */
+	public AddValidationInformation() {
+		this(null);
+	}
+
+	/**
+	 * @param executor fetches the revocation information of all certificates
+	 *                 concurrently, should be bounded; null fetches serially. The
+	 *                 tasks run with the {@link Deadline} of the creating thread.
+	 */
+	public AddValidationInformation(final Executor executor) {
+		this.executor = executor == null ? null : Deadline.propagate(executor);
+	}
+
 	/**
 	 * Adds all certs to the certs-array. Make sure that all certificates are inside
 	 * the certificateStore of certInformationHelper. This should be the only call
@@ -187,7 +239,7 @@ public class AddValidationInformation {
 	 */
 	private void addCrlRevocationInfo(final CertSignatureInformation certInfo) throws IOException,
 			RevokedCertificateException, GeneralSecurityException, CertificateVerificationException {
-		final var crl = CRLVerifier.downloadCRLFromWeb(certInfo.getCrlUrl());
+		final var crl = getCrl(certInfo);
 		var issuerCertificate = certInfo.getIssuerCertificate();
 
 		// find the issuer certificate (usually issuer of signature certificate)
@@ -198,11 +250,29 @@ public class AddValidationInformation {
 			}
 		}
 		crl.verify(issuerCertificate.getPublicKey(), SecurityProvider.getProvider().getName());
-		CRLVerifier.checkRevocation(crl, certInfo.getCertificate(), this.signDate.getTime(), certInfo.getCrlUrl());
+		X509CRL deltaCrl = null;
+		if (this.crlStore != null) {
+			this.crlStore.checkRevocation(crl, certInfo.getCertificate(), this.signDate.getTime(),
+					certInfo.getCrlUrl());
+			deltaCrl = this.crlStore.getDeltaCrl(certInfo.getCrlUrl());
+		} else {
+			CRLVerifier.checkRevocation(crl, certInfo.getCertificate(), this.signDate.getTime(),
+					certInfo.getCrlUrl());
+		}
 		final var crlStream = writeDataToStream(crl.getEncoded());
 		this.crls.add(crlStream);
+		// the revocation check included the delta CRL, so the DSS needs it too
+		COSStream deltaCrlStream = null;
+		if (deltaCrl != null) {
+			deltaCrl.verify(issuerCertificate.getPublicKey(), SecurityProvider.getProvider().getName());
+			deltaCrlStream = writeDataToStream(deltaCrl.getEncoded());
+			this.crls.add(deltaCrlStream);
+		}
 		if (this.correspondingCRLs != null) {
 			this.correspondingCRLs.add(crlStream);
+			if (deltaCrlStream != null) {
+				this.correspondingCRLs.add(deltaCrlStream);
+			}
 
 			byte[] signatureHash;
 			try {
@@ -247,7 +317,7 @@ public class AddValidationInformation {
 	 *
 	 * @param catalog to add Extensions into
 	 */
-	private void addExtensions(final PDDocumentCatalog catalog) {
+	static void addExtensions(final PDDocumentCatalog catalog) {
 		final var dssExtensions = new COSDictionary();
 		dssExtensions.setDirect(true);
 		catalog.getCOSObject().setItem("Extensions", dssExtensions);
@@ -277,10 +347,9 @@ public class AddValidationInformation {
 			// This certificate has been OCSP-checked before
 			return;
 		}
-		final var ocspHelper = new OcspHelper(certInfo.getCertificate(), this.signDate.getTime(),
-				certInfo.getIssuerCertificate(), new HashSet<>(this.certInformationHelper.getCertificateSet()),
-				certInfo.getOcspUrl());
-		final var ocspResp = ocspHelper.getResponseOcsp();
+		final var ocspResult = getOcspResult(certInfo);
+		final var ocspHelper = ocspResult.helper();
+		final var ocspResp = ocspResult.response();
 		this.ocspChecked.add(certInfo.getCertificate());
 		final var basicResponse = (BasicOCSPResp) ocspResp.getResponseObject();
 		final var ocspResponderCertificate = ocspHelper.getOcspResponderCertificate();
@@ -331,6 +400,10 @@ public class AddValidationInformation {
 	 * @throws IOException
 	 */
 	private void addRevocationData(final CertSignatureInformation certInfo) throws IOException {
+		if (this.executor != null) {
+			prefetchRevocationData(certInfo, new HashSet<>());
+		}
+
 		final var vri = new COSDictionary();
 		this.vriBase.setItem(certInfo.getSignatureHash(), vri);
 
@@ -394,6 +467,7 @@ public class AddValidationInformation {
 	 */
 	private void doValidation(final byte[] inPdf, final OutputStream output) throws IOException {
 		this.certInformationHelper = new CertInformationCollector();
+		this.certInformationHelper.setCaIssuerCache(this.caIssuerCache);
 		CertSignatureInformation certInfo = null;
 		try {
 			final var signature = SigUtils.getLastRelevantSignature(this.document);
@@ -449,6 +523,7 @@ public class AddValidationInformation {
 	 */
 	private void doValidation(final String filename, final OutputStream output) throws IOException {
 		this.certInformationHelper = new CertInformationCollector();
+		this.certInformationHelper.setCaIssuerCache(this.caIssuerCache);
 		CertSignatureInformation certInfo = null;
 		try {
 			final var signature = SigUtils.getLastRelevantSignature(this.document);
@@ -494,6 +569,10 @@ public class AddValidationInformation {
 		this.document.saveIncremental(output);
 	}
 
+	private X509CRL downloadCrl(final String url) throws IOException, GeneralSecurityException {
+		return this.crlStore != null ? this.crlStore.getCrl(url) : CRLVerifier.downloadCRLFromWeb(url);
+	}
+
 	/**
 	 * Tries to fetch and add CRL Data to its containers.
 	 *
@@ -530,6 +609,141 @@ public class AddValidationInformation {
 		}
 	}
 
+	/**
+	 * Gets the (prefetched) CRL of the given certificate.
+	 *
+	 * @param certInfo the certificate info, for it to get the CRL.
+	 * @return CRL, not verified yet
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	private X509CRL getCrl(final CertSignatureInformation certInfo) throws IOException, GeneralSecurityException {
+		final var prefetched = this.prefetchedCrls.remove(certInfo.getCertificate());
+		X509CRL crl = null;
+		if (prefetched != null) {
+			try {
+				crl = prefetched.join();
+			} catch (final CompletionException e) {
+				if (e.getCause() instanceof final GeneralSecurityException gse) {
+					throw gse;
+				}
+				throw toIOException(e.getCause());
+			}
+		}
+		// null if not prefetched or not needed at that time (OCSP was successful)
+		return crl != null ? crl : downloadCrl(certInfo.getCrlUrl());
+	}
+
+	/**
+	 * Gets the (prefetched) OCSP response of the given certificate.
+	 *
+	 * @param certInfo the certificate info, for it to get OCSP data.
+	 * @return verified OCSP response and the helper that requested it
+	 * @throws IOException
+	 * @throws OCSPException
+	 * @throws RevokedCertificateException
+	 */
+	private OcspResult getOcspResult(final CertSignatureInformation certInfo)
+			throws IOException, OCSPException, RevokedCertificateException {
+		final var prefetched = this.prefetchedOcsps.remove(certInfo.getCertificate());
+		if (prefetched == null) {
+			return requestOcsp(certInfo, new HashSet<>(this.certInformationHelper.getCertificateSet()));
+		}
+		try {
+			return prefetched.join();
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof final OCSPException oe) {
+				throw oe;
+			}
+			if (e.getCause() instanceof final RevokedCertificateException rce) {
+				throw rce;
+			}
+			throw toIOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Starts fetching the revocation information for all certificates of the given
+	 * chains, like {@link #addRevocationDataRecursive(CertSignatureInformation)}
+	 * would do it: OCSP first, CRL only if OCSP fails. Certificates that are only
+	 * found later (e.g. OCSP responder chains) are fetched when they are added.
+	 *
+	 * @param certInfo chains to prefetch
+	 * @param visited  already processed certificates
+	 */
+	private void prefetchRevocationData(final CertSignatureInformation certInfo, final Set<X509Certificate> visited) {
+		if (certInfo == null || certInfo.getCertificate() == null || !visited.add(certInfo.getCertificate())) {
+			return;
+		}
+		if (!certInfo.isSelfSigned()) {
+			final var certificate = certInfo.getCertificate();
+			CompletableFuture<OcspResult> ocsp = null;
+			if (certInfo.getOcspUrl() != null && certInfo.getIssuerCertificate() != null) {
+				final var additionalCerts = new HashSet<>(this.certInformationHelper.getCertificateSet());
+				ocsp = CompletableFuture.supplyAsync(() -> {
+					try {
+						return requestOcsp(certInfo, additionalCerts);
+					} catch (IOException | OCSPException | RevokedCertificateException e) {
+						throw new CompletionException(e);
+					}
+				}, this.executor);
+				this.prefetchedOcsps.put(certificate, ocsp);
+			}
+			if (certInfo.getCrlUrl() != null) {
+				final Supplier<X509CRL> crl = () -> {
+					try {
+						return downloadCrl(certInfo.getCrlUrl());
+					} catch (IOException | GeneralSecurityException e) {
+						throw new CompletionException(e);
+					}
+				};
+				final CompletableFuture<X509CRL> crlFuture;
+				if (ocsp == null) {
+					crlFuture = CompletableFuture.supplyAsync(crl, this.executor);
+				} else {
+					// CRL is only the fallback for a failed OCSP request
+					crlFuture = ocsp.handleAsync((result, e) -> e == null ? null : crl.get(), this.executor);
+				}
+				this.prefetchedCrls.put(certificate, crlFuture);
+			}
+		}
+		prefetchRevocationData(certInfo.getAlternativeCertChain(), visited);
+		prefetchRevocationData(certInfo.getCertChain(), visited);
+		prefetchRevocationData(certInfo.getTsaCerts(), visited);
+	}
+
+	private OcspResult requestOcsp(final CertSignatureInformation certInfo, final Set<X509Certificate> additionalCerts)
+			throws IOException, OCSPException, RevokedCertificateException {
+		final var ocspHelper = new OcspHelper(certInfo.getCertificate(), this.signDate.getTime(),
+				certInfo.getIssuerCertificate(), additionalCerts, certInfo.getOcspUrl());
+		ocspHelper.setCache(this.ocspResponseCache);
+		return new OcspResult(ocspHelper, ocspHelper.getResponseOcsp());
+	}
+
+	/**
+	 * @param caIssuerCache shared cache of CA issuer (AIA) certificates; null
+	 *                      downloads them for every seal
+	 */
+	public void setCaIssuerCache(final CaIssuerCache caIssuerCache) {
+		this.caIssuerCache = caIssuerCache;
+	}
+
+	/**
+	 * @param crlStore shared store of parsed CRLs, refreshed in the background;
+	 *                 null downloads each CRL
+	 */
+	public void setCrlStore(final CrlStore crlStore) {
+		this.crlStore = crlStore;
+	}
+
+	/**
+	 * @param ocspResponseCache shared cache of verified OCSP responses, consulted
+	 *                          before each OCSP request; null disables caching
+	 */
+	public void setOcspResponseCache(final OcspResponseCache ocspResponseCache) {
+		this.ocspResponseCache = ocspResponseCache;
+	}
+
 	private void updateVRI(final CertSignatureInformation certInfo, final COSDictionary vri) throws IOException {
 		if (certInfo.getCertificate().getExtensionValue(OCSPObjectIdentifiers.id_pkix_ocsp_nocheck.getId()) == null) {
 			this.correspondingOCSPs = new COSArray();
@@ -44,6 +44,7 @@ import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.SignerInformation;
 
 import de.init.seal_service.pdf.pdfbox_signature.SigUtils;
+import de.init.seal_service.pdf.pdfbox_signature.cert.CaIssuerCache;
 import de.init.seal_service.pdf.pdfbox_signature.cert.CertificateVerifier;
 
 /**
@@ -127,6 +128,8 @@ public class CertInformationCollector {
 
 	private CertSignatureInformation rootCertInfo;
 
+	private CaIssuerCache caIssuerCache;
+
 	/**
 	 * Adds multiple Certificates out of a Collection of X509CertificateHolder into
 	 * certificateSet.
@@ -211,14 +214,23 @@ public class CertInformationCollector {
 		this.urlSet.add(certInfo.issuerUrl);
 		LOG.info("Get alternative issuer certificate from: " + certInfo.issuerUrl);
 		try {
-			final var certFactory = CertificateFactory.getInstance("X.509");
-			try (var in = SigUtils.openURL(certInfo.issuerUrl)) {
-				final var altIssuerCert = (X509Certificate) certFactory.generateCertificate(in);
-				this.certificateSet.add(altIssuerCert);
-
-				certInfo.alternativeCertChain = new CertSignatureInformation();
-				traverseChain(altIssuerCert, certInfo.alternativeCertChain, maxDepth - 1);
+			final X509Certificate altIssuerCert;
+			if (this.caIssuerCache != null) {
+				final var certificates = this.caIssuerCache.getCertificates(certInfo.issuerUrl);
+				if (certificates.isEmpty()) {
+					throw new CertificateException("No certificate found");
+				}
+				altIssuerCert = certificates.get(0);
+			} else {
+				final var certFactory = CertificateFactory.getInstance("X.509");
+				try (var in = SigUtils.openURL(certInfo.issuerUrl)) {
+					altIssuerCert = (X509Certificate) certFactory.generateCertificate(in);
+				}
 			}
+			this.certificateSet.add(altIssuerCert);
+
+			certInfo.alternativeCertChain = new CertSignatureInformation();
+			traverseChain(altIssuerCert, certInfo.alternativeCertChain, maxDepth - 1);
 		} catch (IOException | CertificateException e) {
 			LOG.error("Error getting alternative issuer certificate from " + certInfo.issuerUrl, e);
 		}
@@ -362,6 +374,14 @@ public class CertInformationCollector {
 		return signerInformation;
 	}
 
+	/**
+	 * @param caIssuerCache shared cache for the alternative issuer certificates;
+	 *                      null downloads them every time
+	 */
+	public void setCaIssuerCache(final CaIssuerCache caIssuerCache) {
+		this.caIssuerCache = caIssuerCache;
+	}
+
 	/**
 	 * Traverse through the Cert-Chain of the given Certificate and add it to the
 	 * CertInfo recursively.
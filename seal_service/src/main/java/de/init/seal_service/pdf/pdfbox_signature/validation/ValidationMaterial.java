@@ -0,0 +1,367 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.pdfbox_signature.validation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.tsp.TSPException;
+
+import de.init.seal_service.pdf.pdfbox_signature.SigUtils;
+
+/**
+ * Precomputed LTV material (DSS content) of one signing chain and TSA chain.
+ * It is captured from a document whose LTV information was added by
+ * {@link AddValidationInformation} and then appended to further documents
+ * signed with the same certificate and TSA: the certificates, OCSP responses
+ * and CRLs are copied as already encoded streams, only the VRI entry of the
+ * new signature is computed.
+ */
+public class ValidationMaterial {
+
+	/**
+	 * Encoded stream of the DSS.
+	 *
+	 * @param data   stream data as stored in the PDF (encoded by the filter)
+	 * @param filter stream filter or {@code null}
+	 */
+	private record Data(byte[] data, COSBase filter) {
+	}
+
+	/**
+	 * VRI entry, as indexes into the certificates, OCSP responses and CRLs.
+	 */
+	private record Vri(int[] certs, int[] ocsps, int[] crls) {
+	}
+
+	private record SignerCertificates(X509CertificateHolder signer, X509CertificateHolder tsa) {
+	}
+
+	/**
+	 * Captures the LTV material of the last signature of a document.
+	 *
+	 * @param ltvPdf signed document with DSS, as returned by
+	 *               {@link AddValidationInformation#validateSignature(byte[])}
+	 * @return material for further documents of the same signer and TSA
+	 * @throws IOException if the document has no signature or no DSS for it
+	 */
+	public static ValidationMaterial capture(final byte[] ltvPdf) throws IOException {
+		try (var doc = Loader.loadPDF(ltvPdf)) {
+			final var signature = SigUtils.getLastRelevantSignature(doc);
+			if (signature == null) {
+				throw new IOException("No signature found in the reference document");
+			}
+			final var contents = signature.getContents(ltvPdf);
+			final var signerCertificates = getSignerCertificates(contents);
+			final var dss = doc.getDocumentCatalog().getCOSObject().getCOSDictionary(COSName.getPDFName("DSS"));
+			if (dss == null) {
+				throw new IOException("No DSS found in the reference document");
+			}
+
+			final Map<COSBase, Integer> certIndexes = new IdentityHashMap<>();
+			final Map<COSBase, Integer> ocspIndexes = new IdentityHashMap<>();
+			final Map<COSBase, Integer> crlIndexes = new IdentityHashMap<>();
+			final var certs = readStreams(dss, "Certs", certIndexes);
+			final var ocsps = readStreams(dss, "OCSPs", ocspIndexes);
+			final var crls = readStreams(dss, "CRLs", crlIndexes);
+
+			final var signatureHash = CertInformationHelper.getSha1Hash(contents);
+			Vri signatureVri = null;
+			final Map<String, Vri> vris = new LinkedHashMap<>();
+			final var vriBase = dss.getCOSDictionary(COSName.getPDFName("VRI"));
+			if (vriBase != null) {
+				for (final COSName key : vriBase.keySet()) {
+					final var vriDictionary = vriBase.getCOSDictionary(key);
+					final var vri = new Vri(indexes(vriDictionary, COSName.CERT, certIndexes, certs),
+							indexes(vriDictionary, COSName.getPDFName("OCSP"), ocspIndexes, ocsps),
+							indexes(vriDictionary, COSName.getPDFName("CRL"), crlIndexes, crls));
+					if (key.getName().equalsIgnoreCase(signatureHash)) {
+						signatureVri = vri;
+					} else {
+						vris.put(key.getName(), vri);
+					}
+				}
+			}
+			if (signatureVri == null) {
+				throw new IOException("No VRI found for the reference signature");
+			}
+
+			return new ValidationMaterial(signerCertificates, certs, ocsps, crls, signatureVri, vris,
+					getNextUpdate(dss));
+		}
+	}
+
+	private static COSArray createArray(final List<COSStream> streams, final int[] indexes) {
+		final var array = new COSArray();
+		for (final int index : indexes) {
+			array.add(streams.get(index));
+		}
+		return array;
+	}
+
+	private static List<COSStream> createStreams(final PDDocument document, final List<Data> data)
+			throws IOException {
+		final List<COSStream> streams = new ArrayList<>(data.size());
+		for (final Data d : data) {
+			final var stream = document.getDocument().createCOSStream();
+			// already encoded, no need to compress it again
+			try (var os = stream.createRawOutputStream()) {
+				os.write(d.data());
+			}
+			if (d.filter() != null) {
+				stream.setItem(COSName.FILTER, d.filter());
+			}
+			streams.add(stream);
+		}
+		return streams;
+	}
+
+	/**
+	 * @return earliest nextUpdate of the OCSP responses and CRLs
+	 */
+	private static Instant getNextUpdate(final COSDictionary dss) throws IOException {
+		Instant nextUpdate = null;
+		try {
+			for (final COSStream stream : streams(dss, "OCSPs")) {
+				try (var is = stream.createInputStream()) {
+					final var basicResponse = (BasicOCSPResp) new OCSPResp(is.readAllBytes()).getResponseObject();
+					for (final var response : basicResponse.getResponses()) {
+						nextUpdate = min(nextUpdate,
+								response.getNextUpdate() == null ? null : response.getNextUpdate().toInstant());
+					}
+				}
+			}
+			final var certificateFactory = CertificateFactory.getInstance("X.509");
+			for (final COSStream stream : streams(dss, "CRLs")) {
+				try (var is = stream.createInputStream()) {
+					final var crl = (X509CRL) certificateFactory.generateCRL(is);
+					nextUpdate = min(nextUpdate, crl.getNextUpdate() == null ? null : crl.getNextUpdate().toInstant());
+				}
+			}
+		} catch (OCSPException | CertificateException | CRLException e) {
+			throw new IOException("Couldn't read revocation data of the reference document!", e);
+		}
+		return nextUpdate;
+	}
+
+	private static SignerCertificates getSignerCertificates(final byte[] contents) throws IOException {
+		try {
+			final var signedData = new CMSSignedData(contents);
+			final var signerInformation = signedData.getSignerInfos().getSigners().iterator().next();
+			final var signer = (X509CertificateHolder) signedData.getCertificates()
+					.getMatches(signerInformation.getSID()).iterator().next();
+			X509CertificateHolder tsa = null;
+			final var timeStampToken = SigUtils.extractTimeStampTokenFromSignerInformation(signerInformation);
+			if (timeStampToken != null) {
+				tsa = (X509CertificateHolder) timeStampToken.getCertificates().getMatches(timeStampToken.getSID())
+						.iterator().next();
+			}
+			return new SignerCertificates(signer, tsa);
+		} catch (CMSException | TSPException | RuntimeException e) {
+			throw new IOException("Couldn't read the signer certificates of the signature!", e);
+		}
+	}
+
+	private static int[] indexes(final COSDictionary vri, final COSName name, final Map<COSBase, Integer> indexes,
+			final List<Data> data) throws IOException {
+		final var array = vri.getCOSArray(name);
+		if (array == null) {
+			return new int[0];
+		}
+		final var result = new int[array.size()];
+		for (var i = 0; i < array.size(); ++i) {
+			final var object = array.getObject(i);
+			var index = indexes.get(object);
+			if (index == null && object instanceof final COSStream stream) {
+				// a VRI may reference another stream with the same content
+				try (var is = stream.createRawInputStream()) {
+					final var streamData = new Data(is.readAllBytes(), stream.getFilters());
+					index = indexOf(data, streamData);
+					if (index < 0) {
+						index = data.size();
+						data.add(streamData);
+					}
+					indexes.put(stream, index);
+				}
+			}
+			if (index == null) {
+				throw new IOException("Invalid " + name.getName() + " entry in VRI");
+			}
+			result[i] = index;
+		}
+		return result;
+	}
+
+	private static int indexOf(final List<Data> data, final Data d) {
+		for (var i = 0; i < data.size(); ++i) {
+			if (Arrays.equals(data.get(i).data(), d.data())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static Instant min(final Instant a, final Instant b) {
+		if (a == null) {
+			return b;
+		}
+		return b == null || a.isBefore(b) ? a : b;
+	}
+
+	private static List<Data> readStreams(final COSDictionary dss, final String name,
+			final Map<COSBase, Integer> indexes) throws IOException {
+		final List<Data> data = new ArrayList<>();
+		for (final COSStream stream : streams(dss, name)) {
+			try (var is = stream.createRawInputStream()) {
+				indexes.put(stream, data.size());
+				data.add(new Data(is.readAllBytes(), stream.getFilters()));
+			}
+		}
+		return data;
+	}
+
+	private static List<COSStream> streams(final COSDictionary dss, final String name) {
+		final List<COSStream> streams = new ArrayList<>();
+		final var array = dss.getCOSArray(COSName.getPDFName(name));
+		if (array != null) {
+			for (var i = 0; i < array.size(); ++i) {
+				if (array.getObject(i) instanceof final COSStream stream) {
+					streams.add(stream);
+				}
+			}
+		}
+		return streams;
+	}
+
+	private final SignerCertificates signerCertificates;
+
+	private final List<Data> certs;
+
+	private final List<Data> ocsps;
+
+	private final List<Data> crls;
+
+	private final Vri signatureVri;
+
+	private final Map<String, Vri> vris;
+
+	private final Instant created = Instant.now();
+
+	private final Instant nextUpdate;
+
+	private ValidationMaterial(final SignerCertificates signerCertificates, final List<Data> certs,
+			final List<Data> ocsps, final List<Data> crls, final Vri signatureVri, final Map<String, Vri> vris,
+			final Instant nextUpdate) {
+		this.signerCertificates = signerCertificates;
+		this.certs = List.copyOf(certs);
+		this.ocsps = List.copyOf(ocsps);
+		this.crls = List.copyOf(crls);
+		this.signatureVri = signatureVri;
+		this.vris = Map.copyOf(vris);
+		this.nextUpdate = nextUpdate;
+	}
+
+	/**
+	 * Appends the material to a signed document, if its last signature has the
+	 * same signer and TSA certificate.
+	 *
+	 * @param signedPdf signed document
+	 * @return document with DSS or {@code null}, if the material doesn't match
+	 *         the signature
+	 * @throws IOException if the document can't be processed
+	 */
+	public byte[] apply(final byte[] signedPdf) throws IOException {
+		try (var doc = Loader.loadPDF(signedPdf); var bos = new ByteArrayOutputStream()) {
+			final var signature = SigUtils.getLastRelevantSignature(doc);
+			if (signature == null) {
+				throw new IOException("No signature found in the given document");
+			}
+			final var contents = signature.getContents(signedPdf);
+			if (!this.signerCertificates.equals(getSignerCertificates(contents))) {
+				return null;
+			}
+
+			final var docCatalog = doc.getDocumentCatalog();
+			final var catalog = docCatalog.getCOSObject();
+			catalog.setNeedToBeUpdated(true);
+			final var dss = AddValidationInformation.getOrCreateDictionaryEntry(COSDictionary.class, catalog, "DSS");
+			AddValidationInformation.addExtensions(docCatalog);
+			final var vriBase = AddValidationInformation.getOrCreateDictionaryEntry(COSDictionary.class, dss, "VRI");
+			final var ocspArray = AddValidationInformation.getOrCreateDictionaryEntry(COSArray.class, dss, "OCSPs");
+			final var crlArray = AddValidationInformation.getOrCreateDictionaryEntry(COSArray.class, dss, "CRLs");
+			final var certArray = AddValidationInformation.getOrCreateDictionaryEntry(COSArray.class, dss, "Certs");
+
+			final var certStreams = createStreams(doc, this.certs);
+			final var ocspStreams = createStreams(doc, this.ocsps);
+			final var crlStreams = createStreams(doc, this.crls);
+			certStreams.forEach(certArray::add);
+			ocspStreams.forEach(ocspArray::add);
+			crlStreams.forEach(crlArray::add);
+
+			final var tu = Calendar.getInstance();
+			tu.setTimeInMillis(this.created.toEpochMilli());
+			final Map<String, Vri> vris = new LinkedHashMap<>();
+			vris.put(CertInformationHelper.getSha1Hash(contents), this.signatureVri);
+			vris.putAll(this.vris);
+			for (final Map.Entry<String, Vri> entry : vris.entrySet()) {
+				final var vri = new COSDictionary();
+				final var vriEntry = entry.getValue();
+				if (vriEntry.ocsps().length > 0) {
+					vri.setItem("OCSP", createArray(ocspStreams, vriEntry.ocsps()));
+				}
+				if (vriEntry.crls().length > 0) {
+					vri.setItem("CRL", createArray(crlStreams, vriEntry.crls()));
+				}
+				vri.setItem(COSName.CERT, createArray(certStreams, vriEntry.certs()));
+				// the time the validation data was collected
+				vri.setDate(COSName.TU, tu);
+				vriBase.setItem(entry.getKey(), vri);
+			}
+
+			doc.saveIncremental(bos);
+			return bos.toByteArray();
+		}
+	}
+
+	/**
+	 * @return when the material was captured
+	 */
+	public Instant getCreated() {
+		return this.created;
+	}
+
+	/**
+	 * @return earliest nextUpdate of the contained OCSP responses and CRLs or
+	 *         {@code null}, if there are none
+	 */
+	public Instant getNextUpdate() {
+		return this.nextUpdate;
+	}
+
+}
@@ -0,0 +1,416 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.tsa;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.tsp.TimeStampToken;
+import org.jboss.logging.Logger;
+
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
+import de.init.seal_service.pdf.pdfbox_signature.util.DeadlineExceededException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@link TimeStamper} over several TSAs. The TSAs are tried in order of their
+ * health (circuit breaker state, latency, failure rate). If the current TSA
+ * doesn't answer within its latency percentile, the same request is sent to
+ * the next TSA (hedging) and the first valid token wins; a failed request fails
+ * over to the next TSA right away, as well as a request exceeding the quota of
+ * its TSA. Every token is validated against its request by the TSA client.
+ * <p>
+ * The first request runs on the calling thread. Only hedges run on a bounded
+ * pool; if all its threads are busy, a request isn't hedged. As soon as a token
+ * is returned (or the caller gives up), the other requests are cancelled.
+ */
+public class HedgingTimeStamper implements TimeStamper, AutoCloseable {
+
+	private record Tsa(String url, TimeStamper timeStamper, TsaHealth health) {
+	}
+
+	private record Outcome(Tsa tsa, TimeStampToken token, Exception error) {
+	}
+
+	/**
+	 * Attempts of one timestamp. Guarded by itself, except for the queue.
+	 */
+	private final class Request {
+
+		private final byte[] data;
+
+		private final Deadline deadline;
+
+		private final List<Tsa> ordered;
+
+		private final Iterator<Tsa> candidates;
+
+		// outcomes of the hedges, the caller's own attempt is returned directly
+		private final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+
+		private final List<Future<?>> futures = new ArrayList<>();
+
+		private int attempts;
+
+		private int running;
+
+		private boolean done;
+
+		// candidate of a hedge, which found no free thread
+		private Tsa skipped;
+
+		private ScheduledFuture<?> hedgeTimer;
+
+		private Request(final byte[] data, final Deadline deadline, final List<Tsa> ordered) {
+			this.data = data;
+			this.deadline = deadline;
+			this.ordered = ordered;
+			this.candidates = ordered.iterator();
+		}
+
+		private Outcome attempt(final Tsa tsa) {
+			final var start = System.nanoTime();
+			try {
+				final var token = tsa.timeStamper().getTimeStampToken(new ByteArrayInputStream(this.data));
+				tsa.health().recordSuccess(System.nanoTime() - start);
+				return new Outcome(tsa, token, null);
+			} catch (final TsaQuotaExceededException e) {
+				// the TSA is healthy, but busy
+				tsa.health().recordAborted();
+				return new Outcome(tsa, null, e);
+			} catch (final IOException | RuntimeException e) {
+				if (isDone() || e instanceof DeadlineExceededException
+						|| this.deadline != null && this.deadline.isExpired()) {
+					// cancelled, or the budget of the caller is used up: not a failure of the TSA
+					tsa.health().recordAborted();
+				} else {
+					tsa.health().recordFailure(System.nanoTime());
+				}
+				return new Outcome(tsa, null, e);
+			}
+		}
+
+		private Outcome await() throws InterruptedIOException {
+			try {
+				if (this.deadline == null) {
+					return this.outcomes.take();
+				}
+				return this.outcomes.poll(this.deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for timestamp");
+			}
+		}
+
+		private synchronized void cancel() {
+			this.done = true;
+			if (this.hedgeTimer != null) {
+				this.hedgeTimer.cancel(false);
+			}
+			// interrupts the waiting requests, also of the caller
+			this.futures.forEach(future -> future.cancel(true));
+		}
+
+		private void complete(final Outcome outcome) {
+			synchronized (this) {
+				this.outcomes.add(outcome);
+				--this.running;
+			}
+			if (outcome.token() != null) {
+				cancel();
+			} else {
+				hedge(HedgingTimeStamper.this.failovers);
+			}
+		}
+
+		private synchronized void hedge(final Counter reason) {
+			if (this.done || this.running == 0) {
+				// without running attempt the caller asks the next TSA itself
+				return;
+			}
+			final var tsa = next();
+			if (tsa == null) {
+				return;
+			}
+			final Callable<Void> task = () -> {
+				complete(attempt(tsa));
+				return null;
+			};
+			// with the deadline of the caller
+			final Callable<Void> bound = this.deadline == null ? task : () -> this.deadline.call(task::call);
+			try {
+				this.futures.add(HedgingTimeStamper.this.executor.submit(bound));
+			} catch (final RejectedExecutionException e) {
+				LOGGER.debug("No thread for a hedged timestamp request to " + tsa.url());
+				// the next hedge may try it again
+				tsa.health().recordAborted();
+				this.skipped = tsa;
+				--this.attempts;
+				scheduleHedge(tsa);
+				return;
+			}
+			++this.running;
+			reason.increment();
+			scheduleHedge(tsa);
+		}
+
+		private synchronized boolean isDone() {
+			return this.done;
+		}
+
+		private synchronized boolean isIdle() {
+			return this.running == 0 && this.outcomes.isEmpty();
+		}
+
+		// next TSA allowed by its circuit breaker
+		private Tsa next() {
+			Tsa next = null;
+			while (next == null && this.attempts < HedgingTimeStamper.this.maxAttempts
+					&& (this.skipped != null || this.candidates.hasNext())) {
+				final Tsa candidate;
+				if (this.skipped != null) {
+					candidate = this.skipped;
+					this.skipped = null;
+				} else {
+					candidate = this.candidates.next();
+				}
+				if (candidate.health().allowRequest(System.nanoTime())) {
+					next = candidate;
+				}
+			}
+			if (next == null && this.attempts == 0) {
+				// all circuit breakers are open, better try than fail
+				next = this.ordered.get(0);
+			}
+			if (next != null) {
+				++this.attempts;
+			}
+			return next;
+		}
+
+		private TimeStampToken run() throws IOException {
+			final List<Exception> failures = new ArrayList<>();
+			while (true) {
+				var outcome = this.outcomes.poll();
+				if (outcome == null) {
+					if (this.deadline != null && this.deadline.isExpired()) {
+						throw new DeadlineExceededException("No timestamp within the deadline");
+					}
+					final var own = start();
+					if (own != null) {
+						own.run();
+						synchronized (this) {
+							--this.running;
+						}
+						if (own.isCancelled()) {
+							// a hedge won, clear the interrupt of the cancellation
+							Thread.interrupted();
+							continue;
+						}
+						try {
+							outcome = own.get();
+						} catch (final ExecutionException | InterruptedException e) {
+							throw new IOException("Timestamp request failed", e);
+						}
+						if (outcome.token() == null) {
+							// fail over right away, also while hedges are running
+							hedge(HedgingTimeStamper.this.failovers);
+						}
+					} else if (isIdle()) {
+						if (failures.stream().allMatch(TsaQuotaExceededException.class::isInstance)) {
+							// all TSAs are busy, the caller should retry after the earliest one
+							throw failures.stream().map(TsaQuotaExceededException.class::cast)
+									.min(Comparator.comparing(TsaQuotaExceededException::getRetryAfter))
+									.orElseThrow();
+						}
+						final var e = new IOException("No timestamp, all " + failures.size() + " TSA requests failed");
+						failures.forEach(e::addSuppressed);
+						throw e;
+					} else {
+						outcome = await();
+						if (outcome == null) {
+							// deadline
+							continue;
+						}
+					}
+				}
+				if (outcome.token() != null) {
+					return outcome.token();
+				}
+				LOGGER.warn("Timestamp request to " + outcome.tsa().url() + " failed: " + outcome.error());
+				failures.add(outcome.error());
+			}
+		}
+
+		// hedge after the latency percentile of the latest TSA, as long as another one
+		// can be asked
+		private void scheduleHedge(final Tsa latest) {
+			if (this.hedgeTimer != null) {
+				this.hedgeTimer.cancel(false);
+				this.hedgeTimer = null;
+			}
+			if (this.attempts < HedgingTimeStamper.this.maxAttempts
+					&& (this.skipped != null || this.candidates.hasNext())) {
+				this.hedgeTimer = HedgingTimeStamper.this.timer.schedule(() -> hedge(HedgingTimeStamper.this.hedges),
+						getHedgeDelay(latest), TimeUnit.NANOSECONDS);
+			}
+		}
+
+		// the caller's own attempt, if none is running
+		private synchronized FutureTask<Outcome> start() {
+			if (this.done || this.running > 0 || !this.outcomes.isEmpty()) {
+				return null;
+			}
+			final var failover = this.attempts > 0;
+			final var tsa = next();
+			if (tsa == null) {
+				return null;
+			}
+			if (failover) {
+				HedgingTimeStamper.this.failovers.increment();
+			}
+			final var own = new FutureTask<>(() -> attempt(tsa));
+			this.futures.add(own);
+			++this.running;
+			scheduleHedge(tsa);
+			return own;
+		}
+
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(HedgingTimeStamper.class);
+
+	private static ThreadFactory daemonThreads(final String prefix) {
+		final var counter = new AtomicInteger();
+		return r -> {
+			final var thread = new Thread(r, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private final List<Tsa> tsas = new ArrayList<>();
+
+	private final double percentile;
+
+	private final Duration initialDelay;
+
+	private final Duration minDelay;
+
+	private final int maxAttempts;
+
+	private final ThreadPoolExecutor executor;
+
+	private final ScheduledThreadPoolExecutor timer;
+
+	private final Counter hedges;
+
+	private final Counter failovers;
+
+	/**
+	 * @param timeStampers     TSA clients by url, in configured order
+	 * @param percentile       latency percentile of a TSA after which the request
+	 *                         is hedged, e.g. 0.9
+	 * @param initialDelay     hedge delay while the latency of a TSA isn't known
+	 * @param minDelay         minimum hedge delay
+	 * @param maxAttempts      maximum number of TSAs asked per timestamp
+	 * @param threads          maximum number of concurrent hedged requests of all
+	 *                         seals
+	 * @param failureThreshold consecutive failures opening the circuit breaker of
+	 *                         a TSA
+	 * @param openDuration     time a TSA isn't used with open circuit breaker
+	 * @param meterRegistry    for hedge and breaker metrics
+	 */
+	public HedgingTimeStamper(final Map<String, TimeStamper> timeStampers, final double percentile,
+			final Duration initialDelay, final Duration minDelay, final int maxAttempts, final int threads,
+			final int failureThreshold, final Duration openDuration, final MeterRegistry meterRegistry) {
+		this.percentile = percentile;
+		this.initialDelay = initialDelay;
+		this.minDelay = minDelay;
+		this.maxAttempts = maxAttempts;
+		timeStampers.forEach((url, timeStamper) -> {
+			final var tsa = new Tsa(url, timeStamper, new TsaHealth(failureThreshold, openDuration));
+			this.tsas.add(tsa);
+			Gauge.builder("seal.tsa.breaker.state", tsa.health(),
+					health -> health.getState(System.nanoTime()).ordinal())
+					.description("Circuit breaker of the TSA: 0 closed, 1 half open, 2 open").tag("tsa", url)
+					.register(meterRegistry);
+		});
+		// no queue: a hedge that can't start right away isn't sent
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				daemonThreads("seal-tsa-hedge-"));
+		this.executor.allowCoreThreadTimeOut(true);
+		this.timer = new ScheduledThreadPoolExecutor(1, daemonThreads("seal-tsa-hedge-timer-"));
+		this.timer.setRemoveOnCancelPolicy(true);
+		this.hedges = Counter.builder("seal.tsa.hedge").description("Additional TSA requests")
+				.tag("reason", "slow").register(meterRegistry);
+		this.failovers = Counter.builder("seal.tsa.hedge").description("Additional TSA requests")
+				.tag("reason", "failure").register(meterRegistry);
+	}
+
+	@Override
+	public void close() {
+		this.timer.shutdownNow();
+		this.executor.shutdownNow();
+	}
+
+	// TSAs by breaker state and score, configured order for equal ones
+	private List<Tsa> getCandidates(final long now) {
+		// snapshot, the health changes concurrently
+		final Map<Tsa, TsaHealth.State> states = new HashMap<>();
+		final Map<Tsa, Double> scores = new HashMap<>();
+		for (final Tsa tsa : this.tsas) {
+			states.put(tsa, tsa.health().getState(now));
+			scores.put(tsa, tsa.health().getScore());
+		}
+		final List<Tsa> candidates = new ArrayList<>(this.tsas);
+		candidates.sort(Comparator.comparing(states::get).thenComparing(scores::get));
+		return candidates;
+	}
+
+	private long getHedgeDelay(final Tsa tsa) {
+		final var latency = tsa.health().getLatencyPercentile(this.percentile);
+		final var delay = latency < 0 ? this.initialDelay.toNanos() : latency;
+		return Math.max(delay, this.minDelay.toNanos());
+	}
+
+	@Override
+	public TimeStampToken getTimeStampToken(final InputStream content) throws IOException {
+		final var request = new Request(content.readAllBytes(), Deadline.current(),
+				getCandidates(System.nanoTime()));
+		try {
+			return request.run();
+		} finally {
+			// the losing requests aren't needed anymore
+			request.cancel();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.tsa;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import de.init.seal_service.pdf.pdfbox_signature.TSAClient;
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
+import de.init.seal_service.pdf.pdfbox_signature.util.DeadlineExceededException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link TSAClient} that sends requests over a shared, keep-alive
+ * {@link HttpClient} instead of opening a new {@code URLConnection} per
+ * timestamp. The number of concurrent requests (and therefore open
+ * connections) to the TSA is bounded by the pool size.
+ * <p>
+ * An RFC 3161 request carries a single message imprint, so the timestamps of
+ * concurrent seals can't be combined into one request. They are sent
+ * concurrently over the shared connections instead.
+ */
+public class PooledTSAClient extends TSAClient {
+
+	private final HttpClient httpClient;
+
+	private final Duration readTimeout;
+
+	private final Semaphore connections;
+
+	private final Timer successTimer;
+
+	private final Timer failureTimer;
+
+	public PooledTSAClient(final URL url, final String username, final String password, final HttpClient httpClient,
+			final int poolSize, final Duration readTimeout, final MeterRegistry meterRegistry) {
+		super(url, username, password, "SHA-256");
+		this.httpClient = httpClient;
+		this.readTimeout = readTimeout;
+		this.connections = new Semaphore(poolSize, true);
+		this.successTimer = Timer.builder("seal.tsa.requests").description("Latency of TSA requests")
+				.tag("tsa", url.toString()).tag("outcome", "success").publishPercentiles(0.5, 0.9, 0.99)
+				.register(meterRegistry);
+		this.failureTimer = Timer.builder("seal.tsa.requests").description("Latency of TSA requests")
+				.tag("tsa", url.toString()).tag("outcome", "failure").publishPercentiles(0.5, 0.9, 0.99)
+				.register(meterRegistry);
+	}
+
+	@Override
+	protected byte[] getTSAResponse(final byte[] request) throws IOException {
+		final var builder = HttpRequest.newBuilder().timeout(Deadline.timeout(this.readTimeout))
+				.header("Content-Type", "application/timestamp-query").POST(BodyPublishers.ofByteArray(request));
+		try {
+			builder.uri(getUrl().toURI());
+		} catch (final URISyntaxException e) {
+			throw new IOException("Invalid TSA url " + getUrl(), e);
+		}
+		final var authorization = getAuthorization();
+		if (authorization != null) {
+			builder.header("Authorization", authorization);
+		}
+
+		try {
+			final var deadline = Deadline.current();
+			if (deadline == null) {
+				this.connections.acquire();
+			} else if (!this.connections.tryAcquire(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS)) {
+				throw new DeadlineExceededException("No TSA connection to " + getUrl() + " within the deadline");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for TSA connection to " + getUrl());
+		}
+		final var start = System.nanoTime();
+		var success = false;
+		try {
+			final var response = this.httpClient.send(builder.build(), BodyHandlers.ofByteArray());
+			if (response.statusCode() != 200) {
+				throw new IOException("TSA " + getUrl() + " responded with HTTP status " + response.statusCode());
+			}
+			success = true;
+			return response.body();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for TSA response from " + getUrl());
+		} finally {
+			this.connections.release();
+			(success ? this.successTimer : this.failureTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.tsa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.tsp.TimeStampToken;
+
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link TimeStamper} that keeps the requests to a TSA within its quota: a
+ * token bucket refilled with the sustained rate, holding at most a burst of
+ * tokens. Each request reserves the next free slot and waits for it, so the
+ * waiting callers are served in order of arrival and a later caller can't take
+ * the slot of an earlier one. If too many callers are waiting or the slot is
+ * too far away (or after the deadline of the seal), the request is rejected
+ * right away with a {@link TsaQuotaExceededException} instead of queueing up.
+ */
+public class ThrottlingTimeStamper implements TimeStamper {
+
+	private final TimeStamper delegate;
+
+	private final String tsaUrl;
+
+	private final long intervalNanos;
+
+	private final double burst;
+
+	private final int maxQueue;
+
+	private final long maxWaitNanos;
+
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private final Timer waitTimer;
+
+	private final Counter rejections;
+
+	// tokens in the bucket at nextFree
+	private double tokens;
+
+	// point in time (System.nanoTime()) from which on the next slot is free
+	private long nextFree;
+
+	/**
+	 * @param delegate      time stamper of the TSA
+	 * @param tsaUrl        TSA url, for metrics and messages
+	 * @param rate          sustained requests per second
+	 * @param burst         requests sent at once after idle time (bucket size)
+	 * @param maxQueue      maximum number of waiting requests
+	 * @param maxWait       maximum time a request waits for its slot
+	 * @param meterRegistry for queue, wait time and rejection metrics
+	 */
+	public ThrottlingTimeStamper(final TimeStamper delegate, final String tsaUrl, final double rate,
+			final int burst, final int maxQueue, final Duration maxWait, final MeterRegistry meterRegistry) {
+		if (rate <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Invalid TSA quota: rate " + rate + ", burst " + burst);
+		}
+		this.delegate = delegate;
+		this.tsaUrl = tsaUrl;
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		this.burst = burst;
+		this.maxQueue = maxQueue;
+		this.maxWaitNanos = maxWait.toNanos();
+		this.tokens = burst;
+		this.nextFree = System.nanoTime();
+		Gauge.builder("seal.tsa.quota.queue", this.waiting, AtomicInteger::get)
+				.description("Timestamp requests waiting for the quota of the TSA").tag("tsa", tsaUrl)
+				.register(meterRegistry);
+		this.waitTimer = Timer.builder("seal.tsa.quota.wait")
+				.description("Time timestamp requests waited for the quota of the TSA").tag("tsa", tsaUrl)
+				.publishPercentiles(0.5, 0.9, 0.99).register(meterRegistry);
+		this.rejections = Counter.builder("seal.tsa.quota.rejected")
+				.description("Timestamp requests rejected because of the quota of the TSA").tag("tsa", tsaUrl)
+				.register(meterRegistry);
+	}
+
+	@Override
+	public TimeStampToken getTimeStampToken(final InputStream content) throws IOException {
+		final var wait = reserve(System.nanoTime());
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the quota of TSA " + this.tsaUrl);
+			} finally {
+				this.waiting.decrementAndGet();
+			}
+		}
+		this.waitTimer.record(wait, TimeUnit.NANOSECONDS);
+		return this.delegate.getTimeStampToken(content);
+	}
+
+	/**
+	 * @return number of requests waiting for their slot
+	 */
+	public int getQueueSize() {
+		return this.waiting.get();
+	}
+
+	/**
+	 * Takes a token, reserving the next free slot if the bucket is empty. A
+	 * waiting request is counted until it leaves the queue.
+	 *
+	 * @param now {@link System#nanoTime()}
+	 * @return nanoseconds to wait for the slot
+	 * @throws TsaQuotaExceededException if the request can't wait for the slot
+	 */
+	private synchronized long reserve(final long now) throws TsaQuotaExceededException {
+		if (now - this.nextFree > 0) {
+			// refill for the idle time
+			this.tokens = Math.min(this.burst, this.tokens + (now - this.nextFree) / (double) this.intervalNanos);
+			this.nextFree = now;
+		}
+		// use a stored token, the missing part is refilled until the slot
+		final var stored = Math.min(1, this.tokens);
+		final var slot = this.nextFree + (long) ((1 - stored) * this.intervalNanos);
+		final var wait = slot - now;
+		if (wait > 0) {
+			final var deadline = Deadline.current();
+			if (this.waiting.get() >= this.maxQueue || wait > this.maxWaitNanos
+					|| deadline != null && wait > deadline.remaining().toNanos()) {
+				this.rejections.increment();
+				throw new TsaQuotaExceededException("Quota of TSA " + this.tsaUrl + " exceeded, "
+						+ this.waiting.get() + " requests are waiting", Duration.ofNanos(wait));
+			}
+			this.waiting.incrementAndGet();
+		}
+		this.tokens -= stored;
+		this.nextFree = slot;
+		return wait;
+	}
+
+}
@@ -0,0 +1,27 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.tsa;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.bouncycastle.tsp.TimeStampToken;
+
+/**
+ * Source of RFC 3161 time stamp tokens. Implementations must be thread-safe,
+ * they are shared between concurrent seal requests.
+ */
+@FunctionalInterface
+public interface TimeStamper {
+
+	/**
+	 * Get a validated time stamp token for the hash of the given content.
+	 *
+	 * @param content content to timestamp (usually the signature value)
+	 * @return the time stamp token
+	 * @throws IOException if no valid token could be received
+	 */
+	TimeStampToken getTimeStampToken(InputStream content) throws IOException;
+
+}
@@ -0,0 +1,168 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.tsa;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import de.init.seal_service.pdf.pdfbox_signature.ValidationTimeStamp;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class holds long-lived TSA clients, one per TSA url. All clients share
+ * one keep-alive {@link HttpClient}, so a seal doesn't pay a TCP/TLS handshake
+ * for its timestamp. The requests to each TSA can be kept within its quota by a
+ * {@link ThrottlingTimeStamper}. Several TSA urls (separated by commas) are
+ * combined by a {@link HedgingTimeStamper}.
+ * <p>
+ * The JDK HttpClient closes idle connections after 20 minutes by default.
+ * TSAs often close them sooner, so the idle time should be set below the
+ * timeout of the TSA with the JVM flag
+ * {@code -Djdk.httpclient.keepalive.timeout=<seconds>} (read once by the JDK,
+ * set in the Dockerfiles).
+ */
+@ApplicationScoped
+public class TsaClients {
+
+	@ConfigProperty(name = "seal.pdf.tsa.pool-size", defaultValue = "8")
+	int poolSize;
+
+	@ConfigProperty(name = "seal.pdf.tsa.connect-timeout", defaultValue = "5s")
+	Duration connectTimeout;
+
+	@ConfigProperty(name = "seal.pdf.tsa.read-timeout", defaultValue = "10s")
+	Duration readTimeout;
+
+	@ConfigProperty(name = "seal.pdf.tsa.quota.enabled", defaultValue = "false")
+	boolean quotaEnabled;
+
+	@ConfigProperty(name = "seal.pdf.tsa.quota.rate", defaultValue = "10")
+	double quotaRate;
+
+	@ConfigProperty(name = "seal.pdf.tsa.quota.burst", defaultValue = "20")
+	int quotaBurst;
+
+	@ConfigProperty(name = "seal.pdf.tsa.quota.max-queue", defaultValue = "64")
+	int quotaMaxQueue;
+
+	@ConfigProperty(name = "seal.pdf.tsa.quota.max-wait", defaultValue = "5s")
+	Duration quotaMaxWait;
+
+	@ConfigProperty(name = "seal.pdf.tsa.hedge.percentile", defaultValue = "0.9")
+	double hedgePercentile;
+
+	@ConfigProperty(name = "seal.pdf.tsa.hedge.initial-delay", defaultValue = "1s")
+	Duration hedgeInitialDelay;
+
+	@ConfigProperty(name = "seal.pdf.tsa.hedge.min-delay", defaultValue = "50ms")
+	Duration hedgeMinDelay;
+
+	@ConfigProperty(name = "seal.pdf.tsa.hedge.max-attempts", defaultValue = "3")
+	int hedgeMaxAttempts;
+
+	@ConfigProperty(name = "seal.pdf.tsa.hedge.threads", defaultValue = "8")
+	int hedgeThreads;
+
+	@ConfigProperty(name = "seal.pdf.tsa.breaker.failure-threshold", defaultValue = "3")
+	int breakerFailureThreshold;
+
+	@ConfigProperty(name = "seal.pdf.tsa.breaker.open-duration", defaultValue = "30s")
+	Duration breakerOpenDuration;
+
+	@Inject
+	MeterRegistry meterRegistry;
+
+	private HttpClient httpClient;
+
+	private final Map<String, TimeStamper> timeStampers = new ConcurrentHashMap<>();
+
+	private final Map<String, ValidationTimeStamp> validationTimeStamps = new ConcurrentHashMap<>();
+
+	/**
+	 * @param tsaUrl TSA url, or several TSA urls separated by commas
+	 * @return shared pooled client for the TSA, within the quota of the TSA if
+	 *         configured; hedging over the clients of several TSAs
+	 */
+	public TimeStamper getTimeStamper(final String tsaUrl) {
+		final var urls = tsaUrl.split(",");
+		if (urls.length == 1) {
+			return getTsaClient(tsaUrl.strip());
+		}
+		final var hedging = this.timeStampers.get(tsaUrl);
+		if (hedging != null) {
+			return hedging;
+		}
+		final Map<String, TimeStamper> tsaClients = new LinkedHashMap<>();
+		for (final String url : urls) {
+			if (!url.isBlank()) {
+				tsaClients.put(url.strip(), getTsaClient(url.strip()));
+			}
+		}
+		return this.timeStampers.computeIfAbsent(tsaUrl,
+				url -> new HedgingTimeStamper(tsaClients, this.hedgePercentile, this.hedgeInitialDelay,
+						this.hedgeMinDelay, this.hedgeMaxAttempts, this.hedgeThreads,
+						this.breakerFailureThreshold, this.breakerOpenDuration, this.meterRegistry));
+	}
+
+	private TimeStamper getTsaClient(final String tsaUrl) {
+		return this.timeStampers.computeIfAbsent(tsaUrl, url -> {
+			final TimeStamper tsaClient;
+			try {
+				tsaClient = new PooledTSAClient(new URL(url), null, null, this.httpClient, this.poolSize,
+						this.readTimeout, this.meterRegistry);
+			} catch (final MalformedURLException e) {
+				throw new IllegalArgumentException("Invalid TSA url: " + url, e);
+			}
+			if (this.quotaEnabled) {
+				return new ThrottlingTimeStamper(tsaClient, url, this.quotaRate, this.quotaBurst, this.quotaMaxQueue,
+						this.quotaMaxWait, this.meterRegistry);
+			}
+			return tsaClient;
+		});
+	}
+
+	/**
+	 * @param tsaUrl optional TSA url, or several TSA urls separated by commas
+	 * @return shared timestamping for signatures or {@code null}, if no TSA url is
+	 *         given
+	 */
+	public ValidationTimeStamp getValidationTimeStamp(final String tsaUrl) {
+		if (tsaUrl == null || tsaUrl.isBlank()) {
+			return null;
+		}
+		return this.validationTimeStamps.computeIfAbsent(tsaUrl,
+				url -> new ValidationTimeStamp(getTimeStamper(url)));
+	}
+
+	@PostConstruct
+	void postConstruct() {
+		this.httpClient = HttpClient.newBuilder().version(Version.HTTP_1_1).connectTimeout(this.connectTimeout)
+				.followRedirects(Redirect.NORMAL).build();
+	}
+
+	@PreDestroy
+	void preDestroy() {
+		for (final TimeStamper timeStamper : this.timeStampers.values()) {
+			if (timeStamper instanceof final HedgingTimeStamper hedgingTimeStamper) {
+				hedgingTimeStamper.close();
+			}
+		}
+	}
+
+}
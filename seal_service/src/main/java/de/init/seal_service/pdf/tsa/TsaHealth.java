@@ -0,0 +1,138 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.tsa;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Health of one TSA: latency of the recent successful requests, failure rate
+ * and a circuit breaker. After {@code failureThreshold} consecutive failures
+ * the breaker opens and the TSA isn't used for {@code openDuration}; then a
+ * single probe request decides whether it closes again.
+ */
+class TsaHealth {
+
+	/**
+	 * Circuit breaker state, the ordinal is used as gauge value.
+	 */
+	enum State {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	private static final int WINDOW = 128;
+
+	private static final int MIN_SAMPLES = 10;
+
+	// weight of the latest request in the failure rate
+	private static final double ALPHA = 0.2;
+
+	private final int failureThreshold;
+
+	private final long openNanos;
+
+	private final long[] latencies = new long[WINDOW];
+
+	private int samples;
+
+	private int next;
+
+	private double failureRate;
+
+	private int consecutiveFailures;
+
+	private boolean open;
+
+	private long openUntil;
+
+	private boolean probing;
+
+	TsaHealth(final int failureThreshold, final Duration openDuration) {
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * @param now {@link System#nanoTime()}
+	 * @return whether a request may be sent, a half open breaker allows a single
+	 *         probe
+	 */
+	synchronized boolean allowRequest(final long now) {
+		switch (getState(now)) {
+		case CLOSED:
+			return true;
+		case HALF_OPEN:
+			if (this.probing) {
+				return false;
+			}
+			this.probing = true;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param p percentile, e.g. 0.9
+	 * @return latency percentile of the recent successful requests in
+	 *         nanoseconds, -1 if there are too few
+	 */
+	synchronized long getLatencyPercentile(final double p) {
+		if (this.samples < MIN_SAMPLES) {
+			return -1;
+		}
+		final var sorted = Arrays.copyOf(this.latencies, this.samples);
+		Arrays.sort(sorted);
+		return sorted[(int) Math.max(0, Math.min(this.samples - 1, Math.ceil(p * this.samples) - 1))];
+	}
+
+	/**
+	 * @return lower is better: median latency, weighted with the failure rate;
+	 *         {@link Double#MAX_VALUE} while the latency isn't known
+	 */
+	synchronized double getScore() {
+		final var median = getLatencyPercentile(0.5);
+		return median < 0 ? Double.MAX_VALUE : median * (1 + 10 * this.failureRate);
+	}
+
+	/**
+	 * @param now {@link System#nanoTime()}
+	 * @return breaker state
+	 */
+	synchronized State getState(final long now) {
+		if (!this.open) {
+			return State.CLOSED;
+		}
+		return now - this.openUntil < 0 ? State.OPEN : State.HALF_OPEN;
+	}
+
+	/**
+	 * The request ended without a verdict on the TSA (quota exceeded, deadline of
+	 * the caller passed): a half open breaker allows the next probe.
+	 */
+	synchronized void recordAborted() {
+		this.probing = false;
+	}
+
+	synchronized void recordFailure(final long now) {
+		this.failureRate = this.failureRate * (1 - ALPHA) + ALPHA;
+		++this.consecutiveFailures;
+		if (this.probing || this.consecutiveFailures >= this.failureThreshold) {
+			this.open = true;
+			this.openUntil = now + this.openNanos;
+		}
+		this.probing = false;
+	}
+
+	synchronized void recordSuccess(final long latency) {
+		this.failureRate = this.failureRate * (1 - ALPHA);
+		this.consecutiveFailures = 0;
+		this.open = false;
+		this.probing = false;
+		this.latencies[this.next] = latency;
+		this.next = (this.next + 1) % WINDOW;
+		this.samples = Math.min(this.samples + 1, WINDOW);
+	}
+
+}
@@ -0,0 +1,31 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.pdf.tsa;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * The request quota of a TSA is used up and too many timestamp requests are
+ * already waiting for it.
+ */
+public class TsaQuotaExceededException extends IOException {
+
+	private static final long serialVersionUID = 6027871514532466195L;
+
+	private final Duration retryAfter;
+
+	public TsaQuotaExceededException(final String message, final Duration retryAfter) {
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return time until the quota allows a request again
+	 */
+	public Duration getRetryAfter() {
+		return this.retryAfter;
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+
+/**
+ * This class decides whether a seal request is processed now or rejected
+ * because of overload, see {@link ConcurrencyLimiter}. The heap usage of a
+ * request is estimated from its size: the PDF is held several times (request,
+ * parsed document, signed result).
+ */
+@ApplicationScoped
+public class AdmissionControl {
+
+	@ConfigProperty(name = "seal.admission.enabled", defaultValue = "true")
+	boolean enabled;
+
+	@ConfigProperty(name = "seal.admission.initial-limit", defaultValue = "16")
+	int initialLimit;
+
+	@ConfigProperty(name = "seal.admission.min-limit", defaultValue = "2")
+	int minLimit;
+
+	@ConfigProperty(name = "seal.admission.max-limit", defaultValue = "16")
+	int maxLimit;
+
+	// requests are admitted on the sealing threads, more can't be in flight
+	@ConfigProperty(name = "seal.lanes.threads", defaultValue = "16")
+	int laneThreads;
+
+	@ConfigProperty(name = "seal.admission.heap-fraction", defaultValue = "0.5")
+	double heapFraction;
+
+	@ConfigProperty(name = "seal.admission.memory-factor", defaultValue = "4")
+	double memoryFactor;
+
+	@ConfigProperty(name = "seal.admission.unknown-size", defaultValue = "10M")
+	MemorySize unknownSize;
+
+	@Inject
+	MeterRegistry meterRegistry;
+
+	private ConcurrencyLimiter limiter;
+
+	private long estimate(final Long size) {
+		final var bytes = size == null || size < 0 ? this.unknownSize.asLongValue() : size;
+		return (long) Math.min(Long.MAX_VALUE / 2, bytes * this.memoryFactor);
+	}
+
+	/**
+	 * Early check of the memory budget before the request body is read, e.g. by
+	 * its Content-Length: doesn't reserve anything.
+	 *
+	 * @param size size of the request in bytes, {@code null} if unknown
+	 * @return whether the request is rejected right away
+	 */
+	public boolean isRejected(final Long size) {
+		return this.limiter.isRejected(estimate(size));
+	}
+
+	@PostConstruct
+	void postConstruct() {
+		if (this.enabled) {
+			this.limiter = new ConcurrencyLimiter(this.initialLimit, this.minLimit,
+					Math.min(this.maxLimit, this.laneThreads),
+					(long) (Runtime.getRuntime().maxMemory() * this.heapFraction), this.meterRegistry);
+		} else {
+			// metrics only
+			this.limiter = new ConcurrencyLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+					Long.MAX_VALUE, this.meterRegistry);
+		}
+	}
+
+	/**
+	 * Doesn't wait: called on a sealing thread, the request has waited in its
+	 * lane already.
+	 *
+	 * @param size size of the request in bytes, {@code null} if unknown
+	 * @return permit to be closed when the request is finished, {@code null} if
+	 *         the request is rejected
+	 */
+	public ConcurrencyLimiter.Permit tryAcquire(final Long size) {
+		return this.limiter.tryAcquire(estimate(size));
+	}
+
+}
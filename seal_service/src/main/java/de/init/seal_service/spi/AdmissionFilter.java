@@ -0,0 +1,48 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.reactive.server.ServerRequestFilter;
+
+/**
+ * Rejects a seal request before the body is read (and a JSON body decoded), if
+ * the queue of its lane is full or its Content-Length exceeds the memory budget
+ * of the {@link AdmissionControl}. Nothing is reserved here: the seal is
+ * admitted when it gets its turn in its lane, see {@link SealService}.
+ */
+public class AdmissionFilter {
+
+	private static final String SEAL_PATH = "/seal_service/seal";
+
+	@Inject
+	AdmissionControl admission;
+
+	@Inject
+	SealLanes sealLanes;
+
+	@ServerRequestFilter
+	public Response filter(final ContainerRequestContext requestContext) {
+		if (!HttpMethod.POST.equals(requestContext.getMethod())
+				|| !SEAL_PATH.equals(requestContext.getUriInfo().getPath())) {
+			return null;
+		}
+		final var lane = SealLanes.Lane.of(requestContext.getHeaderString(SealService.PRIORITY_HEADER));
+		if (lane == null) {
+			// invalid priority, answered by the endpoint
+			return null;
+		}
+		final var length = requestContext.getLength();
+		// without Content-Length (chunked) the memory budget is checked in the lane
+		if (this.sealLanes.isRejected(lane) || length >= 0 && this.admission.isRejected((long) length)) {
+			return SealService.overloaded();
+		}
+		return null;
+	}
+
+}
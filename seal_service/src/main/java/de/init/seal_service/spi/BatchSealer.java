@@ -0,0 +1,170 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.init.seal_service.pdf.PdfSealer;
+
+/**
+ * This class seals a stream of NDJSON {@link SealRequest}s in the bulk lane of
+ * {@link SealLanes} and writes the sealed PDFs as ZIP entries in order of
+ * completion. Failed items are reported as {@code <index>.error.txt} entries;
+ * a final {@code results.ndjson} entry lists the outcome of every item.
+ * <p>
+ * Each item is admitted by the {@link AdmissionControl} like a single seal, by
+ * the size of its JSON line, so batches share the memory budget and the
+ * concurrency limit with the other seals. A rejected item fails and can be
+ * sent again.
+ */
+@ApplicationScoped
+public class BatchSealer {
+
+	/**
+	 * Outcome of one batch item, {@code error} is only set for failed items.
+	 */
+	public record BatchResult(int index, String entry, String error) {
+	}
+
+	private record Item(int index, byte[] pdf, Exception error) {
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(BatchSealer.class);
+
+	@ConfigProperty(name = "seal.batch.max-in-flight", defaultValue = "16")
+	int maxInFlight;
+
+	@Inject
+	AdmissionControl admission;
+
+	@Inject
+	ObjectMapper objectMapper;
+
+	@Inject
+	PdfSealer pdfSealer;
+
+	@Inject
+	SealLanes sealLanes;
+
+	private void drain(final CompletionService<Item> completion, final ZipOutputStream zip,
+			final List<BatchResult> results) throws IOException {
+		final Future<Item> future;
+		try {
+			future = completion.take();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sealing batch", e);
+		}
+		final Item item;
+		try {
+			item = future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sealing batch", e);
+		} catch (final ExecutionException e) {
+			// items catch their own errors
+			throw new IOException("Unexpected batch item failure", e.getCause());
+		}
+		write(item, zip, results);
+	}
+
+	private Item seal(final int index, final String line) {
+		final var permit = this.admission.tryAcquire((long) line.length());
+		if (permit == null) {
+			LOGGER.warn("Batch item " + index + " rejected, the service is overloaded");
+			return new Item(index, null, new IOException("The service is overloaded. Please try again later."));
+		}
+		try (permit) {
+			final var sealRequest = this.objectMapper.readValue(line, SealRequest.class);
+			if (sealRequest.pdf == null) {
+				throw new IllegalArgumentException("Missing pdf");
+			}
+			return new Item(index, this.pdfSealer.sealPdf(sealRequest.pdf, sealRequest.docValues), null);
+		} catch (final IOException | RuntimeException e) {
+			LOGGER.warn("Couldn't seal batch item " + index + "!", e);
+			return new Item(index, null, e);
+		}
+	}
+
+	/**
+	 * @param ndjson one JSON {@link SealRequest} per line, blank lines are skipped
+	 * @param out    receives the ZIP stream
+	 * @throws IOException if reading the input or writing the output fails
+	 */
+	public void sealBatch(final InputStream ndjson, final OutputStream out) throws IOException {
+		final CompletionService<Item> completion = new ExecutorCompletionService<>(
+				this.sealLanes.getExecutor(SealLanes.Lane.BULK));
+		final List<BatchResult> results = new ArrayList<>();
+		final var zip = new ZipOutputStream(out);
+		final var reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+		var submitted = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isBlank()) {
+				continue;
+			}
+			// bound memory: no more than maxInFlight PDFs are held at once
+			while (submitted - results.size() >= this.maxInFlight) {
+				drain(completion, zip, results);
+			}
+			final var index = ++submitted;
+			final var request = line;
+			completion.submit(() -> seal(index, request));
+		}
+		while (results.size() < submitted) {
+			drain(completion, zip, results);
+		}
+		zip.putNextEntry(new ZipEntry("results.ndjson"));
+		for (final BatchResult result : results) {
+			zip.write(this.objectMapper.writeValueAsBytes(result));
+			zip.write('\n');
+		}
+		zip.closeEntry();
+		zip.finish();
+		zip.flush();
+	}
+
+	private void write(final Item item, final ZipOutputStream zip, final List<BatchResult> results)
+			throws IOException {
+		final var name = String.format("%05d", item.index());
+		if (item.error() != null) {
+			final var entry = name + ".error.txt";
+			final var message = String.valueOf(item.error().getMessage());
+			zip.putNextEntry(new ZipEntry(entry));
+			zip.write(message.getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+			results.add(new BatchResult(item.index(), entry, message));
+		} else {
+			final var entry = name + ".pdf";
+			zip.putNextEntry(new ZipEntry(entry));
+			zip.write(item.pdf());
+			zip.closeEntry();
+			results.add(new BatchResult(item.index(), entry, null));
+		}
+		// push finished entries to the client
+		zip.flush();
+	}
+
+}
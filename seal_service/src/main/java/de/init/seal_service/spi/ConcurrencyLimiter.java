@@ -0,0 +1,193 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Admission of requests by an adaptive concurrency limit and a memory budget.
+ * <p>
+ * The limit follows the latency gradient: the minimal latency (without load)
+ * compared with the latency of each finished request. As long as the latency
+ * stays within the tolerance, the limit grows by its square root; with growing
+ * latency (requests queueing for CPU, TSA or OCSP) it shrinks down to half. The
+ * limit doesn't grow while less than half of it is used.
+ * <p>
+ * Each request reserves an estimate of its heap usage (request size times a
+ * factor) from the memory budget, so a few large PDFs can't exhaust the heap.
+ * A request larger than the budget is only admitted alone.
+ * <p>
+ * A request that can't be admitted is rejected right away, to be answered fast
+ * instead of piling up. It doesn't wait here: the caller runs on a sealing
+ * thread of a lane, requests wait in the (bounded) lane queue before.
+ */
+public class ConcurrencyLimiter {
+
+	/**
+	 * Admitted request, must be closed when finished.
+	 */
+	public final class Permit implements AutoCloseable {
+
+		private final long bytes;
+
+		private final int inFlight;
+
+		private final long start = System.nanoTime();
+
+		private boolean closed;
+
+		private Permit(final long bytes, final int inFlight) {
+			this.bytes = bytes;
+			this.inFlight = inFlight;
+		}
+
+		@Override
+		public void close() {
+			if (!this.closed) {
+				this.closed = true;
+				release(this, System.nanoTime() - this.start);
+			}
+		}
+
+	}
+
+	// latency within this factor of the minimal latency counts as no load
+	private static final double TOLERANCE = 2.0;
+
+	// weight of the newly computed limit
+	private static final double SMOOTHING = 0.2;
+
+	// samples after which the minimal latency is measured anew
+	private static final int MIN_RTT_SAMPLES = 1000;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final long maxBytes;
+
+	private final Counter limitRejections;
+
+	private final Counter memoryRejections;
+
+	private double limit;
+
+	private int inFlight;
+
+	private long reservedBytes;
+
+	private long minRtt;
+
+	private int samples;
+
+	/**
+	 * @param initialLimit  initial concurrency limit
+	 * @param minLimit      minimum concurrency limit
+	 * @param maxLimit      maximum concurrency limit
+	 * @param maxBytes      memory budget of all admitted requests
+	 * @param meterRegistry for limit, in-flight and rejection metrics
+	 */
+	public ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final long maxBytes,
+			final MeterRegistry meterRegistry) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.maxBytes = maxBytes;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		Gauge.builder("seal.admission.limit", this, ConcurrencyLimiter::getLimit)
+				.description("Current concurrency limit of the seal requests").register(meterRegistry);
+		Gauge.builder("seal.admission.in-flight", this, ConcurrencyLimiter::getInFlight)
+				.description("Seal requests in progress").register(meterRegistry);
+		Gauge.builder("seal.admission.memory", this, ConcurrencyLimiter::getReservedBytes)
+				.description("Estimated heap usage of the seal requests in progress").baseUnit("bytes")
+				.register(meterRegistry);
+		this.limitRejections = Counter.builder("seal.admission.rejected")
+				.description("Seal requests rejected because of overload").tag("reason", "limit")
+				.register(meterRegistry);
+		this.memoryRejections = Counter.builder("seal.admission.rejected")
+				.description("Seal requests rejected because of overload").tag("reason", "memory")
+				.register(meterRegistry);
+	}
+
+	private boolean canAdmit(final long bytes) {
+		return this.inFlight < (int) this.limit
+				&& (this.inFlight == 0 || this.reservedBytes + bytes <= this.maxBytes);
+	}
+
+	public synchronized int getInFlight() {
+		return this.inFlight;
+	}
+
+	public synchronized int getLimit() {
+		return (int) this.limit;
+	}
+
+	public synchronized long getReservedBytes() {
+		return this.reservedBytes;
+	}
+
+	/**
+	 * Checks, without reserving, whether the memory budget is used up for a
+	 * request. Used before the request body is read, which takes heap itself; the
+	 * concurrency limit isn't checked, the request waits for its turn in a lane
+	 * and is admitted by {@link #tryAcquire(long)} then.
+	 *
+	 * @param bytes estimated heap usage of the request
+	 * @return whether the request is rejected (and counted as such)
+	 */
+	public synchronized boolean isRejected(final long bytes) {
+		if (this.inFlight == 0 || this.reservedBytes + bytes <= this.maxBytes) {
+			return false;
+		}
+		this.memoryRejections.increment();
+		return true;
+	}
+
+	private synchronized void release(final Permit permit, final long rtt) {
+		--this.inFlight;
+		this.reservedBytes -= permit.bytes;
+		update(rtt, permit.inFlight);
+	}
+
+	private synchronized Permit reject() {
+		(this.inFlight < (int) this.limit ? this.memoryRejections : this.limitRejections).increment();
+		return null;
+	}
+
+	/**
+	 * Admits the request, without waiting.
+	 *
+	 * @param bytes estimated heap usage of the request
+	 * @return permit or {@code null}, if the request is rejected
+	 */
+	public synchronized Permit tryAcquire(final long bytes) {
+		if (!canAdmit(bytes)) {
+			return reject();
+		}
+		++this.inFlight;
+		this.reservedBytes += bytes;
+		return new Permit(bytes, this.inFlight);
+	}
+
+	private void update(final long rtt, final int inFlight) {
+		if (++this.samples >= MIN_RTT_SAMPLES) {
+			// the latency without load may have changed (TSA, documents)
+			this.samples = 0;
+			this.minRtt = 0;
+		}
+		if (this.minRtt == 0 || rtt < this.minRtt) {
+			this.minRtt = Math.max(1, rtt);
+		}
+		if (inFlight < this.limit / 2) {
+			// not enough load to tell
+			return;
+		}
+		final var gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * this.minRtt / Math.max(1, rtt)));
+		final var newLimit = this.limit * gradient + Math.sqrt(this.limit);
+		this.limit = Math.max(this.minLimit,
+				Math.min(this.maxLimit, this.limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+	}
+
+}
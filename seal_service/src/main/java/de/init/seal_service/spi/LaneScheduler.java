@@ -0,0 +1,283 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs the tasks of several lanes (request classes) on one pool of threads.
+ * Each lane has its own bounded queue and may use at most its own number of
+ * threads. A free thread takes the next task of the waiting lanes by weighted
+ * fair scheduling (stride scheduling): a lane with weight 4 gets 4 times the
+ * turns of a lane with weight 1 while both are waiting, and a lane alone may use
+ * all threads it is allowed to. A lane becoming busy again doesn't get credit
+ * for its idle time.
+ */
+public class LaneScheduler implements AutoCloseable {
+
+	/**
+	 * Configuration of a lane.
+	 *
+	 * @param name       name, for metrics
+	 * @param weight     share of the threads while other lanes are waiting too
+	 * @param maxQueue   maximum number of waiting tasks
+	 * @param maxThreads maximum number of threads running tasks of the lane
+	 */
+	public record Lane(String name, int weight, int maxQueue, int maxThreads) {
+	}
+
+	private record Task(Runnable command, long enqueued) {
+	}
+
+	private record Dispatch(LaneState lane, Task task) {
+	}
+
+	private static final class LaneState {
+
+		private final Lane lane;
+
+		private final Deque<Task> queue = new ArrayDeque<>();
+
+		private final Timer latency;
+
+		private final Timer wait;
+
+		private final Counter rejected;
+
+		private int running;
+
+		// virtual time of the next turn, advances by 1 / weight per task
+		private double pass;
+
+		private LaneState(final Lane lane, final MeterRegistry meterRegistry) {
+			this.lane = lane;
+			this.latency = Timer.builder("seal.lane.latency").description("Time from queueing to completion of tasks")
+					.tag("lane", lane.name()).publishPercentileHistogram().publishPercentiles(0.5, 0.9, 0.99)
+					.register(meterRegistry);
+			this.wait = Timer.builder("seal.lane.wait").description("Time tasks waited in the queue of the lane")
+					.tag("lane", lane.name()).publishPercentiles(0.5, 0.9, 0.99).register(meterRegistry);
+			this.rejected = Counter.builder("seal.lane.rejected")
+					.description("Tasks rejected because the queue of the lane was full").tag("lane", lane.name())
+					.register(meterRegistry);
+		}
+
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(LaneScheduler.class);
+
+	private final Map<String, LaneState> lanes = new LinkedHashMap<>();
+
+	private final ExecutorService workers;
+
+	// pass of the latest dispatched task
+	private double virtualTime;
+
+	private boolean closed;
+
+	/**
+	 * @param lanes         lanes
+	 * @param threads       number of threads of all lanes
+	 * @param meterRegistry for per lane latency, queue and rejection metrics
+	 */
+	public LaneScheduler(final List<Lane> lanes, final int threads, final MeterRegistry meterRegistry) {
+		for (final Lane lane : lanes) {
+			if (lane.weight() < 1 || lane.maxThreads() < 1) {
+				throw new IllegalArgumentException("Invalid lane: " + lane);
+			}
+			final var state = new LaneState(lane, meterRegistry);
+			this.lanes.put(lane.name(), state);
+			Gauge.builder("seal.lane.queue", this, scheduler -> scheduler.getQueueSize(lane.name()))
+					.description("Tasks waiting in the queue of the lane").tag("lane", lane.name())
+					.register(meterRegistry);
+			Gauge.builder("seal.lane.running", this, scheduler -> scheduler.getRunning(lane.name()))
+					.description("Tasks of the lane running").tag("lane", lane.name()).register(meterRegistry);
+		}
+		final var counter = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(threads, r -> {
+			final var thread = new Thread(r, "seal-lane-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (var i = 0; i < threads; ++i) {
+			this.workers.execute(this::work);
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			this.closed = true;
+			for (final LaneState state : this.lanes.values()) {
+				for (final Task task : state.queue) {
+					if (task.command() instanceof final Future<?> future) {
+						future.cancel(false);
+					}
+				}
+				state.queue.clear();
+			}
+			notifyAll();
+		}
+		this.workers.shutdownNow();
+	}
+
+	private synchronized void enqueue(final String name, final Runnable command, final boolean block) {
+		final var state = getLane(name);
+		if (block) {
+			try {
+				while (!this.closed && state.queue.size() >= state.lane.maxQueue()) {
+					wait();
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for lane " + name);
+			}
+		}
+		if (this.closed) {
+			throw new RejectedExecutionException("Lane scheduler has been closed");
+		}
+		if (state.queue.size() >= state.lane.maxQueue()) {
+			state.rejected.increment();
+			throw new RejectedExecutionException("Queue of lane " + name + " is full");
+		}
+		if (state.queue.isEmpty() && state.running == 0) {
+			// no credit for the idle time
+			state.pass = Math.max(state.pass, this.virtualTime);
+		}
+		state.queue.add(new Task(command, System.nanoTime()));
+		notifyAll();
+	}
+
+	/**
+	 * @param name lane
+	 * @return executor of the lane, blocking while the queue of the lane is full
+	 *         (back pressure for bulk work)
+	 */
+	public Executor getExecutor(final String name) {
+		getLane(name);
+		return command -> enqueue(name, command, true);
+	}
+
+	private LaneState getLane(final String name) {
+		final var state = this.lanes.get(name);
+		if (state == null) {
+			throw new IllegalArgumentException("Unknown lane: " + name);
+		}
+		return state;
+	}
+
+	/**
+	 * @param name lane
+	 * @return number of waiting tasks
+	 */
+	public synchronized int getQueueSize(final String name) {
+		return getLane(name).queue.size();
+	}
+
+	/**
+	 * @param name lane
+	 * @return number of running tasks
+	 */
+	public synchronized int getRunning(final String name) {
+		return getLane(name).running;
+	}
+
+	/**
+	 * Checks, without queueing, whether a task would be rejected because the
+	 * queue of the lane is full. Used before a request body is read.
+	 *
+	 * @param name lane
+	 * @return whether the task is rejected (and counted as such)
+	 */
+	public synchronized boolean isRejected(final String name) {
+		final var state = getLane(name);
+		if (state.queue.size() < state.lane.maxQueue()) {
+			return false;
+		}
+		state.rejected.increment();
+		return true;
+	}
+
+	private synchronized Dispatch next() throws InterruptedException {
+		while (!this.closed) {
+			LaneState next = null;
+			for (final LaneState state : this.lanes.values()) {
+				if (!state.queue.isEmpty() && state.running < state.lane.maxThreads()
+						&& (next == null || state.pass < next.pass)) {
+					next = state;
+				}
+			}
+			if (next != null) {
+				++next.running;
+				this.virtualTime = next.pass;
+				next.pass += 1.0 / next.lane.weight();
+				// producers may wait for the queue
+				notifyAll();
+				return new Dispatch(next, next.queue.poll());
+			}
+			wait();
+		}
+		throw new InterruptedException("Lane scheduler has been closed");
+	}
+
+	private synchronized void release(final LaneState state) {
+		--state.running;
+		notifyAll();
+	}
+
+	/**
+	 * @param name lane
+	 * @param task task
+	 * @return future of the task
+	 * @throws RejectedExecutionException if the queue of the lane is full
+	 */
+	public <T> Future<T> submit(final String name, final Callable<T> task) {
+		final var future = new FutureTask<>(task);
+		enqueue(name, future, false);
+		return future;
+	}
+
+	private void work() {
+		try {
+			while (true) {
+				final var dispatch = next();
+				final var lane = dispatch.lane();
+				final var task = dispatch.task();
+				lane.wait.record(System.nanoTime() - task.enqueued(), TimeUnit.NANOSECONDS);
+				try {
+					task.command().run();
+				} catch (final RuntimeException e) {
+					LOGGER.warn("Task of lane " + lane.lane.name() + " failed!", e);
+				} finally {
+					release(lane);
+					lane.latency.record(System.nanoTime() - task.enqueued(), TimeUnit.NANOSECONDS);
+					// a cancelled task may leave the thread interrupted, closing is checked by next()
+					Thread.interrupted();
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class runs the sealing in priority lanes, see {@link LaneScheduler}:
+ * interactive seals (single PDFs, a user is waiting) and bulk seals (the batch
+ * endpoint, or single PDFs with {@code X-Seal-Priority: bulk}). Bulk seals use
+ * the spare capacity, but can't take all threads and get fewer turns while
+ * interactive seals are waiting.
+ */
+@ApplicationScoped
+public class SealLanes {
+
+	/**
+	 * Request class of a seal.
+	 */
+	public enum Lane {
+		INTERACTIVE, BULK;
+
+		/**
+		 * @param priority value of the {@code X-Seal-Priority} header
+		 * @return lane, {@link #INTERACTIVE} without priority; {@code null} for an
+		 *         unknown priority
+		 */
+		public static Lane of(final String priority) {
+			if (priority == null || priority.isBlank()) {
+				return INTERACTIVE;
+			}
+			try {
+				return valueOf(priority.strip().toUpperCase(Locale.ROOT));
+			} catch (final IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return name of the lane in the scheduler and metrics
+		 */
+		public String id() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	@ConfigProperty(name = "seal.lanes.threads", defaultValue = "16")
+	int threads;
+
+	@ConfigProperty(name = "seal.lanes.interactive.weight", defaultValue = "4")
+	int interactiveWeight;
+
+	@ConfigProperty(name = "seal.lanes.interactive.max-queue", defaultValue = "64")
+	int interactiveMaxQueue;
+
+	@ConfigProperty(name = "seal.lanes.interactive.max-threads", defaultValue = "16")
+	int interactiveMaxThreads;
+
+	@ConfigProperty(name = "seal.lanes.bulk.weight", defaultValue = "1")
+	int bulkWeight;
+
+	@ConfigProperty(name = "seal.lanes.bulk.max-queue", defaultValue = "256")
+	int bulkMaxQueue;
+
+	@ConfigProperty(name = "seal.lanes.bulk.max-threads", defaultValue = "12")
+	int bulkMaxThreads;
+
+	@Inject
+	MeterRegistry meterRegistry;
+
+	private LaneScheduler scheduler;
+
+	/**
+	 * Queues the task in the lane without waiting for it, so the request thread
+	 * isn't parked while the task waits for its turn.
+	 *
+	 * @param lane lane
+	 * @param task task
+	 * @return result of the task, completed exceptionally with the exception of
+	 *         the task
+	 * @throws RejectedExecutionException if the queue of the lane is full
+	 */
+	public <T> CompletionStage<T> submit(final Lane lane, final Callable<T> task) {
+		final var result = new CompletableFuture<T>();
+		this.scheduler.submit(lane.id(), () -> {
+			try {
+				result.complete(task.call());
+			} catch (final Throwable e) {
+				result.completeExceptionally(e);
+			}
+			return null;
+		});
+		return result;
+	}
+
+	/**
+	 * @param lane lane
+	 * @return executor of the lane, blocking while its queue is full
+	 */
+	public Executor getExecutor(final Lane lane) {
+		return this.scheduler.getExecutor(lane.id());
+	}
+
+	/**
+	 * @param lane lane
+	 * @return whether a seal would be rejected by the lane right away, because
+	 *         its queue is full
+	 */
+	public boolean isRejected(final Lane lane) {
+		return this.scheduler.isRejected(lane.id());
+	}
+
+	@PostConstruct
+	void postConstruct() {
+		this.scheduler = new LaneScheduler(List.of(
+				new LaneScheduler.Lane(Lane.INTERACTIVE.id(), this.interactiveWeight, this.interactiveMaxQueue,
+						this.interactiveMaxThreads),
+				new LaneScheduler.Lane(Lane.BULK.id(), this.bulkWeight, this.bulkMaxQueue, this.bulkMaxThreads)),
+				this.threads, this.meterRegistry);
+	}
+
+	@PreDestroy
+	void preDestroy() {
+		this.scheduler.close();
+	}
+
+}
@@ -4,29 +4,121 @@
 package de.init.seal_service.spi;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.MultipartForm;
 import org.jboss.resteasy.reactive.RestResponse.Status;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import de.init.seal_service.pdf.PdfSealer;
+import de.init.seal_service.pdf.ltv.LtvJobService;
+import de.init.seal_service.pdf.pdfbox_signature.util.DeadlineExceededException;
+import de.init.seal_service.pdf.tsa.TsaQuotaExceededException;
+
+import io.quarkus.runtime.configuration.MemorySize;
+import io.smallrye.common.annotation.Blocking;
 
 @Path("/seal_service")
 public class SealService {
 
 	private static final Logger LOGGER = Logger.getLogger(SealService.class);
 
+	private static final TypeReference<Map<String, String>> DOC_VALUES_TYPE = new TypeReference<>() {
+	};
+
+	private static final String LTV_CALLBACK_HEADER = "X-Seal-Ltv-Callback";
+
+	static final String PRIORITY_HEADER = "X-Seal-Priority";
+
+	/**
+	 * @param prefer Prefer header (RFC 7240)
+	 * @return whether the client asked for asynchronous processing
+	 */
+	private static boolean isRespondAsync(final String prefer) {
+		if (prefer == null) {
+			return false;
+		}
+		for (final String preference : prefer.split(",")) {
+			if ("respond-async".equalsIgnoreCase(preference.strip())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param e exception of the seal
+	 * @return whether the seal failed because it ran out of time: its deadline
+	 *         passed (see PdfSealer) or a network call timed out
+	 */
+	private static boolean isTimeout(final Throwable e) {
+		for (var cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DeadlineExceededException || cause instanceof SocketTimeoutException
+					|| cause instanceof HttpTimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return answer for a request rejected by the admission control
+	 */
+	static Response overloaded() {
+		return Response.status(Status.SERVICE_UNAVAILABLE).entity("The service is overloaded. Please try again later.")
+				.type(MediaType.TEXT_PLAIN).header("Retry-After", 1).build();
+	}
+
+	@ConfigProperty(name = "seal.upload.memory-threshold", defaultValue = "1M")
+	MemorySize memoryThreshold;
+
 	@Inject
 	PdfSealer pdfSealer;
 
+	@Inject
+	AdmissionControl admission;
+
+	@Inject
+	SealLanes sealLanes;
+
+	@Inject
+	BatchSealer batchSealer;
+
+	@Inject
+	LtvJobService ltvJobs;
+
+	@Inject
+	ObjectMapper objectMapper;
+
 	@GET
 	@Path("ping")
 	@Produces(MediaType.TEXT_PLAIN)
@@ -34,21 +126,245 @@ public class SealService {
 		return "Hello from RESTEasy Reactive";
 	}
 
+	private Map<String, String> parseDocValues(final String docValues) throws JsonProcessingException {
+		if (docValues == null || docValues.isBlank()) {
+			return new HashMap<>();
+		}
+		return this.objectMapper.readValue(docValues, DOC_VALUES_TYPE);
+	}
+
+	/**
+	 * Status or result of an asynchronous LTV job: 202 while pending, the PDF with
+	 * LTV info when done.
+	 *
+	 * @param id job id of the {@code X-Seal-Ltv-Job} header
+	 */
+	@GET
+	@Path("ltv/{id}")
+	@Produces(MediaType.APPLICATION_OCTET_STREAM)
+	public Response getLtvJob(@PathParam("id") final String id) {
+		final var status = this.ltvJobs.getStatus(id);
+		if (status == null) {
+			return Response.status(Status.NOT_FOUND).entity("Unknown LTV job!").type(MediaType.TEXT_PLAIN).build();
+		}
+		switch (status) {
+		case PENDING:
+			return Response.status(Status.ACCEPTED).entity("LTV job is pending.").type(MediaType.TEXT_PLAIN)
+					.header("Retry-After", 5).build();
+		case FAILED:
+			return Response.status(Status.INTERNAL_SERVER_ERROR)
+					.entity("An error occurred while adding the LTV info, the PDF without LTV info is still valid.")
+					.type(MediaType.TEXT_PLAIN).build();
+		default:
+			try {
+				return Response.ok(this.ltvJobs.readResult(id), MediaType.APPLICATION_OCTET_STREAM)
+						.header("Content-Disposition", "attachment; filename=\"signed_pdf.pdf\"").build();
+			} catch (final IOException e) {
+				LOGGER.error("An error occurred while reading the LTV job result!", e);
+				return Response.status(Status.NOT_FOUND).entity("Unknown LTV job!").type(MediaType.TEXT_PLAIN)
+						.build();
+			}
+		}
+	}
+
+	/**
+	 * @param e exception of the seal
+	 * @return error answer
+	 */
+	private static Response errorResponse(final Throwable e) {
+		final var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+		if (cause instanceof RejectedExecutionException) {
+			LOGGER.warn("Seal rejected: " + cause.getMessage());
+			return overloaded();
+		}
+		if (cause instanceof final TsaQuotaExceededException quotaExceeded) {
+			LOGGER.warn("TSA quota exceeded while sealing the PDF: " + cause.getMessage());
+			// whole seconds, at least one
+			final var retryAfter = Math.max(1, (quotaExceeded.getRetryAfter().toMillis() + 999) / 1000);
+			return Response.status(Status.TOO_MANY_REQUESTS)
+					.entity("Too many PDFs are being sealed. Please try again later.").type(MediaType.TEXT_PLAIN)
+					.header("Retry-After", retryAfter).build();
+		}
+		if (isTimeout(cause)) {
+			LOGGER.error("Deadline exceeded while sealing the PDF!", cause);
+			return Response.status(Status.GATEWAY_TIMEOUT)
+					.entity("The PDF couldn't be sealed in time. Please try again later.").type(MediaType.TEXT_PLAIN)
+					.build();
+		}
+		LOGGER.error("An error occurred while sealing the PDF!", cause);
+		return Response.status(Status.INTERNAL_SERVER_ERROR)
+				.entity("An error occurred while sealing the PDF. Please try again later.").type(MediaType.TEXT_PLAIN)
+				.build();
+	}
+
+	/**
+	 * Seals the PDF in the lane of its priority (interactive by default, or
+	 * {@code X-Seal-Priority: bulk}). The request thread doesn't wait for the
+	 * seal, and the admission control is only asked when the seal gets its turn
+	 * in the lane, so waiting in the lane doesn't hold a permit.
+	 *
+	 * @param pdf  PDF source, is closed
+	 * @param size size of the PDF for the admission control, {@code null} if
+	 *             unknown
+	 */
+	private CompletionStage<Response> seal(final RandomAccessRead pdf, final Long size,
+			final Map<String, String> docValues, final String prefer, final String callback, final String priority) {
+		final var lane = SealLanes.Lane.of(priority);
+		if (lane == null) {
+			IOUtils.closeQuietly(pdf);
+			return CompletableFuture.completedStage(Response.status(Status.BAD_REQUEST)
+					.entity("Invalid header " + PRIORITY_HEADER + "!").type(MediaType.TEXT_PLAIN).build());
+		}
+		try {
+			return this.sealLanes.submit(lane, () -> sealAdmitted(pdf, size, docValues, prefer, callback))
+					.exceptionally(SealService::errorResponse);
+		} catch (final RejectedExecutionException e) {
+			IOUtils.closeQuietly(pdf);
+			return CompletableFuture.completedStage(errorResponse(e));
+		}
+	}
+
+	/**
+	 * Seals the PDF if the admission control admits it.
+	 */
+	private Response sealAdmitted(final RandomAccessRead pdf, final Long size, final Map<String, String> docValues,
+			final String prefer, final String callback) throws IOException {
+		final var permit = this.admission.tryAcquire(size);
+		if (permit == null) {
+			pdf.close();
+			return overloaded();
+		}
+		try (permit) {
+			return sealInLane(pdf, docValues, prefer, callback);
+		}
+	}
+
+	/**
+	 * Seals the PDF. With {@code Prefer: respond-async} (and asynchronous LTV
+	 * enabled), the PDF is returned with timestamp only (PAdES-B-T) and the LTV
+	 * info is added by a job, whose id is returned in the {@code X-Seal-Ltv-Job}
+	 * header.
+	 */
+	private Response sealInLane(final RandomAccessRead pdf, final Map<String, String> docValues,
+			final String prefer, final String callback) throws IOException {
+		if (isRespondAsync(prefer) && this.ltvJobs.isEnabled()) {
+			final var signedPdf = this.pdfSealer.signPdf(pdf, docValues);
+			final var jobId = this.ltvJobs.submit(signedPdf, callback);
+			if (jobId != null) {
+				return Response.ok(signedPdf, MediaType.APPLICATION_OCTET_STREAM)
+						.header("Content-Disposition", "attachment; filename=\"signed_pdf.pdf\"")
+						.header("Preference-Applied", "respond-async").header("X-Seal-Ltv-Job", jobId)
+						.header("Location", "/seal_service/ltv/" + jobId).build();
+			}
+			// too many jobs, add the LTV info right away
+			final var ltvPdf = this.pdfSealer.addValidationInformation(signedPdf);
+			return Response.ok(ltvPdf, MediaType.APPLICATION_OCTET_STREAM)
+					.header("Content-Disposition", "attachment; filename=\"signed_pdf.pdf\"").build();
+		}
+		final var signedPdf = this.pdfSealer.sealPdf(pdf, docValues);
+		return Response.ok(signedPdf, MediaType.APPLICATION_OCTET_STREAM)
+				.header("Content-Disposition", "attachment; filename=\"signed_pdf.pdf\"").build();
+	}
+
 	@POST
 	@Path("seal")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
-	public Response sealPdf(final SealRequest sealRequest) {
+	@Blocking
+	public CompletionStage<Response> sealPdf(final SealRequest sealRequest, @HeaderParam("Prefer") final String prefer,
+			@HeaderParam(LTV_CALLBACK_HEADER) final String callback,
+			@HeaderParam(PRIORITY_HEADER) final String priority) {
+		return seal(new RandomAccessReadBuffer(sealRequest.pdf),
+				sealRequest.pdf == null ? null : (long) sealRequest.pdf.length, sealRequest.docValues, prefer, callback,
+				priority);
+	}
+
+	/**
+	 * Binary variant of {@link #sealPdf(SealRequest, String, String, String)}, without base64 JSON
+	 * encoding. A body larger than {@code seal.upload.memory-threshold} is spooled to a temporary file
+	 * and read by PDFBox from disk.
+	 *
+	 * @param pdf           PDF body
+	 * @param docValues     values for Visual Seal as JSON object, non-ASCII
+	 *                      characters must be JSON-escaped
+	 * @param contentLength size of the PDF for the admission control, before it is
+	 *                      read
+	 */
+	@POST
+	@Path("seal")
+	@Consumes("application/pdf")
+	@Produces(MediaType.APPLICATION_OCTET_STREAM)
+	@Blocking
+	public CompletionStage<Response> sealPdfBinary(final InputStream pdf,
+			@HeaderParam("X-Seal-Doc-Values") final String docValues, @HeaderParam("Prefer") final String prefer,
+			@HeaderParam(LTV_CALLBACK_HEADER) final String callback,
+			@HeaderParam(PRIORITY_HEADER) final String priority,
+			@HeaderParam("Content-Length") final Long contentLength) {
+		final Map<String, String> values;
 		try {
-			final var signedPdf = this.pdfSealer.sealPdf(sealRequest.pdf, sealRequest.docValues);
-			return Response.ok(signedPdf, MediaType.APPLICATION_OCTET_STREAM)
-					.header("Content-Disposition", "attachment; filename=\"signed_pdf.pdf\"").build();
+			values = parseDocValues(docValues);
+		} catch (final JsonProcessingException e) {
+			return CompletableFuture.completedStage(Response.status(Status.BAD_REQUEST)
+					.entity("Invalid header X-Seal-Doc-Values!").type(MediaType.TEXT_PLAIN).build());
+		}
+		final RandomAccessRead source;
+		try {
+			source = SpooledUpload.read(pdf, (int) Math.min(Integer.MAX_VALUE, this.memoryThreshold.asLongValue()));
 		} catch (final IOException e) {
-			LOGGER.error("An error occurred while sealing the PDF!", e);
-			return Response.status(Status.INTERNAL_SERVER_ERROR)
-					.entity("An error occurred while sealing the PDF. Please try again later.")
-					.type(MediaType.TEXT_PLAIN).build();
+			LOGGER.error("An error occurred while reading the PDF!", e);
+			return CompletableFuture.completedStage(Response.status(Status.BAD_REQUEST)
+					.entity("Couldn't read the PDF!").type(MediaType.TEXT_PLAIN).build());
 		}
+		return seal(source, contentLength, values, prefer, callback, priority);
+	}
+
+	/**
+	 * Multipart variant of {@link #sealPdf(SealRequest, String, String, String)}, the uploaded PDF file is
+	 * read by PDFBox directly from disk.
+	 */
+	@POST
+	@Path("seal")
+	@Consumes(MediaType.MULTIPART_FORM_DATA)
+	@Produces(MediaType.APPLICATION_OCTET_STREAM)
+	@Blocking
+	public CompletionStage<Response> sealPdfMultipart(@MultipartForm final SealUpload sealUpload,
+			@HeaderParam("Prefer") final String prefer, @HeaderParam(LTV_CALLBACK_HEADER) final String callback,
+			@HeaderParam(PRIORITY_HEADER) final String priority) {
+		if (sealUpload.pdf == null) {
+			return CompletableFuture.completedStage(Response.status(Status.BAD_REQUEST)
+					.entity("Missing form part pdf!").type(MediaType.TEXT_PLAIN).build());
+		}
+		final Map<String, String> values;
+		try {
+			values = parseDocValues(sealUpload.docValues);
+		} catch (final JsonProcessingException e) {
+			return CompletableFuture.completedStage(Response.status(Status.BAD_REQUEST)
+					.entity("Invalid form part docValues!").type(MediaType.TEXT_PLAIN).build());
+		}
+		final RandomAccessRead source;
+		try {
+			source = new RandomAccessReadBufferedFile(sealUpload.pdf.uploadedFile().toFile());
+		} catch (final IOException e) {
+			LOGGER.error("An error occurred while reading the PDF!", e);
+			return CompletableFuture.completedStage(Response.status(Status.BAD_REQUEST)
+					.entity("Couldn't read the PDF!").type(MediaType.TEXT_PLAIN).build());
+		}
+		return seal(source, sealUpload.pdf.size(), values, prefer, callback, priority);
+	}
+
+	/**
+	 * Seals many PDFs in one call. Input is NDJSON (one {@link SealRequest} per
+	 * line), output is a ZIP stream with the sealed PDFs in order of completion
+	 * and a final {@code results.ndjson} entry with per item results.
+	 */
+	@POST
+	@Path("seal/batch")
+	@Consumes("application/x-ndjson")
+	@Produces("application/zip")
+	public Response sealPdfBatch(final InputStream sealRequests) {
+		final StreamingOutput output = out -> this.batchSealer.sealBatch(sealRequests, out);
+		return Response.ok(output, "application/zip")
+				.header("Content-Disposition", "attachment; filename=\"signed_pdfs.zip\"").build();
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.resteasy.reactive.PartType;
+import org.jboss.resteasy.reactive.RestForm;
+import org.jboss.resteasy.reactive.multipart.FileUpload;
+
+/**
+ * Multipart variant of {@link SealRequest}: the PDF is uploaded as binary file
+ * part, the doc values as JSON part.
+ */
+public class SealUpload {
+
+	@RestForm
+	public FileUpload pdf;
+
+	@RestForm
+	@PartType(MediaType.TEXT_PLAIN)
+	public String docValues;
+
+}
@@ -0,0 +1,61 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.spi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+
+/**
+ * Request body for PDFBox: small bodies are kept in memory, larger ones are
+ * spooled to a temporary file and read by PDFBox from disk (like multipart
+ * uploads), so a large PDF isn't held on the heap as a whole.
+ */
+final class SpooledUpload extends RandomAccessReadBufferedFile {
+
+	/**
+	 * @param body      request body, is read completely
+	 * @param threshold maximum size kept in memory
+	 * @return PDF source, a temporary file is deleted when it is closed
+	 */
+	static RandomAccessRead read(final InputStream body, final int threshold) throws IOException {
+		final var head = body.readNBytes(threshold);
+		if (head.length < threshold) {
+			return new RandomAccessReadBuffer(head);
+		}
+		final var file = Files.createTempFile("seal-upload-", ".pdf");
+		try {
+			try (var os = Files.newOutputStream(file)) {
+				os.write(head);
+				body.transferTo(os);
+			}
+			return new SpooledUpload(file.toFile());
+		} catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+	}
+
+	private final File file;
+
+	private SpooledUpload(final File file) throws IOException {
+		super(file);
+		this.file = file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			Files.deleteIfExists(this.file.toPath());
+		}
+	}
+
+}
@@ -3,10 +3,13 @@
  */
 package de.init.seal_service.visual;
 
+import java.awt.Rectangle;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -22,6 +25,7 @@ import com.google.zxing.NotFoundException;
 import com.google.zxing.WriterException;
 import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
 import com.google.zxing.common.HybridBinarizer;
 import com.google.zxing.datamatrix.DataMatrixReader;
 import com.google.zxing.datamatrix.DataMatrixWriter;
@@ -39,6 +43,18 @@ public class BarcodeProcessor {
 		ImageIO.setUseCache(false);
 	}
 
+	private static boolean isSameRuns(final List<Rectangle> previous, final List<Rectangle> current) {
+		if (previous.size() != current.size()) {
+			return false;
+		}
+		for (var i = 0; i < current.size(); ++i) {
+			if (previous.get(i).x != current.get(i).x || previous.get(i).width != current.get(i).width) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Decode DataMatrix image.
 	 *
@@ -92,8 +108,7 @@ public class BarcodeProcessor {
 	 */
 	public byte[] encodeDataMatrix(final String text, final String format, final int width, final int height) {
 		try {
-			final var dmw = new DataMatrixWriter();
-			final var matrix = dmw.encode(text, BarcodeFormat.DATA_MATRIX, width, height);
+			final var matrix = encodeDataMatrix(text, width, height);
 			final var bos = new ByteArrayOutputStream();
 			MatrixToImageWriter.writeToStream(matrix, format, bos);
 			return bos.toByteArray();
@@ -102,6 +117,19 @@ public class BarcodeProcessor {
 		}
 	}
 
+	/**
+	 * Create DataMatrix without image encoding, e.g. for direct conversion into
+	 * the target format.
+	 *
+	 * @param text   text
+	 * @param width  minimum width (pixels)
+	 * @param height minimum height (pixels)
+	 * @return DataMatrix, set bits are black
+	 */
+	public BitMatrix encodeDataMatrix(final String text, final int width, final int height) {
+		return new DataMatrixWriter().encode(text, BarcodeFormat.DATA_MATRIX, width, height);
+	}
+
 	/**
 	 * Create QRCode image.
 	 *
@@ -123,4 +151,40 @@ public class BarcodeProcessor {
 		}
 	}
 
+	/**
+	 * Convert a barcode into merged rectangles for vector output: runs of set bits
+	 * in a row become one rectangle, and consecutive rows with the same runs (the
+	 * pixel rows of one module row) are merged into one rectangle.
+	 *
+	 * @param matrix barcode
+	 * @return rectangles covering exactly the set bits, y grows downwards
+	 */
+	public List<Rectangle> toRectangles(final BitMatrix matrix) {
+		final List<Rectangle> rectangles = new ArrayList<>();
+		List<Rectangle> open = List.of();
+		for (var y = 0; y < matrix.getHeight(); ++y) {
+			final List<Rectangle> runs = new ArrayList<>();
+			var x = 0;
+			while (x < matrix.getWidth()) {
+				if (!matrix.get(x, y)) {
+					++x;
+					continue;
+				}
+				final var start = x;
+				while (x < matrix.getWidth() && matrix.get(x, y)) {
+					++x;
+				}
+				runs.add(new Rectangle(start, y, x - start, 1));
+			}
+			if (isSameRuns(open, runs)) {
+				open.forEach(r -> ++r.height);
+			} else {
+				rectangles.addAll(open);
+				open = runs;
+			}
+		}
+		rectangles.addAll(open);
+		return rectangles;
+	}
+
 }
@@ -4,31 +4,21 @@
 package de.init.seal_service.visual;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
-import java.security.SecureRandom;
 import java.security.Security;
-import java.security.Signature;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
 import java.time.LocalDate;
 import java.util.Base64;
 import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
+import javax.inject.Inject;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
-import de.init.seal_service.visual.profile.EntryType;
-import de.init.seal_service.visual.profile.Profile;
-
 /**
  * This class encodes JSON data with a matching XML profile into a combined seal
  * string. It follows the standard <a href=
@@ -57,18 +47,19 @@ public class SealEncoder {
 	@ConfigProperty(name = "seal.visual.name")
 	String sealerName;
 
-	private PrivateKey privateKey;
+	@ConfigProperty(name = "seal.visual.signer.pool-size", defaultValue = "16")
+	int signerPoolSize;
+
+	@ConfigProperty(name = "seal.visual.signer.mode", defaultValue = "RANDOMIZED")
+	SealSigner.Mode signerMode;
+
+	@Inject
+	SealProfileRegistry sealProfileRegistry;
+
+	private SealSigner sealSigner;
 
 	public String encode(final Map<String, String> json) {
-		final var profileFile = SealEncoder.class.getResource("/profiles/" + this.docProfileNr + ".xml");
-		Profile profile;
-		try {
-			final var jaxbContext = JAXBContext.newInstance(Profile.class);
-			final var jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-			profile = (Profile) jaxbUnmarshaller.unmarshal(profileFile);
-		} catch (final JAXBException e) {
-			throw new RuntimeException("Cannot read profile '" + this.docProfileNr + "'!", e);
-		}
+		final var profile = this.sealProfileRegistry.getProfile(this.docProfileNr);
 
 		final var encodingStream = new SealEncodingStream();
 
@@ -95,24 +86,24 @@ public class SealEncoder {
 		// ################
 		encodingStream.encodeMessageC40((char) 0x00, this.docProfileNr);
 
-		for (final EntryType entryType : profile.getEntry()) {
-			final var name = entryType.getName();
+		for (final SealProfile.Entry entry : profile.getEntries()) {
+			final var name = entry.name();
 			var value = json.get(name);
 			if (value == null) {
-				value = entryType.getDefaultValue();
+				value = entry.defaultValue();
 				if (value == null) {
-					if (!entryType.isOptional()) {
+					if (!entry.optional()) {
 						throw new RuntimeException("Cannot read profile value '" + name + "'!");
 					}
 					continue; // no value, no default and is optional? skip
 				}
 			}
-			final var length = entryType.getLength();
-			if (length != null && value.length() > length.intValue()) {
-				value = value.substring(length.intValue() - 1) + '…';
+			final var length = entry.length();
+			if (length >= 0 && value.length() > length) {
+				value = value.substring(length - 1) + '…';
 			}
-			final var tag = (char) entryType.getTag();
-			final var type = entryType.getType();
+			final var tag = entry.tag();
+			final var type = entry.type();
 			switch (type) {
 			case ALPHANUM:
 				encodingStream.encodeMessageC40(tag, value);
@@ -139,15 +130,14 @@ public class SealEncoder {
 		// ##################
 		// ECDSA 256 Bit: Plain (r,s)-Encoding with 64 Bytes (2 * 256 Bit),
 		// no ASN.1/DER encoding with 70 Byte!
-		final var signature = sign(encodingStream.toString().getBytes(StandardCharsets.ISO_8859_1));
+		final var signature = sign(encodingStream);
 		encodingStream.encodeMessageSignature(signature);
 
 		return encodingStream.toString();
 	}
 
 	@PostConstruct
-	void postConstruct() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException,
-			UnrecoverableKeyException {
+	void postConstruct() throws GeneralSecurityException, IOException {
 		final var keystore = KeyStore.getInstance("PKCS12");
 		final var pin = this.visualPrivatePass.toCharArray();
 		try (var is = SealEncoder.class.getResourceAsStream(this.visualPrivateFile)) {
@@ -156,18 +146,24 @@ public class SealEncoder {
 			}
 			keystore.load(is, pin);
 		}
-		this.privateKey = (PrivateKey) keystore.getKey(this.visualPrivateAlias, pin);
+		this.sealSigner = new SealSigner((PrivateKey) keystore.getKey(this.visualPrivateAlias, pin),
+				this.signerPoolSize, this.signerMode);
+		// Fail fast on broken profile and don't pay for parsing with the first seal
+		this.sealProfileRegistry.getProfile(this.docProfileNr);
 	}
 
 	public byte[] sign(final byte[] data) {
-		try {
-			final var ecdsaSign = Signature.getInstance("SHA256WITHPLAIN-ECDSA", "BC");
-			ecdsaSign.initSign(this.privateKey, new SecureRandom());
-			ecdsaSign.update(data);
-			return ecdsaSign.sign();
-		} catch (final Exception e) {
-			throw new RuntimeException("Couldn't sign message!", e);
-		}
+		return this.sealSigner.sign(data);
+	}
+
+	/**
+	 * Signs the encoded data without copying it.
+	 *
+	 * @param encodingStream encoded header and message zone
+	 * @return plain (r,s) ECDSA signature
+	 */
+	public byte[] sign(final SealEncodingStream encodingStream) {
+		return this.sealSigner.sign(encodingStream);
 	}
 
 }
\ No newline at end of file
@@ -3,33 +3,52 @@
  */
 package de.init.seal_service.visual;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.time.LocalDate;
+import java.util.Arrays;
 
 /**
  * This class encodes attributes into a combined seal string. It follows the
  * standard <a href=
  * "https://www.bsi.bund.de/DE/Themen/Unternehmen-und-Organisationen/Standards-und-Zertifizierung/Technische-Richtlinien/TR-nach-Thema-sortiert/tr03171/TR-03171_node.html">BSI
  * TR-03171</a>.
+ * <p>
+ * The encoded data is kept as bytes, {@link #toString()} returns them as
+ * ISO-8859-1 string (one char per byte) for barcode encoding.
  */
 public class SealEncodingStream {
 
-	private final StringBuilder sb = new StringBuilder();
+	private byte[] buf = new byte[256];
+
+	private int count;
+
+	private void ensureCapacity(final int minCapacity) {
+		if (minCapacity > this.buf.length) {
+			this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length << 1, minCapacity));
+		}
+	}
 
 	public void encodeByte(final int b) {
-		this.sb.append((char) (b & 0xff));
+		ensureCapacity(this.count + 1);
+		this.buf[this.count++] = (byte) b;
 	}
 
 	public void encodeBytes(final byte... bs) {
-		final var cs = new char[bs.length];
-		for (var i = 0; i < bs.length; ++i) {
-			cs[i] = (char) (bs[i] & 0xff);
-		}
-		encodeBytes(cs);
+		ensureCapacity(this.count + bs.length);
+		System.arraycopy(bs, 0, this.buf, this.count, bs.length);
+		this.count += bs.length;
 	}
 
 	public void encodeBytes(final char... cs) {
-		this.sb.append(cs);
+		ensureCapacity(this.count + cs.length);
+		for (final char c : cs) {
+			// as ISO-8859-1, unmappable chars become '?'
+			this.buf[this.count++] = (byte) (c <= 0xff ? c : '?');
+		}
 	}
 
 	public void encodeC40(final String str) {
@@ -87,9 +106,9 @@ public class SealEncodingStream {
 		// the days, and the (four digit) year.
 		// This positive integer is then concatenated into a sequence of three bytes.
 		final var date = month * 1000000 + day * 10000 + year;
-		this.sb.append((char) (date >> 16 & 0xff));
-		this.sb.append((char) (date >> 8 & 0xff));
-		this.sb.append((char) (date & 0xFF));
+		encodeByte(date >> 16 & 0xff);
+		encodeByte(date >> 8 & 0xff);
+		encodeByte(date & 0xFF);
 	}
 
 	public void encodeDate(final LocalDate localDate) {
@@ -153,9 +172,43 @@ public class SealEncodingStream {
 		encodeBytes(str.getBytes(StandardCharsets.UTF_8));
 	}
 
+	/**
+	 * @return number of encoded bytes
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * @return copy of the encoded bytes
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buf, this.count);
+	}
+
 	@Override
 	public String toString() {
-		return this.sb.toString();
+		return new String(this.buf, 0, this.count, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Writes the encoded bytes without copying them.
+	 *
+	 * @param out output stream
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(final OutputStream out) throws IOException {
+		out.write(this.buf, 0, this.count);
+	}
+
+	/**
+	 * Updates the signature with the encoded bytes without copying them.
+	 *
+	 * @param signature initialized signature
+	 * @throws SignatureException if the signature isn't initialized
+	 */
+	public void writeTo(final Signature signature) throws SignatureException {
+		signature.update(this.buf, 0, this.count);
 	}
 
 }
\ No newline at end of file
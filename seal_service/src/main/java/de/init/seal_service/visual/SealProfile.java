@@ -0,0 +1,63 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.visual;
+
+import java.util.List;
+
+import de.init.seal_service.visual.profile.EntryType;
+import de.init.seal_service.visual.profile.Profile;
+import de.init.seal_service.visual.profile.TypeType;
+
+/**
+ * Immutable, precompiled form of a TR-03171 XML {@link Profile}. The encoder
+ * just walks the entry plan, no JAXB objects are touched per seal.
+ */
+public final class SealProfile {
+
+	/**
+	 * One message zone entry of the profile.
+	 *
+	 * @param name         JSON attribute name
+	 * @param tag          message tag
+	 * @param type         value type
+	 * @param length       maximum value length, {@code -1} if unlimited
+	 * @param defaultValue default value, if attribute is missing (may be
+	 *                     {@code null})
+	 * @param optional     may the entry be skipped, if value and default are
+	 *                     missing
+	 */
+	public record Entry(String name, char tag, TypeType type, int length, String defaultValue, boolean optional) {
+
+		static Entry of(final EntryType entryType) {
+			final var length = entryType.getLength();
+			final var optional = entryType.isOptional();
+			return new Entry(entryType.getName(), (char) entryType.getTag(), entryType.getType(),
+					length == null ? -1 : length.intValue(), entryType.getDefaultValue(),
+					optional != null && optional.booleanValue());
+		}
+
+	}
+
+	static SealProfile of(final String docProfileNr, final Profile profile) {
+		return new SealProfile(docProfileNr, profile.getEntry().stream().map(Entry::of).toList());
+	}
+
+	private final String docProfileNr;
+
+	private final List<Entry> entries;
+
+	private SealProfile(final String docProfileNr, final List<Entry> entries) {
+		this.docProfileNr = docProfileNr;
+		this.entries = entries;
+	}
+
+	public String getDocProfileNr() {
+		return this.docProfileNr;
+	}
+
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+
+}
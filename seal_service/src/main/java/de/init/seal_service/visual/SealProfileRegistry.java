@@ -0,0 +1,105 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.visual;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import de.init.seal_service.visual.profile.Profile;
+
+/**
+ * This class holds the parsed XML profiles from {@code /profiles}. Each profile
+ * is unmarshalled once into an immutable {@link SealProfile}. With
+ * {@code seal.visual.profile.reload=true} profiles located in the file system
+ * are parsed again, when the file has been modified.
+ */
+@ApplicationScoped
+public class SealProfileRegistry {
+
+	private record Loaded(SealProfile profile, Path path, long lastModified) {
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(SealProfileRegistry.class);
+
+	@ConfigProperty(name = "seal.visual.profile.reload", defaultValue = "false")
+	boolean reload;
+
+	private JAXBContext jaxbContext;
+
+	private final Map<String, Loaded> profiles = new ConcurrentHashMap<>();
+
+	public SealProfile getProfile(final String docProfileNr) {
+		var loaded = this.profiles.get(docProfileNr);
+		if (loaded == null || this.reload && isModified(loaded)) {
+			loaded = this.profiles.compute(docProfileNr,
+					(key, current) -> current == null || isModified(current) ? load(key) : current);
+		}
+		return loaded.profile();
+	}
+
+	private boolean isModified(final Loaded loaded) {
+		if (loaded.path() == null) {
+			return false;
+		}
+		try {
+			return Files.getLastModifiedTime(loaded.path()).toMillis() != loaded.lastModified();
+		} catch (final IOException e) {
+			LOGGER.warn("Cannot check profile file '" + loaded.path() + "' for modifications!", e);
+			return false;
+		}
+	}
+
+	private Loaded load(final String docProfileNr) {
+		final var profileFile = SealProfileRegistry.class.getResource("/profiles/" + docProfileNr + ".xml");
+		if (profileFile == null) {
+			throw new RuntimeException("Cannot find profile '" + docProfileNr + "'!");
+		}
+		final var path = toPath(profileFile);
+		try {
+			final var lastModified = path == null ? 0 : Files.getLastModifiedTime(path).toMillis();
+			// Unmarshaller isn't thread-safe, the context is
+			final var profile = (Profile) this.jaxbContext.createUnmarshaller().unmarshal(profileFile);
+			LOGGER.info("Loaded profile '" + docProfileNr + "' with " + profile.getEntry().size() + " entries");
+			return new Loaded(SealProfile.of(docProfileNr, profile), path, lastModified);
+		} catch (final JAXBException | IOException e) {
+			throw new RuntimeException("Cannot read profile '" + docProfileNr + "'!", e);
+		}
+	}
+
+	@PostConstruct
+	void postConstruct() {
+		try {
+			this.jaxbContext = JAXBContext.newInstance(Profile.class);
+		} catch (final JAXBException e) {
+			throw new RuntimeException("Cannot create JAXB context for profiles!", e);
+		}
+	}
+
+	private Path toPath(final URL url) {
+		// Profiles packaged in a JAR cannot change at runtime
+		if (!this.reload || !"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return Paths.get(url.toURI());
+		} catch (final URISyntaxException e) {
+			return null;
+		}
+	}
+
+}
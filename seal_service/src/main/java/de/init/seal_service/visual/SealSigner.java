@@ -0,0 +1,169 @@
+/**
+ * This file was created by ]init[ AG 2023.
+ */
+package de.init.seal_service.visual;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.DrbgParameters.Capability;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.util.BigIntegers;
+
+/**
+ * This class creates the plain ECDSA signatures (r,s) of visual seals.
+ * <p>
+ * Initialized {@link Signature} instances are reused via a bounded pool (works
+ * for platform and virtual threads) and share one thread-safe DRBG, which is
+ * seeded once and never blocks on the entropy pool.
+ * <p>
+ * In {@link Mode#DETERMINISTIC} the nonce k is derived from key and message
+ * (RFC 6979), no randomness is needed and equal data gives equal signatures.
+ */
+public class SealSigner {
+
+	public enum Mode {
+		/** ECDSA with random k */
+		RANDOMIZED,
+		/** ECDSA with deterministic k (RFC 6979) */
+		DETERMINISTIC
+	}
+
+	@FunctionalInterface
+	private interface SignatureContent {
+
+		void writeTo(Signature signature) throws SignatureException;
+
+	}
+
+	public static final String ALGORITHM = "SHA256WITHPLAIN-ECDSA";
+
+	// BouncyCastle only offers ASN.1/DER encoding for deterministic ECDSA
+	private static final String DETERMINISTIC_ALGORITHM = "SHA256WITHECDDSA";
+
+	private final PrivateKey privateKey;
+
+	private final Mode mode;
+
+	private final int fieldLength;
+
+	private final Provider provider;
+
+	private final SecureRandom random;
+
+	private final BlockingQueue<Signature> idle;
+
+	/**
+	 * @param privateKey EC private key
+	 * @param poolSize   maximum number of idle signature instances kept for reuse
+	 * @throws GeneralSecurityException if the BouncyCastle provider or the DRBG
+	 *                                  isn't available
+	 */
+	public SealSigner(final PrivateKey privateKey, final int poolSize) throws GeneralSecurityException {
+		this(privateKey, poolSize, Mode.RANDOMIZED);
+	}
+
+	/**
+	 * @param privateKey EC private key
+	 * @param poolSize   maximum number of idle signature instances kept for reuse
+	 * @param mode       randomized or deterministic ECDSA
+	 * @throws GeneralSecurityException if the BouncyCastle provider or the DRBG
+	 *                                  isn't available
+	 */
+	public SealSigner(final PrivateKey privateKey, final int poolSize, final Mode mode)
+			throws GeneralSecurityException {
+		this.privateKey = privateKey;
+		this.mode = mode;
+		this.fieldLength = (((ECPrivateKey) privateKey).getParams().getOrder().bitLength() + 7) / 8;
+		this.provider = Security.getProvider("BC");
+		if (this.provider == null) {
+			throw new NoSuchProviderException("BouncyCastle provider isn't registered");
+		}
+		this.random = mode == Mode.RANDOMIZED
+				? SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, Capability.RESEED_ONLY,
+						"seal-signer".getBytes(StandardCharsets.US_ASCII)))
+				: null;
+		this.idle = new ArrayBlockingQueue<>(poolSize);
+	}
+
+	private Signature borrow() throws GeneralSecurityException {
+		var signature = this.idle.poll();
+		if (signature == null) {
+			if (this.mode == Mode.DETERMINISTIC) {
+				signature = Signature.getInstance(DETERMINISTIC_ALGORITHM, this.provider);
+				signature.initSign(this.privateKey);
+			} else {
+				signature = Signature.getInstance(ALGORITHM, this.provider);
+				signature.initSign(this.privateKey, this.random);
+			}
+		}
+		return signature;
+	}
+
+	public Mode getMode() {
+		return this.mode;
+	}
+
+	// ASN.1/DER SEQUENCE { r INTEGER, s INTEGER } to plain (r,s)
+	private byte[] toPlain(final byte[] der) throws SignatureException {
+		try {
+			final var sequence = ASN1Sequence.getInstance(der);
+			final var r = ASN1Integer.getInstance(sequence.getObjectAt(0)).getValue();
+			final var s = ASN1Integer.getInstance(sequence.getObjectAt(1)).getValue();
+			final var plain = new byte[2 * this.fieldLength];
+			BigIntegers.asUnsignedByteArray(r, plain, 0, this.fieldLength);
+			BigIntegers.asUnsignedByteArray(s, plain, this.fieldLength, this.fieldLength);
+			return plain;
+		} catch (final IllegalArgumentException e) {
+			throw new SignatureException("Invalid ECDSA signature encoding", e);
+		}
+	}
+
+	/**
+	 * @return number of idle signature instances
+	 */
+	int getIdle() {
+		return this.idle.size();
+	}
+
+	private byte[] sign(final SignatureContent content) {
+		try {
+			final var signature = borrow();
+			content.writeTo(signature);
+			// sign() resets the instance to the state after initSign()
+			final var result = signature.sign();
+			this.idle.offer(signature);
+			return this.mode == Mode.DETERMINISTIC ? toPlain(result) : result;
+		} catch (final GeneralSecurityException e) {
+			// a failed instance isn't returned to the pool
+			throw new RuntimeException("Couldn't sign message!", e);
+		}
+	}
+
+	public byte[] sign(final byte[] data) {
+		return sign(signature -> signature.update(data));
+	}
+
+	/**
+	 * Signs the encoded data without copying it.
+	 *
+	 * @param encodingStream encoded header and message zone
+	 * @return plain (r,s) ECDSA signature
+	 */
+	public byte[] sign(final SealEncodingStream encodingStream) {
+		return sign(encodingStream::writeTo);
+	}
+
+}
@@ -0,0 +1,174 @@
+package de.init.seal_service.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Small benchmark harness for the test scope, used instead of JMH: warm-up,
+ * then a timed run on one or more threads. Reports throughput, mean time and
+ * allocated heap bytes per operation (per thread allocation counters of the
+ * JVM). The benchmarks are tagged {@code benchmark} and only run with
+ * {@code mvn test -Pbenchmark}.
+ */
+public final class Benchmark {
+
+	/**
+	 * Measured operation.
+	 */
+	@FunctionalInterface
+	public interface Operation {
+
+		void run() throws Exception;
+
+	}
+
+	/**
+	 * @param name         name of the benchmark
+	 * @param threads      number of threads
+	 * @param operations   number of measured operations
+	 * @param opsPerSecond throughput of all threads
+	 * @param microsPerOp  mean time of an operation
+	 * @param bytesPerOp   mean allocated heap bytes of an operation
+	 */
+	public record Result(String name, int threads, long operations, double opsPerSecond, double microsPerOp,
+			long bytesPerOp) {
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-48s %2d threads %10.1f ops/s %12.1f us/op %,14d B/op", this.name,
+					this.threads, this.opsPerSecond, this.microsPerOp, this.bytesPerOp);
+		}
+
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(Benchmark.class);
+
+	private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("benchmark.warmup", 2));
+
+	private static final Duration MEASUREMENT = Duration.ofSeconds(Long.getLong("benchmark.measurement", 5));
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	// keeps results alive, so the JIT can't drop the measured work
+	private static volatile Object sink;
+
+	/**
+	 * @return allocated heap bytes of the current thread so far
+	 */
+	private static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Consumes a result of an operation.
+	 */
+	public static void consume(final Object result) {
+		sink = result;
+	}
+
+	/**
+	 * Heap held while a resource is open, e.g. a loaded document: used heap after
+	 * a full GC with the resource open, compared with before.
+	 *
+	 * @param open opens the resource, which is closed after measuring
+	 * @return retained bytes
+	 */
+	public static long retainedBytes(final Callable<? extends AutoCloseable> open) throws Exception {
+		final var before = usedHeap();
+		try (var resource = open.call()) {
+			final var retained = usedHeap() - before;
+			consume(resource);
+			return retained;
+		}
+	}
+
+	/**
+	 * Runs the operation on one thread.
+	 */
+	public static Result run(final String name, final Operation operation) throws Exception {
+		return run(name, 1, operation);
+	}
+
+	/**
+	 * Runs the operation concurrently on the threads, first for the warm-up time
+	 * ({@code -Dbenchmark.warmup}, seconds), then for the measurement time
+	 * ({@code -Dbenchmark.measurement}, seconds).
+	 *
+	 * @param name      name of the benchmark
+	 * @param threads   number of threads
+	 * @param operation measured operation
+	 * @return result, also logged
+	 */
+	public static Result run(final String name, final int threads, final Operation operation) throws Exception {
+		runThreads(threads, WARMUP, operation, new AtomicLong(), new AtomicLong(), new AtomicLong());
+		final var operations = new AtomicLong();
+		final var nanos = new AtomicLong();
+		final var bytes = new AtomicLong();
+		final var begin = System.nanoTime();
+		runThreads(threads, MEASUREMENT, operation, operations, nanos, bytes);
+		final var elapsed = System.nanoTime() - begin;
+		final var count = Math.max(1, operations.get());
+		final var result = new Result(name, threads, operations.get(), count * 1e9 / elapsed,
+				nanos.get() / 1e3 / count, bytes.get() / count);
+		LOGGER.info(result);
+		return result;
+	}
+
+	private static void runThreads(final int threads, final Duration duration, final Operation operation,
+			final AtomicLong operations, final AtomicLong nanos, final AtomicLong bytes) throws Exception {
+		final var start = new CountDownLatch(1);
+		final var failure = new AtomicReference<Exception>();
+		final List<Thread> workers = new ArrayList<>();
+		for (var i = 0; i < threads; ++i) {
+			final var worker = new Thread(() -> {
+				try {
+					start.await();
+					final var end = System.nanoTime() + duration.toNanos();
+					final var allocatedBefore = allocatedBytes();
+					final var begin = System.nanoTime();
+					var count = 0L;
+					do {
+						operation.run();
+						++count;
+					} while (System.nanoTime() - end < 0 && failure.get() == null);
+					nanos.addAndGet(System.nanoTime() - begin);
+					bytes.addAndGet(allocatedBytes() - allocatedBefore);
+					operations.addAndGet(count);
+				} catch (final Exception e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "benchmark-" + i);
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (final Thread worker : workers) {
+			worker.join();
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	private static long usedHeap() {
+		final var runtime = Runtime.getRuntime();
+		for (var i = 0; i < 3; ++i) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private Benchmark() {
+	}
+
+}
@@ -0,0 +1,55 @@
+package de.init.seal_service.pdf;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.datamatrix.DataMatrixWriter;
+
+public class BitMatrixImageTest {
+
+	@Test
+	public void testCreateImage() throws Exception {
+		// width isn't a multiple of 8, rows are padded
+		final var matrix = new DataMatrixWriter().encode("Test", BarcodeFormat.DATA_MATRIX, 101, 101);
+		final var bitMatrixImage = new BitMatrixImage(matrix);
+		Assertions.assertEquals(matrix.getWidth(), bitMatrixImage.getWidth());
+		Assertions.assertEquals(matrix.getHeight(), bitMatrixImage.getHeight());
+
+		// same image data in two documents, written and parsed again
+		final var bos = new ByteArrayOutputStream();
+		try (var doc = new PDDocument()) {
+			final var page = new PDPage();
+			doc.addPage(page);
+			try (var cs = new PDPageContentStream(doc, page)) {
+				cs.drawImage(bitMatrixImage.createImage(doc), 0, 0);
+			}
+			doc.save(bos);
+		}
+		try (var otherDoc = new PDDocument()) {
+			Assertions.assertNotNull(bitMatrixImage.createImage(otherDoc));
+		}
+
+		try (var doc = Loader.loadPDF(bos.toByteArray())) {
+			final var resources = doc.getPage(0).getResources();
+			final var name = resources.getXObjectNames().iterator().next();
+			final var image = (PDImageXObject) resources.getXObject(name);
+			Assertions.assertEquals(1, image.getBitsPerComponent());
+			final var bufferedImage = image.getImage();
+			for (var y = 0; y < matrix.getHeight(); ++y) {
+				for (var x = 0; x < matrix.getWidth(); ++x) {
+					final var black = (bufferedImage.getRGB(x, y) & 0xFFFFFF) == 0;
+					Assertions.assertEquals(matrix.get(x, y), black, "pixel " + x + "," + y);
+				}
+			}
+		}
+	}
+
+}
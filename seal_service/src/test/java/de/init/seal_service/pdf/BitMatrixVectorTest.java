@@ -0,0 +1,93 @@
+package de.init.seal_service.pdf;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.datamatrix.DataMatrixReader;
+
+import de.init.seal_service.visual.BarcodeProcessor;
+
+public class BitMatrixVectorTest {
+
+	private static final String TEXT = "Zeugnisbewertung 4711";
+
+	private final BarcodeProcessor barcodeProcessor = new BarcodeProcessor();
+
+	private static byte[] createPdf(final CreateVisibleSignatureMy.SignatureImage image) throws Exception {
+		final var bos = new ByteArrayOutputStream();
+		try (var doc = new PDDocument()) {
+			final var page = new PDPage(new PDRectangle(200, 200));
+			doc.addPage(page);
+			try (var cs = new PDPageContentStream(doc, page)) {
+				cs.saveGraphicsState();
+				image.draw(doc, cs, 200);
+				cs.restoreGraphicsState();
+			}
+			doc.save(bos);
+		}
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testRectanglesCoverMatrix() {
+		final var matrix = this.barcodeProcessor.encodeDataMatrix(TEXT, 200, 200);
+		final var rectangles = this.barcodeProcessor.toRectangles(matrix);
+
+		final var covered = new BitMatrix(matrix.getWidth(), matrix.getHeight());
+		for (final Rectangle rectangle : rectangles) {
+			for (var y = rectangle.y; y < rectangle.y + rectangle.height; ++y) {
+				for (var x = rectangle.x; x < rectangle.x + rectangle.width; ++x) {
+					Assertions.assertFalse(covered.get(x, y), "overlap at " + x + "," + y);
+					covered.set(x, y);
+				}
+			}
+		}
+		Assertions.assertEquals(matrix, covered);
+
+		// module rows are merged, not every pixel row has its own rectangles
+		var setPixels = 0;
+		for (var y = 0; y < matrix.getHeight(); ++y) {
+			for (var x = 0; x < matrix.getWidth(); ++x) {
+				setPixels += matrix.get(x, y) ? 1 : 0;
+			}
+		}
+		Assertions.assertTrue(rectangles.size() * 10 < setPixels, rectangles.size() + " rectangles");
+	}
+
+	@Test
+	public void testVectorDecodes() throws Exception {
+		final var matrix = this.barcodeProcessor.encodeDataMatrix(TEXT, 200, 200);
+		final var vectorPdf = createPdf(new BitMatrixVector(matrix.getWidth(), matrix.getHeight(),
+				this.barcodeProcessor.toRectangles(matrix)));
+		final var imagePdf = createPdf(new BitMatrixImage(matrix));
+		Assertions.assertTrue(vectorPdf.length <= imagePdf.length,
+				"vector " + vectorPdf.length + " bytes, image " + imagePdf.length + " bytes");
+
+		try (var doc = Loader.loadPDF(vectorPdf)) {
+			final var rendered = new PDFRenderer(doc).renderImageWithDPI(0, 144, ImageType.GRAY);
+			final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+			hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+			final var result = new DataMatrixReader().decode(
+					new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(rendered))), hints);
+			Assertions.assertEquals(TEXT, result.getText());
+		}
+	}
+
+}
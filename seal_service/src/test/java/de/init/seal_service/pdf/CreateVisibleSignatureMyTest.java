@@ -0,0 +1,138 @@
+package de.init.seal_service.pdf;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.encryption.SecurityProvider;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.util.Selector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.init.seal_service.pdf.pdfbox_signature.ValidationTimeStamp;
+
+/**
+ * Seals many documents in parallel with one shared
+ * {@link CreateVisibleSignatureMy} and validates every output signature.
+ */
+public class CreateVisibleSignatureMyTest {
+
+	private static final int DOCUMENTS = 32;
+
+	private static final int THREADS = 8;
+
+	private static void assertValidSignature(final byte[] signedPdf, final String expectedReason)
+			throws IOException, CMSException, GeneralSecurityException, OperatorCreationException {
+		try (var doc = Loader.loadPDF(signedPdf)) {
+			final var signature = doc.getLastSignatureDictionary();
+			Assertions.assertNotNull(signature);
+			// per-request state must not leak between concurrent calls
+			Assertions.assertEquals(expectedReason, signature.getReason());
+
+			final var signedData = new CMSSignedData(new CMSProcessableByteArray(signature.getSignedContent(signedPdf)),
+					signature.getContents(signedPdf));
+			final var signers = signedData.getSignerInfos().getSigners();
+			Assertions.assertEquals(1, signers.size());
+			final SignerInformation signer = signers.iterator().next();
+			@SuppressWarnings("unchecked")
+			final var certs = signedData.getCertificates()
+					.getMatches((Selector<X509CertificateHolder>) signer.getSID());
+			Assertions.assertEquals(1, certs.size());
+			Assertions.assertTrue(signer.verify(new JcaSimpleSignerInfoVerifierBuilder()
+					.setProvider(SecurityProvider.getProvider()).build(certs.iterator().next())));
+		}
+	}
+
+	private static CreateVisibleSignatureMy createVisibleSignature() throws Exception {
+		final var keystore = KeyStore.getInstance("PKCS12");
+		final var pin = "123456".toCharArray();
+		try (var is = CreateVisibleSignatureMyTest.class.getResourceAsStream("/keystore_pdf/zab_pdf_private.p12")) {
+			keystore.load(is, pin);
+		}
+		return new CreateVisibleSignatureMy(keystore, pin);
+	}
+
+	private static byte[] readResource(final String name) throws IOException {
+		try (var is = CreateVisibleSignatureMyTest.class.getResourceAsStream(name)) {
+			return IOUtils.toByteArray(is);
+		}
+	}
+
+	@Test
+	public void testAppearance() throws Exception {
+		final var createVisibleSignature = createVisibleSignature();
+		final var pdf = readResource("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf");
+		final var image = readResource("/pdf/Zeugnisbewertung_Datamatrix.png");
+
+		// each seal shows its own reason
+		for (final String reason : new String[] { "Zeugnisbewertung A", "Zeugnisbewertung B" }) {
+			final var signedPdf = createVisibleSignature.signPDF(pdf, new Rectangle2D.Float(70, 580, 200, 220),
+					(ValidationTimeStamp) null, "Siegel", image, "ZAB", "Berlin", reason, "zabservice@kmk.org");
+			assertValidSignature(signedPdf, reason);
+			try (var doc = Loader.loadPDF(signedPdf)) {
+				final var field = (PDSignatureField) doc.getDocumentCatalog().getAcroForm().getFields().stream()
+						.filter(PDSignatureField.class::isInstance).reduce((first, second) -> second).orElseThrow();
+				final var appearanceStream = field.getWidgets().get(0).getAppearance().getNormalAppearance()
+						.getAppearanceStream();
+				final String content;
+				try (var is = appearanceStream.getCOSObject().createInputStream()) {
+					content = new String(is.readAllBytes(), StandardCharsets.ISO_8859_1);
+				}
+				// background, followed by image and reason
+				Assertions.assertTrue(content.contains("-5000 -5000 10000 10000 re"), content);
+				Assertions.assertTrue(content.contains("(" + reason + ") Tj"), content);
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentSignPdf() throws Exception {
+		final var createVisibleSignature = createVisibleSignature();
+		final var pdf = readResource("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf");
+		final var image = readResource("/pdf/Zeugnisbewertung_Datamatrix.png");
+
+		final var executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final var start = new CountDownLatch(1);
+			final List<Future<byte[]>> futures = new ArrayList<>();
+			for (var i = 0; i < DOCUMENTS; ++i) {
+				final var reason = "Zeugnisbewertung " + i;
+				final Callable<byte[]> task = () -> {
+					start.await();
+					// no TSA, test must not depend on network
+					return createVisibleSignature.signPDF(pdf, new Rectangle2D.Float(70, 580, 200, 220),
+							(ValidationTimeStamp) null, "Siegel", image, "ZAB", "Berlin", reason,
+							"zabservice@kmk.org");
+				};
+				futures.add(executor.submit(task));
+			}
+			start.countDown();
+
+			for (var i = 0; i < DOCUMENTS; ++i) {
+				assertValidSignature(futures.get(i).get(60, TimeUnit.SECONDS), "Zeugnisbewertung " + i);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
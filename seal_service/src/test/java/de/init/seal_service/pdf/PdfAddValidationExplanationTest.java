@@ -0,0 +1,85 @@
+package de.init.seal_service.pdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+@QuarkusTest
+public class PdfAddValidationExplanationTest {
+
+	@Inject
+	PdfAddValidationExplanation validationExplanation;
+
+	private static byte[] loadPdf() throws IOException {
+		try (var pdfIs = PdfAddValidationExplanationTest.class
+				.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+			return IOUtils.toByteArray(pdfIs);
+		}
+	}
+
+	@Test
+	public void testAddExplanation() throws IOException {
+		final var pdf = loadPdf();
+
+		// precompiled overlay is reused for every document
+		for (var i = 0; i < 2; ++i) {
+			assertExplanation(this.validationExplanation.addExplanation(pdf));
+		}
+	}
+
+	@Test
+	public void testAddExplanationConcurrently() throws Exception {
+		final var pdf = loadPdf();
+
+		// no shared PDFBox objects between the documents
+		final var executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<byte[]>> results = new ArrayList<>();
+			for (var i = 0; i < 16; ++i) {
+				results.add(executor.submit(() -> this.validationExplanation.addExplanation(pdf)));
+			}
+			for (final Future<byte[]> result : results) {
+				assertExplanation(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void assertExplanation(final byte[] pdfExpl) throws IOException {
+		try (var doc = Loader.loadPDF(pdfExpl)) {
+			final var text = new PDFTextStripper().getText(doc);
+			Assertions.assertTrue(text.contains("Siegelvalidierung"), text);
+			Assertions.assertTrue(text.contains("https://zab.de/validierung.html"), text);
+
+			// overlay is drawn as Form XObject with the QR-Code image
+			final var resources = doc.getPage(0).getResources();
+			var overlays = 0;
+			for (final var name : resources.getXObjectNames()) {
+				if (resources.getXObject(name) instanceof final PDFormXObject form
+						&& form.getBBox().getWidth() == 1000 && form.getBBox().getHeight() == 800) {
+					final var formResources = form.getResources();
+					final var imageName = formResources.getXObjectNames().iterator().next();
+					Assertions.assertInstanceOf(PDImageXObject.class, formResources.getXObject(imageName));
+					++overlays;
+				}
+			}
+			Assertions.assertEquals(1, overlays);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package de.init.seal_service.pdf;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.security.KeyStore;
+
+import javax.inject.Inject;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.google.zxing.common.BitMatrix;
+
+import de.init.seal_service.benchmark.Benchmark;
+import de.init.seal_service.pdf.pdfbox_signature.ValidationTimeStamp;
+import de.init.seal_service.visual.BarcodeProcessor;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+/**
+ * PDF sealing without TSA and LTV: explanation and signature in one or two
+ * parsed documents, DataMatrix as image or as vector rectangles.
+ */
+@QuarkusTest
+@Tag("benchmark")
+public class PdfPipelineBenchmark {
+
+	private static final Logger LOGGER = Logger.getLogger(PdfPipelineBenchmark.class);
+
+	private static final Rectangle2D RECT = new Rectangle2D.Float(70, 580, 200, 220);
+
+	private static final String TEXT = "Zeugnisbewertung 4711";
+
+	@Inject
+	PdfAddValidationExplanation validationExplanation;
+
+	private final BarcodeProcessor barcodeProcessor = new BarcodeProcessor();
+
+	private CreateVisibleSignatureMy createVisibleSignature;
+
+	private BitMatrix dataMatrix;
+
+	private byte[] pdf;
+
+	@BeforeEach
+	public void beforeEach() throws Exception {
+		final var keystore = KeyStore.getInstance("PKCS12");
+		final var pin = "123456".toCharArray();
+		try (var is = PdfPipelineBenchmark.class.getResourceAsStream("/keystore_pdf/zab_pdf_private.p12")) {
+			keystore.load(is, pin);
+		}
+		this.createVisibleSignature = new CreateVisibleSignatureMy(keystore, pin);
+		try (var pdfIs = PdfPipelineBenchmark.class
+				.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+			this.pdf = IOUtils.toByteArray(pdfIs);
+		}
+		this.dataMatrix = this.barcodeProcessor.encodeDataMatrix(TEXT, 200, 200);
+	}
+
+	@Test
+	public void benchmarkDataMatrix() throws Exception {
+		final var image = new BitMatrixImage(this.dataMatrix);
+		final var vector = new BitMatrixVector(this.dataMatrix.getWidth(), this.dataMatrix.getHeight(),
+				this.barcodeProcessor.toRectangles(this.dataMatrix));
+		LOGGER.info("sealed PDF size: image " + sign(image).length + " bytes, vector " + sign(vector).length
+				+ " bytes");
+		Benchmark.run("sign, DataMatrix image", () -> Benchmark.consume(sign(image)));
+		Benchmark.run("sign, DataMatrix vector", () -> Benchmark.consume(sign(vector)));
+	}
+
+	@Test
+	public void benchmarkExplanationAndSignature() throws Exception {
+		final var image = new BitMatrixImage(this.dataMatrix);
+		for (final int threads : new int[] { 1, 4 }) {
+			// before: explanation saved completely, then parsed again for the signature
+			Benchmark.run("explanation + sign, two documents", threads, () -> {
+				try (var doc = Loader.loadPDF(this.validationExplanation.addExplanation(this.pdf))) {
+					Benchmark.consume(sign(doc, image));
+				}
+			});
+			Benchmark.run("explanation + sign, one document", threads, () -> {
+				try (var doc = Loader.loadPDF(this.pdf)) {
+					this.validationExplanation.addExplanation(doc);
+					Benchmark.consume(sign(doc, image));
+				}
+			});
+		}
+	}
+
+	private byte[] sign(final CreateVisibleSignatureMy.SignatureImage image) throws IOException {
+		try (var doc = Loader.loadPDF(this.pdf)) {
+			return sign(doc, image);
+		}
+	}
+
+	private byte[] sign(final PDDocument doc, final CreateVisibleSignatureMy.SignatureImage image) throws IOException {
+		return this.createVisibleSignature.signPDF(doc, RECT, (ValidationTimeStamp) null, "Siegel", image, "DEZB",
+				"Bonn", "Benchmark", null);
+	}
+
+}
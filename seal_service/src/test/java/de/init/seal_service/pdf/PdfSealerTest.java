@@ -6,11 +6,16 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
+import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -24,6 +29,23 @@ public class PdfSealerTest {
 	@Inject
 	PdfSealer pdfSealer;
 
+	@Test
+	public void testSealPdfClosesSourceOnFailure() {
+		final var closed = new AtomicBoolean();
+		final var pdf = new RandomAccessReadBuffer(new byte[0]) {
+
+			@Override
+			public void close() throws IOException {
+				closed.set(true);
+				super.close();
+			}
+
+		};
+		// required doc values are missing, the seal fails before the PDF is parsed
+		Assertions.assertThrows(RuntimeException.class, () -> this.pdfSealer.sealPdf(pdf, Map.of()));
+		Assertions.assertTrue(closed.get());
+	}
+
 	@Test
 	public void testSealPdf() throws UnrecoverableKeyException, KeyStoreException, NoSuchAlgorithmException,
 			CertificateException, IOException {
@@ -43,6 +65,16 @@ public class PdfSealerTest {
 			pdfOs.write(sealedPdf);
 		}
 		Assertions.assertTrue(sealedPdf.length > pdf.length);
+		// explanation and signature are appended as incremental updates, the original
+		// revision stays untouched
+		Assertions.assertTrue(Arrays.equals(pdf, 0, pdf.length, sealedPdf, 0, pdf.length));
+		try (var doc = Loader.loadPDF(sealedPdf)) {
+			final var signature = doc.getLastSignatureDictionary();
+			Assertions.assertNotNull(signature);
+			// explanation was added within the signed revision
+			final var text = new PDFTextStripper().getText(doc);
+			Assertions.assertTrue(text.contains("Siegelvalidierung"), text);
+		}
 	}
 
 }
\ No newline at end of file
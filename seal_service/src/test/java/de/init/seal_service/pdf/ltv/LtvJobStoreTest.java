@@ -0,0 +1,103 @@
+package de.init.seal_service.pdf.ltv;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.init.seal_service.pdf.ltv.LtvJobStore.Status;
+
+public class LtvJobStoreTest {
+
+	private static final byte[] SIGNED = { 1, 2, 3 };
+
+	private static final byte[] LTV = { 1, 2, 3, 4 };
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testBounded() throws Exception {
+		final var store = new LtvJobStore(this.directory, 2);
+		Assertions.assertNotNull(store.create(SIGNED, null));
+		final var id = store.create(SIGNED, null);
+		Assertions.assertNull(store.create(SIGNED, null));
+
+		// finished jobs count until they are purged
+		store.complete(id, LTV);
+		Assertions.assertNull(store.create(SIGNED, null));
+		Assertions.assertEquals(1, store.purge(Instant.now().plusSeconds(1)));
+		Assertions.assertNotNull(store.create(SIGNED, null));
+	}
+
+	@Test
+	public void testBoundedConcurrently() throws Exception {
+		final var store = new LtvJobStore(this.directory, 4);
+		final var start = new CountDownLatch(1);
+		final var executor = Executors.newFixedThreadPool(16);
+		try {
+			final List<Future<String>> ids = new ArrayList<>();
+			for (var i = 0; i < 64; ++i) {
+				ids.add(executor.submit((Callable<String>) () -> {
+					start.await();
+					return store.create(SIGNED, null);
+				}));
+			}
+			start.countDown();
+			var created = 0;
+			for (final Future<String> id : ids) {
+				created += id.get() == null ? 0 : 1;
+			}
+			// the slots are reserved atomically, no more jobs than allowed
+			Assertions.assertEquals(4, created);
+			Assertions.assertEquals(4, store.size());
+			try (var files = Files.list(this.directory)) {
+				Assertions.assertEquals(4, files.count());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testInvalidId() throws Exception {
+		final var store = new LtvJobStore(this.directory, 10);
+		Assertions.assertNull(store.getStatus("../secret"));
+		Assertions.assertNull(store.getStatus(null));
+	}
+
+	@Test
+	public void testRestart() throws Exception {
+		var store = new LtvJobStore(this.directory, 10);
+		final var pending = store.create(SIGNED, "http://localhost/callback");
+		final var done = store.create(SIGNED, null);
+		final var failed = store.create(SIGNED, null);
+		store.complete(done, LTV);
+		store.fail(failed, "OCSP responder not available");
+		Files.write(this.directory.resolve(pending + ".ltv.pdf123.tmp"), LTV);
+
+		// a new instance (restart) knows all jobs, the interrupted write is removed
+		store = new LtvJobStore(this.directory, 10);
+		Assertions.assertEquals(3, store.size());
+		Assertions.assertEquals(List.of(pending), store.getPending());
+		Assertions.assertArrayEquals(SIGNED, store.readInput(pending));
+		Assertions.assertEquals("http://localhost/callback", store.readCallback(pending));
+		Assertions.assertEquals(Status.DONE, store.getStatus(done));
+		Assertions.assertArrayEquals(LTV, store.readResult(done));
+		Assertions.assertNull(store.readCallback(done));
+		Assertions.assertEquals(Status.FAILED, store.getStatus(failed));
+		try (var files = Files.list(this.directory)) {
+			Assertions.assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package de.init.seal_service.pdf.pdfbox_signature.cert;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.init.seal_service.pdf.pdfbox_signature.validation.LocalPki;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CaIssuerCacheTest {
+
+	private static final int CA_DEPTH = 2;
+
+	private List<X509Certificate> chain;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private LocalPki pki;
+
+	@AfterEach
+	public void afterEach() {
+		CertificateVerifier.setCaIssuerCache(null);
+		this.pki.close();
+	}
+
+	@BeforeEach
+	public void beforeEach() throws Exception {
+		this.meterRegistry = new SimpleMeterRegistry();
+		this.pki = new LocalPki(CA_DEPTH, true);
+		final var pin = "123456".toCharArray();
+		this.chain = Arrays.stream(this.pki.createKeyStore(pin).getCertificateChain("signer"))
+				.map(X509Certificate.class::cast).toList();
+	}
+
+	private CaIssuerCache createCache(final Path directory) throws IOException {
+		return new CaIssuerCache(Duration.ofHours(1), Duration.ofMinutes(5), directory, this.meterRegistry);
+	}
+
+	@Test
+	public void testCached() throws Exception {
+		final var cache = createCache(null);
+		final var url = this.pki.getCaIssuersUrl(CA_DEPTH);
+		Assertions.assertEquals(List.of(this.chain.get(1)), cache.getCertificates(url));
+		Assertions.assertEquals(List.of(this.chain.get(1)), cache.getCertificates(url));
+		Assertions.assertEquals(1, this.pki.getCaIssuersRequests());
+
+		// by key identifier, without the URL
+		Assertions.assertEquals(this.chain.get(1), cache.findIssuer(this.chain.get(0)));
+		Assertions.assertNull(cache.findIssuer(this.chain.get(1)));
+	}
+
+	@Test
+	public void testDownloadExtraCertificates() throws Exception {
+		CertificateVerifier.setCaIssuerCache(createCache(null));
+		for (var i = 0; i < 3; ++i) {
+			for (var j = 0; j < CA_DEPTH; ++j) {
+				Assertions.assertEquals(Set.of(this.chain.get(j + 1)),
+						CertificateVerifier.downloadExtraCertificates(this.chain.get(j)));
+			}
+		}
+		// each issuer once, then known by key identifier
+		Assertions.assertEquals(CA_DEPTH, this.pki.getCaIssuersRequests());
+	}
+
+	@Test
+	public void testExpired() throws Exception {
+		CertificateVerifier.setCaIssuerCache(
+				new CaIssuerCache(Duration.ofMillis(200), Duration.ofMinutes(5), null, this.meterRegistry));
+		Assertions.assertEquals(Set.of(this.chain.get(1)),
+				CertificateVerifier.downloadExtraCertificates(this.chain.get(0)));
+		Assertions.assertEquals(1, this.pki.getCaIssuersRequests());
+
+		// after the TTL the issuer isn't known by key identifier anymore, it's downloaded again
+		Thread.sleep(300);
+		Assertions.assertEquals(Set.of(this.chain.get(1)),
+				CertificateVerifier.downloadExtraCertificates(this.chain.get(0)));
+		Assertions.assertEquals(2, this.pki.getCaIssuersRequests());
+	}
+
+	@Test
+	public void testFailureCached() throws Exception {
+		final var cache = createCache(null);
+		final var url = this.pki.getCaIssuersUrl(CA_DEPTH + 1);
+		Assertions.assertThrows(IOException.class, () -> cache.getCertificates(url));
+		Assertions.assertThrows(IOException.class, () -> cache.getCertificates(url));
+		Assertions.assertEquals(1, this.pki.getCaIssuersRequests());
+		Assertions.assertEquals(1,
+				this.meterRegistry.get("seal.ltv.aia.cache").tag("result", "negative").counter().count());
+	}
+
+	@Test
+	public void testPersisted(@TempDir final Path directory) throws Exception {
+		final var url = this.pki.getCaIssuersUrl(CA_DEPTH);
+		createCache(directory).getCertificates(url);
+
+		// a new instance (restart) reads the certificates from disk
+		final var cache = createCache(directory);
+		Assertions.assertEquals(List.of(this.chain.get(1)), cache.getCertificates(url));
+		Assertions.assertEquals(this.chain.get(1), cache.findIssuer(this.chain.get(0)));
+		Assertions.assertEquals(1, this.pki.getCaIssuersRequests());
+	}
+
+}
@@ -0,0 +1,129 @@
+package de.init.seal_service.pdf.pdfbox_signature.cert;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.init.seal_service.pdf.pdfbox_signature.validation.LocalPki;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CrlStoreTest {
+
+	private List<X509Certificate> chain;
+
+	private String crlUrl;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private LocalPki pki;
+
+	private ScheduledExecutorService scheduler;
+
+	@AfterEach
+	public void afterEach() {
+		this.scheduler.shutdownNow();
+		this.pki.close();
+	}
+
+	@BeforeEach
+	public void beforeEach() throws Exception {
+		this.meterRegistry = new SimpleMeterRegistry();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor();
+		this.pki = new LocalPki(1);
+		final var pin = "123456".toCharArray();
+		this.chain = Arrays.stream(this.pki.createKeyStore(pin).getCertificateChain("signer"))
+				.map(X509Certificate.class::cast).toList();
+		this.crlUrl = CRLVerifier.getCrlDistributionPoints(this.chain.get(0)).get(0);
+	}
+
+	@Test
+	public void testDeltaRefresh() throws Exception {
+		this.pki.setDeltaCrlValidity(Duration.ofSeconds(2));
+		final var store = new CrlStore(this.scheduler, Duration.ofSeconds(1), Duration.ofMillis(100),
+				Duration.ofHours(1), this.meterRegistry);
+		final var signer = this.chain.get(0);
+		final var crl = store.getCrl(this.crlUrl);
+		Assertions.assertNotNull(store.getDeltaCrl(this.crlUrl));
+		store.checkRevocation(crl, signer, new Date(), this.crlUrl);
+
+		// revoked after the base CRL, only the refreshed delta CRL knows it
+		this.pki.revoke(signer, new Date(System.currentTimeMillis() - 60_000));
+		Thread.sleep(1_500);
+		Assertions.assertSame(crl, store.getCrl(this.crlUrl));
+		Assertions.assertThrows(RevokedCertificateException.class,
+				() -> store.checkRevocation(crl, signer, new Date(), this.crlUrl));
+		Assertions.assertEquals(1, this.pki.getCrlRequests());
+		Assertions.assertTrue(this.pki.getDeltaCrlRequests() >= 2);
+		Assertions.assertTrue(
+				this.meterRegistry.get("seal.ltv.crl.refresh").tag("result", "success").counter().count() >= 1);
+	}
+
+	@Test
+	public void testDownloadedOnce() throws Exception {
+		final var store = new CrlStore(this.scheduler, Duration.ofMinutes(10), Duration.ofMinutes(1),
+				Duration.ofHours(1), this.meterRegistry);
+		final var crl = store.getCrl(this.crlUrl);
+		for (var i = 0; i < 10; ++i) {
+			Assertions.assertSame(crl, store.getCrl(this.crlUrl));
+		}
+		Assertions.assertEquals(1, this.pki.getCrlRequests());
+		Assertions.assertNull(store.getDeltaCrl(this.crlUrl));
+		Assertions.assertEquals(10,
+				this.meterRegistry.get("seal.ltv.crl.store").tag("result", "hit").counter().count());
+		Assertions.assertEquals(1,
+				this.meterRegistry.get("seal.ltv.crl.store").tag("result", "miss").counter().count());
+
+		// the index gives the same result as the CRL itself
+		store.checkRevocation(crl, this.chain.get(0), new Date(), this.crlUrl);
+	}
+
+	@Test
+	public void testOneRefreshPerUrl() throws Exception {
+		// the delta CRL expires before its refresh (retry interval), seals download it
+		this.pki.setDeltaCrlValidity(Duration.ofMillis(300));
+		final var scheduler = new ScheduledThreadPoolExecutor(1);
+		scheduler.setRemoveOnCancelPolicy(true);
+		try {
+			final var store = new CrlStore(scheduler, Duration.ofMillis(100), Duration.ofMinutes(1),
+					Duration.ofHours(1), this.meterRegistry);
+			for (var i = 0; i < 3; ++i) {
+				store.getCrl(this.crlUrl);
+				Thread.sleep(400);
+			}
+			store.getCrl(this.crlUrl);
+			Assertions.assertTrue(this.pki.getDeltaCrlRequests() >= 4);
+			// each download replaced the scheduled refresh
+			Assertions.assertEquals(1, scheduler.getQueue().size());
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRevoked() throws Exception {
+		final var signer = this.chain.get(0);
+		this.pki.revoke(signer, new Date(System.currentTimeMillis() - 60_000));
+		final var store = new CrlStore(this.scheduler, Duration.ofMinutes(10), Duration.ofMinutes(1),
+				Duration.ofHours(1), this.meterRegistry);
+		final var crl = store.getCrl(this.crlUrl);
+		Assertions.assertThrows(RevokedCertificateException.class,
+				() -> store.checkRevocation(crl, signer, new Date(), this.crlUrl));
+
+		// signed before the revocation
+		store.checkRevocation(crl, signer, new Date(System.currentTimeMillis() - 120_000), this.crlUrl);
+		// an intermediate CA isn't revoked
+		store.checkRevocation(crl, this.chain.get(1), new Date(), this.crlUrl);
+	}
+
+}
@@ -0,0 +1,101 @@
+package de.init.seal_service.pdf.pdfbox_signature.cert;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.init.seal_service.pdf.pdfbox_signature.validation.LocalPki;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class OcspResponseCacheTest {
+
+	private List<X509Certificate> chain;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private LocalPki pki;
+
+	@AfterEach
+	public void afterEach() {
+		this.pki.close();
+	}
+
+	@BeforeEach
+	public void beforeEach() throws Exception {
+		this.meterRegistry = new SimpleMeterRegistry();
+		this.pki = new LocalPki(1);
+		final var pin = "123456".toCharArray();
+		this.chain = Arrays.stream(this.pki.createKeyStore(pin).getCertificateChain("signer"))
+				.map(X509Certificate.class::cast).toList();
+	}
+
+	private double count(final String result) {
+		return this.meterRegistry.get("seal.ltv.ocsp.cache").tag("result", result).counter().count();
+	}
+
+	private void fetch(final OcspResponseCache cache) throws Exception {
+		final var ocspHelper = new OcspHelper(this.chain.get(0), new Date(), this.chain.get(1),
+				new HashSet<>(this.chain), this.pki.getOcspUrl());
+		ocspHelper.setCache(cache);
+		Assertions.assertNotNull(ocspHelper.getResponseOcsp());
+		Assertions.assertNotNull(ocspHelper.getOcspResponderCertificate());
+	}
+
+	@Test
+	public void testCached() throws Exception {
+		final var cache = new OcspResponseCache(10, Duration.ofHours(12), null, this.meterRegistry);
+		fetch(cache);
+		fetch(cache);
+		fetch(cache);
+		Assertions.assertEquals(1, this.pki.getOcspRequests());
+		Assertions.assertEquals(2, count("hit"));
+		Assertions.assertEquals(1, count("miss"));
+		Assertions.assertEquals(1, this.meterRegistry.get("seal.ltv.ocsp.cache.size").gauge().value());
+	}
+
+	@Test
+	public void testMaxAge() throws Exception {
+		final var cache = new OcspResponseCache(10, Duration.ofMillis(200), null, this.meterRegistry);
+		fetch(cache);
+		fetch(cache);
+		Assertions.assertEquals(1, this.pki.getOcspRequests());
+
+		// the response is valid for an hour, but older than the max age
+		Thread.sleep(300);
+		fetch(cache);
+		Assertions.assertEquals(2, this.pki.getOcspRequests());
+		Assertions.assertEquals(2, count("miss"));
+	}
+
+	@Test
+	public void testPersisted(@TempDir final Path directory) throws Exception {
+		fetch(new OcspResponseCache(10, Duration.ofHours(12), directory, this.meterRegistry));
+		try (var files = Files.list(directory)) {
+			Assertions.assertEquals(1, files.filter(file -> file.toString().endsWith(".ocsp")).count());
+		}
+
+		// a new instance (restart) reads the response from disk
+		fetch(new OcspResponseCache(10, Duration.ofHours(12), directory, new SimpleMeterRegistry()));
+		Assertions.assertEquals(1, this.pki.getOcspRequests());
+	}
+
+	@Test
+	public void testWithoutCache() throws Exception {
+		fetch(null);
+		fetch(null);
+		Assertions.assertEquals(2, this.pki.getOcspRequests());
+	}
+
+}
@@ -0,0 +1,93 @@
+package de.init.seal_service.pdf.pdfbox_signature.util;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.init.seal_service.pdf.CreateVisibleSignatureMy;
+import de.init.seal_service.pdf.pdfbox_signature.ValidationTimeStamp;
+import de.init.seal_service.pdf.pdfbox_signature.validation.AddValidationInformation;
+import de.init.seal_service.pdf.pdfbox_signature.validation.LocalPki;
+
+public class DeadlineTest {
+
+	private static final Duration LATENCY = Duration.ofSeconds(3);
+
+	private ExecutorService executor;
+
+	@AfterEach
+	public void afterEach() {
+		this.executor.shutdownNow();
+	}
+
+	@BeforeEach
+	public void beforeEach() {
+		this.executor = Executors.newFixedThreadPool(2);
+	}
+
+	@Test
+	public void testExpired() throws Exception {
+		final var deadline = Deadline.after(Duration.ofMillis(-1));
+		Assertions.assertTrue(deadline.isExpired());
+		Assertions.assertThrows(DeadlineExceededException.class, () -> deadline.call(Deadline::timeout));
+		// not bound after the call
+		Assertions.assertNull(Deadline.current());
+		Assertions.assertEquals(Duration.ofSeconds(5), Deadline.timeout(Duration.ofSeconds(5)));
+	}
+
+	@Test
+	public void testLimited() throws Exception {
+		final var deadline = Deadline.after(Duration.ofSeconds(10));
+		Assertions.assertSame(deadline, deadline.limit(Duration.ofMinutes(1)));
+		final var stage = deadline.limit(Duration.ofSeconds(2));
+		final var timeout = stage.call(() -> Deadline.timeout(Duration.ofSeconds(30)));
+		Assertions.assertTrue(timeout.compareTo(Duration.ofSeconds(2)) <= 0, "timeout: " + timeout);
+		Assertions.assertEquals(Duration.ofMillis(500), stage.call(() -> Deadline.timeout(Duration.ofMillis(500))));
+	}
+
+	@Test
+	public void testPropagated() throws Exception {
+		final var deadline = Deadline.after(Duration.ofSeconds(10));
+		final var executor = deadline.call(() -> Deadline.propagate(this.executor));
+		Assertions.assertSame(deadline, CompletableFuture.supplyAsync(Deadline::current, executor).get());
+		Assertions.assertNull(CompletableFuture.supplyAsync(Deadline::current, this.executor).get());
+	}
+
+	@Test
+	public void testSlowResponder() throws Exception {
+		try (var pki = new LocalPki(1)) {
+			final var pin = "123456".toCharArray();
+			final byte[] pdf;
+			try (var is = DeadlineTest.class.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+				pdf = IOUtils.toByteArray(is);
+			}
+			final var signedPdf = new CreateVisibleSignatureMy(pki.createKeyStore(pin), pin).signPDF(pdf,
+					new Rectangle2D.Float(70, 580, 200, 220), (ValidationTimeStamp) null, "Siegel", (byte[]) null,
+					"Local Test Signer", "Berlin", "Test", "test@localhost");
+			pki.setLatency(LATENCY);
+
+			// OCSP and CRL requests give up with the deadline instead of waiting for the
+			// responder
+			final var deadline = Deadline.after(Duration.ofMillis(500));
+			final var begin = System.nanoTime();
+			try {
+				deadline.call(() -> new AddValidationInformation(this.executor).validateSignature(signedPdf));
+			} catch (final IOException e) {
+				// no revocation information in time
+			}
+			final var elapsed = Duration.ofNanos(System.nanoTime() - begin);
+			Assertions.assertTrue(elapsed.compareTo(LATENCY) < 0, "elapsed: " + elapsed);
+			Assertions.assertTrue(deadline.isExpired());
+		}
+	}
+
+}
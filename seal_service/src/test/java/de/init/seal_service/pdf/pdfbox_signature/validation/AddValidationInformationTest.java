@@ -0,0 +1,118 @@
+package de.init.seal_service.pdf.pdfbox_signature.validation;
+
+import java.awt.geom.Rectangle2D;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.init.seal_service.pdf.CreateVisibleSignatureMy;
+import de.init.seal_service.pdf.pdfbox_signature.ValidationTimeStamp;
+
+/**
+ * Adds LTV information for a signature of a local PKI (root, 2 CAs, signer)
+ * whose OCSP responder and CRL endpoint answer with injected latency.
+ */
+public class AddValidationInformationTest {
+
+	private record Dss(int ocsps, int crls, int certs, int vris) {
+	}
+
+	private static final Duration LATENCY = Duration.ofMillis(400);
+
+	private static final int CA_DEPTH = 2;
+
+	private static Dss readDss(final byte[] pdf) throws Exception {
+		try (var doc = Loader.loadPDF(pdf)) {
+			final var dss = doc.getDocumentCatalog().getCOSObject().getCOSDictionary(COSName.getPDFName("DSS"));
+			Assertions.assertNotNull(dss);
+			return new Dss(size(dss.getCOSArray(COSName.getPDFName("OCSPs"))),
+					size(dss.getCOSArray(COSName.getPDFName("CRLs"))),
+					size(dss.getCOSArray(COSName.getPDFName("Certs"))),
+					dss.getCOSDictionary(COSName.getPDFName("VRI")).size());
+		}
+	}
+
+	private static int size(final COSArray array) {
+		return array == null ? 0 : array.size();
+	}
+
+	private ExecutorService executor;
+
+	private LocalPki pki;
+
+	private byte[] signedPdf;
+
+	@AfterEach
+	public void afterEach() {
+		this.executor.shutdownNow();
+		this.pki.close();
+	}
+
+	@BeforeEach
+	public void beforeEach() throws Exception {
+		this.executor = Executors.newFixedThreadPool(8);
+		this.pki = new LocalPki(CA_DEPTH);
+		final var pin = "123456".toCharArray();
+		final byte[] pdf;
+		try (var is = AddValidationInformationTest.class
+				.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+			pdf = IOUtils.toByteArray(is);
+		}
+		this.signedPdf = new CreateVisibleSignatureMy(this.pki.createKeyStore(pin), pin).signPDF(pdf,
+				new Rectangle2D.Float(70, 580, 200, 220), (ValidationTimeStamp) null, "Siegel", (byte[]) null,
+				"Local Test Signer", "Berlin", "Test", "test@localhost");
+	}
+
+	private Duration measure(final AddValidationInformation addValidationInformation, final Dss expected)
+			throws Exception {
+		final var begin = System.nanoTime();
+		final var ltvPdf = addValidationInformation.validateSignature(this.signedPdf);
+		final var elapsed = Duration.ofNanos(System.nanoTime() - begin);
+		Assertions.assertEquals(expected, readDss(ltvPdf));
+		return elapsed;
+	}
+
+	@Test
+	public void testCrlFallbackFetchedConcurrently() throws Exception {
+		this.pki.setOcspStatus(503);
+		this.pki.setLatency(LATENCY);
+		// CRLs of signer and CAs, no OCSP; VRIs of signature and CRLs
+		final var expected = new Dss(0, CA_DEPTH + 1, CA_DEPTH + 2, CA_DEPTH + 2);
+
+		// serially every certificate waits for its failed OCSP request and the CRL
+		final var serial = measure(new AddValidationInformation(), expected);
+		Assertions.assertTrue(serial.compareTo(LATENCY.multipliedBy(2 * (CA_DEPTH + 1))) >= 0, "serial: " + serial);
+
+		final var concurrent = measure(new AddValidationInformation(this.executor), expected);
+		Assertions.assertTrue(concurrent.compareTo(LATENCY.multipliedBy(4)) < 0, "concurrent: " + concurrent);
+		Assertions.assertTrue(this.pki.getCrlRequests() >= 2 * (CA_DEPTH + 1));
+	}
+
+	@Test
+	public void testOcspFetchedConcurrently() throws Exception {
+		this.pki.setLatency(LATENCY);
+		// OCSP responses of signer and CAs; VRIs of signature and OCSP responses
+		final var expected = new Dss(CA_DEPTH + 1, 0, CA_DEPTH + 2, CA_DEPTH + 2);
+
+		final var serial = measure(new AddValidationInformation(), expected);
+		Assertions.assertTrue(serial.compareTo(LATENCY.multipliedBy(CA_DEPTH + 1)) >= 0, "serial: " + serial);
+		Assertions.assertEquals(1, this.pki.getMaxInFlight());
+
+		// same DSS, fetched in about the time of the slowest request
+		final var concurrent = measure(new AddValidationInformation(this.executor), expected);
+		Assertions.assertTrue(concurrent.compareTo(LATENCY.multipliedBy(2)) < 0, "concurrent: " + concurrent);
+		Assertions.assertEquals(CA_DEPTH + 1, this.pki.getMaxInFlight());
+		Assertions.assertEquals(2 * (CA_DEPTH + 1), this.pki.getOcspRequests());
+	}
+
+}
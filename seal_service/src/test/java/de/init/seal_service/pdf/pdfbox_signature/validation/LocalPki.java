@@ -0,0 +1,420 @@
+package de.init.seal_service.pdf.pdfbox_signature.validation;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in PKI for tests: a self-signed root, a chain of CAs and a
+ * signer certificate. Every issued certificate points (AIA / CRL distribution
+ * point) to a local OCSP responder and CRL endpoint with optional injected
+ * latency.
+ */
+public class LocalPki implements AutoCloseable {
+
+	@FunctionalInterface
+	private interface Body {
+
+		byte[] create() throws Exception;
+
+	}
+
+	private record Ca(KeyPair keyPair, X509Certificate certificate) {
+	}
+
+	private static final Duration VALIDITY = Duration.ofDays(1);
+
+	private final HttpServer server;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	private final DigestCalculatorProvider digestCalculatorProvider;
+
+	private final List<Ca> cas = new ArrayList<>();
+
+	private final KeyPair signerKeyPair;
+
+	private final X509Certificate signerCertificate;
+
+	private final AtomicInteger serialNumber = new AtomicInteger();
+
+	private final AtomicInteger ocspRequests = new AtomicInteger();
+
+	private final AtomicInteger crlRequests = new AtomicInteger();
+
+	private final AtomicInteger deltaCrlRequests = new AtomicInteger();
+
+	private final AtomicInteger caIssuersRequests = new AtomicInteger();
+
+	private final boolean caIssuers;
+
+	private final AtomicInteger deltaCrlNumber = new AtomicInteger(1);
+
+	private final Map<BigInteger, Date> revoked = new ConcurrentHashMap<>();
+
+	private volatile Duration deltaCrlValidity;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	private volatile Duration latency = Duration.ZERO;
+
+	private volatile int ocspStatus = 200;
+
+	/**
+	 * @param depth number of CAs below the root, the signer is issued by the last
+	 */
+	public LocalPki(final int depth) throws IOException, GeneralSecurityException, OperatorCreationException {
+		this(depth, false);
+	}
+
+	/**
+	 * @param depth     number of CAs below the root, the signer is issued by the
+	 *                  last
+	 * @param caIssuers whether issued certificates point to their issuer
+	 *                  certificate (AIA CA issuers) and carry key identifiers
+	 */
+	public LocalPki(final int depth, final boolean caIssuers)
+			throws IOException, GeneralSecurityException, OperatorCreationException {
+		this.caIssuers = caIssuers;
+		this.digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/ocsp", this::handleOcsp);
+		this.server.createContext("/crl/", this::handleCrl);
+		this.server.createContext("/ca/", this::handleCaIssuers);
+		this.server.setExecutor(this.executor);
+		this.server.start();
+
+		final var rootKeyPair = generateKeyPair();
+		this.cas.add(new Ca(rootKeyPair, issue(new X500Name("CN=Local Test Root"), rootKeyPair, null, true)));
+		for (var i = 1; i <= depth; ++i) {
+			final var keyPair = generateKeyPair();
+			this.cas.add(new Ca(keyPair, issue(new X500Name("CN=Local Test CA " + i), keyPair,
+					this.cas.get(this.cas.size() - 1), true)));
+		}
+		this.signerKeyPair = generateKeyPair();
+		this.signerCertificate = issue(new X500Name("CN=Local Test Signer"), this.signerKeyPair,
+				this.cas.get(this.cas.size() - 1), false);
+	}
+
+	private static KeyPair generateKeyPair() throws GeneralSecurityException {
+		final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(2048);
+		return keyPairGenerator.generateKeyPair();
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * @param pin key and keystore password
+	 * @return PKCS12 keystore with the signer key and the full chain
+	 */
+	public KeyStore createKeyStore(final char[] pin) throws IOException, GeneralSecurityException {
+		final List<X509Certificate> chain = new ArrayList<>();
+		chain.add(this.signerCertificate);
+		for (var i = this.cas.size() - 1; i >= 0; --i) {
+			chain.add(this.cas.get(i).certificate());
+		}
+		final var keystore = KeyStore.getInstance("PKCS12");
+		keystore.load(null, pin);
+		keystore.setKeyEntry("signer", this.signerKeyPair.getPrivate(), pin,
+				chain.toArray(new X509Certificate[chain.size()]));
+		return keystore;
+	}
+
+	private Ca findIssuer(final OCSPReq request) throws OCSPException {
+		final var certId = request.getRequestList()[0].getCertID();
+		for (final Ca ca : this.cas) {
+			try {
+				if (certId.matchesIssuer(new JcaX509CertificateHolder(ca.certificate()),
+						this.digestCalculatorProvider)) {
+					return ca;
+				}
+			} catch (final GeneralSecurityException e) {
+				throw new OCSPException("Invalid CA certificate", e);
+			}
+		}
+		return null;
+	}
+
+	public int getCaIssuersRequests() {
+		return this.caIssuersRequests.get();
+	}
+
+	/**
+	 * @param index CA index, 0 is the root
+	 * @return CA issuers URL of the certificates issued by the CA
+	 */
+	public String getCaIssuersUrl(final int index) {
+		return getUrl() + "/ca/" + index + ".cer";
+	}
+
+	public int getCrlRequests() {
+		return this.crlRequests.get();
+	}
+
+	public int getDeltaCrlRequests() {
+		return this.deltaCrlRequests.get();
+	}
+
+	/**
+	 * @return maximum number of concurrently processed OCSP and CRL requests
+	 */
+	public int getMaxInFlight() {
+		return this.maxInFlight.get();
+	}
+
+	public int getOcspRequests() {
+		return this.ocspRequests.get();
+	}
+
+	public String getOcspUrl() {
+		return getUrl() + "/ocsp";
+	}
+
+	private String getUrl() {
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	private void handleCaIssuers(final HttpExchange exchange) throws IOException {
+		try {
+			this.caIssuersRequests.incrementAndGet();
+			final var path = exchange.getRequestURI().getPath();
+			final var name = path.substring("/ca/".length(), path.length() - ".cer".length());
+			if (!name.matches("\\d+") || Integer.parseInt(name) >= this.cas.size()) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			final var ca = this.cas.get(Integer.parseInt(name));
+			respond(exchange, "application/pkix-cert", () -> ca.certificate().getEncoded());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleCrl(final HttpExchange exchange) throws IOException {
+		try {
+			final var path = exchange.getRequestURI().getPath();
+			final var delta = path.endsWith("-delta.crl");
+			(delta ? this.deltaCrlRequests : this.crlRequests).incrementAndGet();
+			final var name = path.substring("/crl/".length(), path.length() - (delta ? "-delta.crl" : ".crl").length());
+			final var index = Integer.parseInt(name);
+			final var ca = this.cas.get(index);
+			respond(exchange, "application/pkix-crl", () -> {
+				final var now = System.currentTimeMillis();
+				final var builder = new X509v2CRLBuilder(
+						new JcaX509CertificateHolder(ca.certificate()).getSubject(), new Date(now - 60_000));
+				final var deltaValidity = this.deltaCrlValidity;
+				if (delta) {
+					// all revocations since the (only) base CRL number 1
+					builder.setNextUpdate(new Date(now + deltaValidity.toMillis()));
+					builder.addExtension(Extension.cRLNumber, false,
+							new ASN1Integer(this.deltaCrlNumber.incrementAndGet()));
+					builder.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(1));
+				} else {
+					builder.setNextUpdate(new Date(now + 3_600_000));
+					builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(1));
+					if (deltaValidity != null) {
+						final var deltaUrl = getUrl() + "/crl/" + index + "-delta.crl";
+						builder.addExtension(Extension.freshestCRL, false,
+								new CRLDistPoint(new DistributionPoint[] { new DistributionPoint(
+										new DistributionPointName(new GeneralNames(
+												new GeneralName(GeneralName.uniformResourceIdentifier, deltaUrl))),
+										null, null) }));
+					}
+				}
+				for (final Map.Entry<BigInteger, Date> revokedEntry : this.revoked.entrySet()) {
+					builder.addCRLEntry(revokedEntry.getKey(), revokedEntry.getValue(), CRLReason.keyCompromise);
+				}
+				return builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(ca.keyPair().getPrivate()))
+						.getEncoded();
+			});
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleOcsp(final HttpExchange exchange) throws IOException {
+		try {
+			this.ocspRequests.incrementAndGet();
+			final var request = new OCSPReq(exchange.getRequestBody().readAllBytes());
+			respond(exchange, "application/ocsp-response", () -> {
+				final var ca = findIssuer(request);
+				if (ca == null) {
+					return new OCSPRespBuilder().build(OCSPRespBuilder.UNAUTHORIZED, null).getEncoded();
+				}
+				// the issuing CA responds itself, by name
+				final var caHolder = new JcaX509CertificateHolder(ca.certificate());
+				final var builder = new BasicOCSPRespBuilder(new RespID(caHolder.getSubject()));
+				final var now = System.currentTimeMillis();
+				builder.addResponse(request.getRequestList()[0].getCertID(), CertificateStatus.GOOD,
+						new Date(now - 60_000), new Date(now + 3_600_000));
+				final var nonce = request.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+				if (nonce != null) {
+					builder.setResponseExtensions(new Extensions(nonce));
+				}
+				final var basicResponse = builder.build(
+						new JcaContentSignerBuilder("SHA256withRSA").build(ca.keyPair().getPrivate()),
+						new X509CertificateHolder[] { caHolder }, new Date(now));
+				return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResponse).getEncoded();
+			});
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private X509Certificate issue(final X500Name subject, final KeyPair keyPair, final Ca issuer, final boolean ca)
+			throws IOException, GeneralSecurityException, OperatorCreationException {
+		final var now = System.currentTimeMillis();
+		final var issuerName = issuer == null ? subject
+				: new JcaX509CertificateHolder(issuer.certificate()).getSubject();
+		final var builder = new JcaX509v3CertificateBuilder(issuerName,
+				BigInteger.valueOf(this.serialNumber.incrementAndGet()), new Date(now - 60_000),
+				new Date(now + VALIDITY.toMillis()), subject, keyPair.getPublic());
+		builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+		builder.addExtension(Extension.keyUsage, true, new KeyUsage(
+				ca ? KeyUsage.keyCertSign | KeyUsage.cRLSign : KeyUsage.digitalSignature | KeyUsage.nonRepudiation));
+		if (this.caIssuers) {
+			final var extensionUtils = new JcaX509ExtensionUtils();
+			builder.addExtension(Extension.subjectKeyIdentifier, false,
+					extensionUtils.createSubjectKeyIdentifier(keyPair.getPublic()));
+			if (issuer != null) {
+				builder.addExtension(Extension.authorityKeyIdentifier, false,
+						extensionUtils.createAuthorityKeyIdentifier(issuer.certificate()));
+			}
+		}
+		if (issuer != null) {
+			final var ocsp = new AccessDescription(AccessDescription.id_ad_ocsp,
+					new GeneralName(GeneralName.uniformResourceIdentifier, getOcspUrl()));
+			final var caIssuersUrl = getCaIssuersUrl(this.cas.indexOf(issuer));
+			builder.addExtension(Extension.authorityInfoAccess, false,
+					new AuthorityInformationAccess(this.caIssuers
+							? new AccessDescription[] { ocsp,
+									new AccessDescription(AccessDescription.id_ad_caIssuers,
+											new GeneralName(GeneralName.uniformResourceIdentifier, caIssuersUrl)) }
+							: new AccessDescription[] { ocsp }));
+			final var crlUrl = getUrl() + "/crl/" + this.cas.indexOf(issuer) + ".crl";
+			builder.addExtension(Extension.cRLDistributionPoints, false,
+					new CRLDistPoint(new DistributionPoint[] { new DistributionPoint(
+							new DistributionPointName(
+									new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier, crlUrl))),
+							null, null) }));
+		}
+		final var signingKey = issuer == null ? keyPair.getPrivate() : issuer.keyPair().getPrivate();
+		return new JcaX509CertificateConverter()
+				.getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(signingKey)));
+	}
+
+	private void respond(final HttpExchange exchange, final String contentType, final Body body) throws IOException {
+		this.maxInFlight.accumulateAndGet(this.inFlight.incrementAndGet(), Math::max);
+		try {
+			if (!this.latency.isZero()) {
+				Thread.sleep(this.latency.toMillis());
+			}
+			if (this.ocspStatus != 200 && contentType.equals("application/ocsp-response")) {
+				exchange.sendResponseHeaders(this.ocspStatus, -1);
+				return;
+			}
+			final byte[] response;
+			try {
+				response = body.create();
+			} catch (final Exception e) {
+				exchange.sendResponseHeaders(500, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(200, response.length);
+			exchange.getResponseBody().write(response);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.inFlight.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Revokes a certificate in all following CRLs (and delta CRLs), not in OCSP
+	 * responses.
+	 *
+	 * @param certificate    revoked certificate
+	 * @param revocationDate revocation date
+	 */
+	public void revoke(final X509Certificate certificate, final Date revocationDate) {
+		this.revoked.put(certificate.getSerialNumber(), revocationDate);
+	}
+
+	/**
+	 * @param deltaCrlValidity validity of delta CRLs, advertised by all following
+	 *                         base CRLs; null for no delta CRLs
+	 */
+	public void setDeltaCrlValidity(final Duration deltaCrlValidity) {
+		this.deltaCrlValidity = deltaCrlValidity;
+	}
+
+	public void setLatency(final Duration latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @param ocspStatus HTTP status of the OCSP responder, e.g. 503 to force the
+	 *                   CRL fallback
+	 */
+	public void setOcspStatus(final int ocspStatus) {
+		this.ocspStatus = ocspStatus;
+	}
+
+}
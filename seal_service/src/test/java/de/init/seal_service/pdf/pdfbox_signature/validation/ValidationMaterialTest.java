@@ -0,0 +1,97 @@
+package de.init.seal_service.pdf.pdfbox_signature.validation;
+
+import java.awt.geom.Rectangle2D;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.init.seal_service.pdf.CreateVisibleSignatureMy;
+import de.init.seal_service.pdf.pdfbox_signature.SigUtils;
+import de.init.seal_service.pdf.pdfbox_signature.ValidationTimeStamp;
+
+public class ValidationMaterialTest {
+
+	private static final int CA_DEPTH = 2;
+
+	private static COSDictionary readDss(final byte[] pdf) throws Exception {
+		try (var doc = Loader.loadPDF(pdf)) {
+			final var dss = doc.getDocumentCatalog().getCOSObject().getCOSDictionary(COSName.getPDFName("DSS"));
+			Assertions.assertNotNull(dss);
+			return dss;
+		}
+	}
+
+	private static String signatureHash(final byte[] pdf) throws Exception {
+		try (var doc = Loader.loadPDF(pdf)) {
+			return CertInformationHelper.getSha1Hash(SigUtils.getLastRelevantSignature(doc).getContents(pdf));
+		}
+	}
+
+	private byte[] pdf;
+
+	private LocalPki pki;
+
+	@AfterEach
+	public void afterEach() {
+		this.pki.close();
+	}
+
+	@BeforeEach
+	public void beforeEach() throws Exception {
+		this.pki = new LocalPki(CA_DEPTH);
+		try (var is = ValidationMaterialTest.class
+				.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+			this.pdf = IOUtils.toByteArray(is);
+		}
+	}
+
+	private byte[] sign(final LocalPki pki) throws Exception {
+		final var pin = "123456".toCharArray();
+		return new CreateVisibleSignatureMy(pki.createKeyStore(pin), pin).signPDF(this.pdf,
+				new Rectangle2D.Float(70, 580, 200, 220), (ValidationTimeStamp) null, "Siegel", (byte[]) null,
+				"Local Test Signer", "Berlin", "Test", "test@localhost");
+	}
+
+	@Test
+	public void testApplied() throws Exception {
+		final var reference = new AddValidationInformation().validateSignature(sign(this.pki));
+		final var material = ValidationMaterial.capture(reference);
+		Assertions.assertNotNull(material.getNextUpdate());
+		final var requests = this.pki.getOcspRequests();
+
+		// same DSS content, VRI of the new signature, without any request
+		final var signedPdf = sign(this.pki);
+		final var ltvPdf = material.apply(signedPdf);
+		Assertions.assertNotNull(ltvPdf);
+		Assertions.assertEquals(requests, this.pki.getOcspRequests());
+
+		final var expected = readDss(reference);
+		final var dss = readDss(ltvPdf);
+		for (final var name : new String[] { "Certs", "OCSPs" }) {
+			Assertions.assertEquals(expected.getCOSArray(COSName.getPDFName(name)).size(),
+					dss.getCOSArray(COSName.getPDFName(name)).size(), name);
+		}
+		final var vriBase = dss.getCOSDictionary(COSName.getPDFName("VRI"));
+		Assertions.assertEquals(expected.getCOSDictionary(COSName.getPDFName("VRI")).size(), vriBase.size());
+		final var vri = vriBase.getCOSDictionary(COSName.getPDFName(signatureHash(signedPdf)));
+		Assertions.assertNotNull(vri);
+		Assertions.assertEquals(CA_DEPTH + 2, vri.getCOSArray(COSName.CERT).size());
+		Assertions.assertNotNull(vri.getCOSArray(COSName.getPDFName("OCSP")));
+	}
+
+	@Test
+	public void testOtherSigner() throws Exception {
+		final var material = ValidationMaterial
+				.capture(new AddValidationInformation().validateSignature(sign(this.pki)));
+		try (var other = new LocalPki(CA_DEPTH)) {
+			Assertions.assertNull(material.apply(sign(other)));
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package de.init.seal_service.pdf.tsa;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.init.seal_service.pdf.pdfbox_signature.util.Deadline;
+import de.init.seal_service.pdf.pdfbox_signature.util.DeadlineExceededException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Two local stand-in TSAs, the configured first one is slow or down.
+ */
+public class HedgingTimeStamperTest {
+
+	private static final Duration SLOW = Duration.ofSeconds(2);
+
+	private static final Duration INITIAL_DELAY = Duration.ofMillis(200);
+
+	private LocalTsa fast;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private LocalTsa slow;
+
+	private HedgingTimeStamper timeStamper;
+
+	@AfterEach
+	public void afterEach() {
+		this.timeStamper.close();
+		this.slow.close();
+		this.fast.close();
+	}
+
+	@BeforeEach
+	public void beforeEach() throws Exception {
+		this.meterRegistry = new SimpleMeterRegistry();
+		this.slow = new LocalTsa();
+		this.fast = new LocalTsa();
+		final var httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		final Map<String, TimeStamper> tsaClients = new LinkedHashMap<>();
+		for (final LocalTsa tsa : new LocalTsa[] { this.slow, this.fast }) {
+			tsaClients.put(tsa.getUrl(), new PooledTSAClient(new URL(tsa.getUrl()), null, null, httpClient, 4,
+					Duration.ofSeconds(10), this.meterRegistry));
+		}
+		this.timeStamper = new HedgingTimeStamper(tsaClients, 0.9, INITIAL_DELAY, Duration.ofMillis(10), 2, 2, 3,
+				Duration.ofMinutes(1), this.meterRegistry);
+	}
+
+	private Duration measure(final int i) throws IOException {
+		final var content = ("signature " + i).getBytes(StandardCharsets.UTF_8);
+		final var begin = System.nanoTime();
+		// validated against the request (imprint, nonce) by the TSA client
+		Assertions.assertNotNull(this.timeStamper.getTimeStampToken(new ByteArrayInputStream(content)));
+		return Duration.ofNanos(System.nanoTime() - begin);
+	}
+
+	@Test
+	public void testCallerDeadline() throws Exception {
+		this.slow.setLatency(SLOW);
+		this.fast.setLatency(SLOW);
+		for (var i = 0; i < 3; ++i) {
+			final var n = i;
+			Assertions.assertThrows(DeadlineExceededException.class,
+					() -> Deadline.after(Duration.ofMillis(300)).call(() -> measure(n)));
+		}
+		// the requests end with the deadline of the caller, no failure of the TSAs
+		Thread.sleep(500);
+		for (final LocalTsa tsa : new LocalTsa[] { this.slow, this.fast }) {
+			Assertions.assertEquals(0,
+					this.meterRegistry.get("seal.tsa.breaker.state").tag("tsa", tsa.getUrl()).gauge().value());
+		}
+	}
+
+	@Test
+	public void testCancelled() throws Exception {
+		final var callers = new ArrayList<Thread>();
+		final var cancelled = new CountDownLatch(1);
+		final Map<String, TimeStamper> tsaClients = new LinkedHashMap<>();
+		tsaClients.put("hanging", content -> {
+			callers.add(Thread.currentThread());
+			try {
+				Thread.sleep(SLOW.toMillis());
+			} catch (final InterruptedException e) {
+				cancelled.countDown();
+				throw new InterruptedIOException();
+			}
+			throw new IOException("not cancelled");
+		});
+		tsaClients.put(this.fast.getUrl(), new PooledTSAClient(new URL(this.fast.getUrl()), null, null,
+				HttpClient.newHttpClient(), 4, Duration.ofSeconds(10), this.meterRegistry));
+		try (var timeStamper = new HedgingTimeStamper(tsaClients, 0.9, INITIAL_DELAY, Duration.ofMillis(10), 2, 1, 3,
+				Duration.ofMinutes(1), new SimpleMeterRegistry())) {
+			Assertions.assertNotNull(timeStamper.getTimeStampToken(new ByteArrayInputStream(new byte[] { 1 })));
+		}
+		// the first request runs on the caller, it's interrupted when the hedge wins
+		Assertions.assertEquals(List.of(Thread.currentThread()), callers);
+		Assertions.assertTrue(cancelled.await(0, TimeUnit.SECONDS));
+		Assertions.assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void testFailover() throws Exception {
+		this.slow.setStatus(503);
+		for (var i = 0; i < 5; ++i) {
+			final var elapsed = measure(i);
+			Assertions.assertTrue(elapsed.compareTo(INITIAL_DELAY) < 0, "elapsed: " + elapsed);
+		}
+		// circuit breaker opened after 3 failures
+		Assertions.assertEquals(3, this.slow.getRequests());
+		Assertions.assertEquals(5, this.fast.getRequests());
+		Assertions.assertEquals(3,
+				this.meterRegistry.get("seal.tsa.hedge").tag("reason", "failure").counter().count());
+		Assertions.assertEquals(2, this.meterRegistry.get("seal.tsa.breaker.state").tag("tsa", this.slow.getUrl())
+				.gauge().value());
+	}
+
+	@Test
+	public void testHedged() throws Exception {
+		this.slow.setLatency(SLOW);
+		for (var i = 0; i < 3; ++i) {
+			// the slow TSA is hedged after the initial delay, the fast one wins
+			final var elapsed = measure(i);
+			Assertions.assertTrue(elapsed.compareTo(SLOW.dividedBy(2)) < 0, "elapsed: " + elapsed);
+		}
+		Assertions.assertEquals(3, this.fast.getRequests());
+		Assertions.assertTrue(this.meterRegistry.get("seal.tsa.hedge").tag("reason", "slow").counter().count() >= 1);
+	}
+
+	@Test
+	public void testProbeAborted() {
+		final var health = new TsaHealth(1, Duration.ZERO);
+		health.recordFailure(0);
+		Assertions.assertEquals(TsaHealth.State.HALF_OPEN, health.getState(1));
+		Assertions.assertTrue(health.allowRequest(1));
+		Assertions.assertFalse(health.allowRequest(1));
+		// e.g. quota exceeded: no verdict, the next probe may be sent
+		health.recordAborted();
+		Assertions.assertTrue(health.allowRequest(1));
+	}
+
+	@Test
+	public void testUnavailable() throws Exception {
+		this.slow.setStatus(503);
+		this.fast.setStatus(503);
+		Assertions.assertThrows(IOException.class, () -> measure(0));
+		Assertions.assertEquals(1, this.slow.getRequests());
+		Assertions.assertEquals(1, this.fast.getRequests());
+	}
+
+}
@@ -0,0 +1,176 @@
+package de.init.seal_service.pdf.tsa;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process RFC 3161 stand-in TSA for tests, with a self-signed timestamping
+ * certificate and optional injected latency.
+ */
+public class LocalTsa implements AutoCloseable {
+
+	private final HttpServer server;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	private final TimeStampResponseGenerator responseGenerator;
+
+	private final AtomicLong serialNumber = new AtomicLong();
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+	private volatile Duration latency;
+
+	private volatile int status = 200;
+
+	public LocalTsa() throws IOException, GeneralSecurityException, OperatorCreationException, TSPException {
+		this(Duration.ZERO);
+	}
+
+	public LocalTsa(final Duration latency)
+			throws IOException, GeneralSecurityException, OperatorCreationException, TSPException {
+		this.latency = latency;
+
+		final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(2048);
+		final var keyPair = keyPairGenerator.generateKeyPair();
+		final var name = new X500Name("CN=Local Test TSA");
+		final var now = System.currentTimeMillis();
+		final var certBuilder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE, new Date(now - 60_000),
+				new Date(now + 86_400_000), name, keyPair.getPublic());
+		certBuilder.addExtension(Extension.extendedKeyUsage, true,
+				new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+		final X509Certificate cert = new JcaX509CertificateConverter().getCertificate(
+				certBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+
+		final var certIdDigest = new JcaDigestCalculatorProviderBuilder().build()
+				.get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1));
+		final var tokenGenerator = new TimeStampTokenGenerator(
+				new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", keyPair.getPrivate(), cert),
+				certIdDigest, new ASN1ObjectIdentifier("1.2.3.4.1"));
+		tokenGenerator.addCertificates(new JcaCertStore(List.of(cert)));
+		this.responseGenerator = new TimeStampResponseGenerator(tokenGenerator, TSPAlgorithms.ALLOWED);
+
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/tsa", this::handle);
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * @return number of distinct client connections seen
+	 */
+	public int getConnections() {
+		return this.connections.size();
+	}
+
+	/**
+	 * @return maximum number of concurrently processed requests
+	 */
+	public int getMaxInFlight() {
+		return this.maxInFlight.get();
+	}
+
+	public int getRequests() {
+		return this.requests.get();
+	}
+
+	public String getUrl() {
+		return "http://localhost:" + this.server.getAddress().getPort() + "/tsa";
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		try {
+			this.requests.incrementAndGet();
+			this.connections.add(exchange.getRemoteAddress());
+			this.maxInFlight.accumulateAndGet(this.inFlight.incrementAndGet(), Math::max);
+			try {
+				final var request = new TimeStampRequest(exchange.getRequestBody().readAllBytes());
+				if (!this.latency.isZero()) {
+					Thread.sleep(this.latency.toMillis());
+				}
+				if (this.status != 200) {
+					exchange.sendResponseHeaders(this.status, -1);
+					return;
+				}
+				final byte[] response;
+				synchronized (this.responseGenerator) {
+					response = this.responseGenerator
+							.generate(request, BigInteger.valueOf(this.serialNumber.incrementAndGet()), new Date())
+							.getEncoded();
+				}
+				exchange.getResponseHeaders().set("Content-Type", "application/timestamp-reply");
+				exchange.sendResponseHeaders(200, response.length);
+				exchange.getResponseBody().write(response);
+			} catch (final TSPException e) {
+				throw new IOException(e);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				this.inFlight.decrementAndGet();
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	public void setLatency(final Duration latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @param status HTTP status to respond with, e.g. 503 to simulate an outage
+	 */
+	public void setStatus(final int status) {
+		this.status = status;
+	}
+
+}
@@ -0,0 +1,75 @@
+package de.init.seal_service.pdf.tsa;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.tsp.TimeStampToken;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PooledTSAClientTest {
+
+	private static final int POOL_SIZE = 4;
+
+	private static final int REQUESTS = 40;
+
+	@Test
+	public void testConnectionReuse() throws Exception {
+		final var meterRegistry = new SimpleMeterRegistry();
+		try (var tsa = new LocalTsa(Duration.ofMillis(20))) {
+			final var tsaClient = new PooledTSAClient(new URL(tsa.getUrl()), null, null,
+					HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(), POOL_SIZE,
+					Duration.ofSeconds(10), meterRegistry);
+
+			final var executor = Executors.newFixedThreadPool(16);
+			try {
+				final List<Future<TimeStampToken>> futures = new ArrayList<>();
+				for (var i = 0; i < REQUESTS; ++i) {
+					final var content = ("signature " + i).getBytes(StandardCharsets.UTF_8);
+					futures.add(executor.submit(() -> tsaClient.getTimeStampToken(new ByteArrayInputStream(content))));
+				}
+				for (final Future<TimeStampToken> future : futures) {
+					// response was validated against the request (imprint, nonce) in TSAClient
+					Assertions.assertNotNull(future.get(30, TimeUnit.SECONDS));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+
+			Assertions.assertEquals(REQUESTS, tsa.getRequests());
+			Assertions.assertTrue(tsa.getMaxInFlight() <= POOL_SIZE, "max in flight: " + tsa.getMaxInFlight());
+			// connections are reused (a returned connection may race with the next request)
+			Assertions.assertTrue(tsa.getConnections() < REQUESTS / 2, "connections: " + tsa.getConnections());
+
+			final var timer = meterRegistry.get("seal.tsa.requests").tag("tsa", tsa.getUrl())
+					.tag("outcome", "success").timer();
+			Assertions.assertEquals(REQUESTS, timer.count());
+		}
+	}
+
+	@Test
+	public void testErrorStatus() throws Exception {
+		final var meterRegistry = new SimpleMeterRegistry();
+		try (var tsa = new LocalTsa()) {
+			tsa.setStatus(503);
+			final var tsaClient = new PooledTSAClient(new URL(tsa.getUrl()), null, null, HttpClient.newHttpClient(),
+					POOL_SIZE, Duration.ofSeconds(10), meterRegistry);
+
+			Assertions.assertThrows(IOException.class,
+					() -> tsaClient.getTimeStampToken(new ByteArrayInputStream(new byte[] { 1, 2, 3 })));
+			Assertions.assertEquals(1, meterRegistry.get("seal.tsa.requests").tag("outcome", "failure").timer().count());
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package de.init.seal_service.pdf.tsa;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ThrottlingTimeStamperTest {
+
+	private static final String URL = "http://localhost/tsa";
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final TimeStamper delegate = content -> {
+		this.requests.incrementAndGet();
+		return null;
+	};
+
+	private long measure(final TimeStamper timeStamper) throws IOException {
+		final var begin = System.nanoTime();
+		timeStamper.getTimeStampToken(new ByteArrayInputStream(new byte[] { 1 }));
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+	}
+
+	@Test
+	public void testBurstThenSustainedRate() throws Exception {
+		final var timeStamper = new ThrottlingTimeStamper(this.delegate, URL, 20, 3, 64, Duration.ofSeconds(5),
+				new SimpleMeterRegistry());
+		final var begin = System.nanoTime();
+		for (var i = 0; i < 3; ++i) {
+			Assertions.assertTrue(measure(timeStamper) < 20);
+		}
+		// 5 more requests at 20/s
+		for (var i = 0; i < 5; ++i) {
+			measure(timeStamper);
+		}
+		final var elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+		Assertions.assertTrue(elapsed >= 220 && elapsed < 1000, "elapsed: " + elapsed);
+		Assertions.assertEquals(8, this.requests.get());
+	}
+
+	@Test
+	public void testFairQueueAndRejection() throws Exception {
+		final var meterRegistry = new SimpleMeterRegistry();
+		final var timeStamper = new ThrottlingTimeStamper(this.delegate, URL, 10, 1, 4, Duration.ofSeconds(5),
+				meterRegistry);
+		final var executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<Long>> results = new ArrayList<>();
+			for (var i = 0; i < 8; ++i) {
+				results.add(executor.submit(() -> measure(timeStamper)));
+			}
+			var rejected = 0;
+			for (final Future<Long> result : results) {
+				try {
+					result.get();
+				} catch (final Exception e) {
+					final var quotaExceeded = (TsaQuotaExceededException) e.getCause();
+					Assertions.assertTrue(quotaExceeded.getRetryAfter().compareTo(Duration.ZERO) > 0);
+					++rejected;
+				}
+			}
+			// one token, four waiting
+			Assertions.assertEquals(3, rejected);
+			Assertions.assertEquals(5, this.requests.get());
+			Assertions.assertEquals(3, meterRegistry.get("seal.tsa.quota.rejected").counter().count());
+			Assertions.assertEquals(5, meterRegistry.get("seal.tsa.quota.wait").timer().count());
+			Assertions.assertEquals(0, timeStamper.getQueueSize());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testMaxWait() throws Exception {
+		final var timeStamper = new ThrottlingTimeStamper(this.delegate, URL, 1, 1, 64, Duration.ofMillis(500),
+				new SimpleMeterRegistry());
+		measure(timeStamper);
+		final var e = Assertions.assertThrows(TsaQuotaExceededException.class, () -> measure(timeStamper));
+		Assertions.assertTrue(e.getRetryAfter().compareTo(Duration.ofMillis(500)) > 0);
+		Assertions.assertEquals(1, this.requests.get());
+	}
+
+}
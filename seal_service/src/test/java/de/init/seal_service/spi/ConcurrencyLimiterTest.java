@@ -0,0 +1,150 @@
+package de.init.seal_service.spi;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Load test against a simulated server with 4 "cores" and 10 ms work per
+ * request: without admission control the latency grows with the number of
+ * clients, with it the throughput stays at the capacity.
+ */
+public class ConcurrencyLimiterTest {
+
+	private record Load(double throughput, double latencyMillis, int rejected) {
+	}
+
+	private static final int CORES = 4;
+
+	private static final long WORK_MILLIS = 10;
+
+	private static final Duration DURATION = Duration.ofMillis(1500);
+
+	private final Semaphore cores = new Semaphore(CORES, true);
+
+	private void work() throws InterruptedException {
+		this.cores.acquire();
+		try {
+			Thread.sleep(WORK_MILLIS);
+		} finally {
+			this.cores.release();
+		}
+	}
+
+	private Load run(final ConcurrencyLimiter limiter, final int clients) throws InterruptedException {
+		final var completed = new AtomicInteger();
+		final var rejected = new AtomicInteger();
+		final var latency = new AtomicLong();
+		final var running = new AtomicBoolean(true);
+		final var done = new CountDownLatch(clients);
+		final var executor = Executors.newFixedThreadPool(clients);
+		try {
+			for (var i = 0; i < clients; ++i) {
+				executor.execute(() -> {
+					try {
+						while (running.get()) {
+							final var begin = System.nanoTime();
+							final var permit = limiter.tryAcquire(1);
+							if (permit == null) {
+								// answered with 503 right away, the client retries a little later
+								rejected.incrementAndGet();
+								Thread.sleep(1);
+								continue;
+							}
+							try (permit) {
+								work();
+							}
+							latency.addAndGet(System.nanoTime() - begin);
+							completed.incrementAndGet();
+						}
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				});
+			}
+			Thread.sleep(DURATION.toMillis());
+			running.set(false);
+			Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		return new Load(completed.get() * 1000.0 / DURATION.toMillis(),
+				TimeUnit.NANOSECONDS.toMillis(latency.get()) / (double) Math.max(1, completed.get()), rejected.get());
+	}
+
+	@Test
+	public void testEarlyRejection() {
+		final var limiter = new ConcurrencyLimiter(1, 1, 1, 100, new SimpleMeterRegistry());
+		Assertions.assertFalse(limiter.isRejected(95));
+		try (var permit = limiter.tryAcquire(10)) {
+			Assertions.assertNotNull(permit);
+			// no free slot, rejected without waiting; the early check leaves that to the lane
+			Assertions.assertNull(limiter.tryAcquire(10));
+			Assertions.assertFalse(limiter.isRejected(10));
+			// beyond the memory budget
+			Assertions.assertTrue(limiter.isRejected(95));
+		}
+		Assertions.assertFalse(limiter.isRejected(95));
+		Assertions.assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void testMemoryBudget() {
+		final var limiter = new ConcurrencyLimiter(16, 1, 16, 100, new SimpleMeterRegistry());
+		final var large = limiter.tryAcquire(80);
+		Assertions.assertNotNull(large);
+		Assertions.assertNull(limiter.tryAcquire(40));
+		final var small = limiter.tryAcquire(20);
+		Assertions.assertNotNull(small);
+		large.close();
+		small.close();
+		// larger than the budget, but alone
+		final var huge = limiter.tryAcquire(1000);
+		Assertions.assertNotNull(huge);
+		huge.close();
+		Assertions.assertEquals(0, limiter.getReservedBytes());
+	}
+
+	@Test
+	public void testStableThroughputBeyondSaturation() throws Exception {
+		final var meterRegistry = new SimpleMeterRegistry();
+		final var limiter = new ConcurrencyLimiter(16, 2, 256, Long.MAX_VALUE, meterRegistry);
+		final var capacity = CORES * 1000.0 / WORK_MILLIS;
+
+		// same load without admission control (like seal.admission.enabled=false)
+		final var unlimited = run(new ConcurrencyLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+				Long.MAX_VALUE, new SimpleMeterRegistry()), 64);
+
+		final var saturated = run(limiter, 2 * CORES);
+		final var overloaded = run(limiter, 64);
+		Assertions.assertTrue(saturated.throughput() > 0.6 * capacity, "saturated: " + saturated);
+		Assertions.assertTrue(overloaded.throughput() > 0.7 * saturated.throughput(), "overloaded: " + overloaded);
+		// unlimited 64 clients wait for 64 / 4 * 10 ms, at the same throughput
+		Assertions.assertTrue(unlimited.latencyMillis() > 120, "unlimited: " + unlimited);
+		Assertions.assertEquals(0, unlimited.rejected());
+		Assertions.assertTrue(overloaded.throughput() > 0.7 * unlimited.throughput(),
+				"overloaded: " + overloaded + ", unlimited: " + unlimited);
+		Assertions.assertTrue(overloaded.latencyMillis() < unlimited.latencyMillis() / 2,
+				"overloaded: " + overloaded + ", unlimited: " + unlimited);
+		Assertions.assertTrue(overloaded.latencyMillis() < 80, "overloaded: " + overloaded);
+		Assertions.assertTrue(limiter.getLimit() < 64, "limit: " + limiter.getLimit());
+		Assertions.assertTrue(overloaded.rejected() > 0);
+		Assertions.assertEquals(overloaded.rejected(), meterRegistry.get("seal.admission.rejected").counters().stream()
+				.mapToDouble(Counter::count).sum());
+		Assertions.assertEquals(0, limiter.getInFlight());
+	}
+
+}
@@ -0,0 +1,109 @@
+package de.init.seal_service.spi;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class LaneSchedulerTest {
+
+	private static final long WORK_MILLIS = 20;
+
+	private static Long work() throws InterruptedException {
+		final var begin = System.nanoTime();
+		Thread.sleep(WORK_MILLIS);
+		return begin;
+	}
+
+	@Test
+	public void testInteractiveLatencyUnderBulkLoad() throws Exception {
+		final var meterRegistry = new SimpleMeterRegistry();
+		try (var scheduler = new LaneScheduler(List.of(new LaneScheduler.Lane("interactive", 4, 64, 4),
+				new LaneScheduler.Lane("bulk", 1, 1000, 3)), 4, meterRegistry)) {
+			// saturate the bulk lane
+			final List<Future<Long>> bulk = new ArrayList<>();
+			for (var i = 0; i < 200; ++i) {
+				bulk.add(scheduler.submit("bulk", LaneSchedulerTest::work));
+			}
+			Thread.sleep(100);
+			Assertions.assertEquals(3, scheduler.getRunning("bulk"));
+			for (var i = 0; i < 10; ++i) {
+				final var begin = System.nanoTime();
+				scheduler.submit("interactive", LaneSchedulerTest::work).get();
+				final var elapsed = Duration.ofNanos(System.nanoTime() - begin);
+				// the reserved thread, not behind the bulk queue
+				Assertions.assertTrue(elapsed.toMillis() < 4 * WORK_MILLIS, "elapsed: " + elapsed);
+			}
+			Assertions.assertTrue(scheduler.getQueueSize("bulk") > 100);
+			Assertions.assertEquals(10,
+					meterRegistry.get("seal.lane.latency").tag("lane", "interactive").timer().count());
+		}
+	}
+
+	@Test
+	public void testQueueLimits() throws Exception {
+		final var meterRegistry = new SimpleMeterRegistry();
+		final var release = new CountDownLatch(1);
+		try (var scheduler = new LaneScheduler(List.of(new LaneScheduler.Lane("interactive", 4, 2, 1),
+				new LaneScheduler.Lane("bulk", 1, 2, 1)), 2, meterRegistry)) {
+			scheduler.submit("interactive", () -> release.await(5, TimeUnit.SECONDS));
+			while (scheduler.getRunning("interactive") == 0) {
+				Thread.sleep(1);
+			}
+			for (var i = 0; i < 2; ++i) {
+				scheduler.submit("interactive", () -> release.await(5, TimeUnit.SECONDS));
+			}
+			Assertions.assertThrows(RejectedExecutionException.class,
+					() -> scheduler.submit("interactive", () -> null));
+			// early check, before a request body is read
+			Assertions.assertTrue(scheduler.isRejected("interactive"));
+			Assertions.assertFalse(scheduler.isRejected("bulk"));
+			// independent of the interactive queue
+			scheduler.submit("bulk", () -> null).get();
+			Assertions.assertEquals(2,
+					meterRegistry.get("seal.lane.rejected").tag("lane", "interactive").counter().count());
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testWeightedFairShare() throws Exception {
+		try (var scheduler = new LaneScheduler(List.of(new LaneScheduler.Lane("interactive", 3, 1000, 2),
+				new LaneScheduler.Lane("bulk", 1, 1000, 2)), 2, new SimpleMeterRegistry())) {
+			final var blocker = new CountDownLatch(1);
+			// both threads busy, so the queues fill up before the turns are counted
+			final var blocked = List.of(scheduler.submit("bulk", () -> blocker.await(5, TimeUnit.SECONDS)),
+					scheduler.submit("bulk", () -> blocker.await(5, TimeUnit.SECONDS)));
+			final List<Future<Long>> interactive = new ArrayList<>();
+			final List<Future<Long>> bulk = new ArrayList<>();
+			for (var i = 0; i < 40; ++i) {
+				interactive.add(scheduler.submit("interactive", LaneSchedulerTest::work));
+				bulk.add(scheduler.submit("bulk", LaneSchedulerTest::work));
+			}
+			blocker.countDown();
+			for (final Future<Boolean> future : blocked) {
+				future.get();
+			}
+			// 3 interactive tasks per bulk task: when the 20th interactive one starts,
+			// less than 10 bulk ones have started
+			final long interactiveStarted = interactive.get(19).get();
+			var bulkStarted = 0;
+			for (final Future<Long> future : bulk) {
+				if (future.get() < interactiveStarted) {
+					++bulkStarted;
+				}
+			}
+			Assertions.assertTrue(bulkStarted <= 10, "bulk started: " + bulkStarted);
+			Assertions.assertTrue(bulkStarted >= 4, "bulk started: " + bulkStarted);
+		}
+	}
+
+}
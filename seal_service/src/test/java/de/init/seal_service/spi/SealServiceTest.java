@@ -5,9 +5,16 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.ZipInputStream;
+
+import javax.inject.Inject;
 
 import org.apache.pdfbox.io.IOUtils;
 import org.junit.jupiter.api.Assertions;
@@ -22,6 +29,9 @@ import io.restassured.mapper.ObjectMapperType;
 @QuarkusTest
 public class SealServiceTest {
 
+	@Inject
+	AdmissionControl admission;
+
 	@Test
 	public void testHelloEndpoint() {
 		given().when().get("/seal_service/ping").then().statusCode(200).body(is("Hello from RESTEasy Reactive"));
@@ -50,4 +60,99 @@ public class SealServiceTest {
 		Assertions.assertTrue(sealedPdf.length > signatureRequest.pdf.length);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testSealPdfBinary() throws IOException {
+		final byte[] pdf;
+		try (var pdfIs = SealServiceTest.class.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+			pdf = IOUtils.toByteArray(pdfIs);
+		}
+		final String docValues;
+		try (var jsonIs = SealServiceTest.class.getResourceAsStream("/profiles_msgs/ZAB001.json")) {
+			// single line JSON for the header, test values are ASCII only
+			docValues = new ObjectMapper().writeValueAsString(new ObjectMapper().readValue(jsonIs, Map.class));
+		}
+
+		final var sealedPdf = given().contentType("application/pdf").header("X-Seal-Doc-Values", docValues).body(pdf)
+				.when().post("/seal_service/seal").then().statusCode(200)
+				.header("Content-Disposition", equalTo("attachment; filename=\"signed_pdf.pdf\"")).extract()
+				.asByteArray();
+		Assertions.assertTrue(sealedPdf.length > pdf.length);
+	}
+
+	@Test
+	public void testSealPdfMultipart() throws IOException {
+		final byte[] pdf;
+		try (var pdfIs = SealServiceTest.class.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+			pdf = IOUtils.toByteArray(pdfIs);
+		}
+		final byte[] docValues;
+		try (var jsonIs = SealServiceTest.class.getResourceAsStream("/profiles_msgs/ZAB001.json")) {
+			docValues = IOUtils.toByteArray(jsonIs);
+		}
+
+		final var sealedPdf = given().multiPart("pdf", "Zeugnisbewertung.pdf", pdf, "application/pdf")
+				.multiPart("docValues", new String(docValues, StandardCharsets.UTF_8), "text/plain").when()
+				.post("/seal_service/seal").then().statusCode(200)
+				.header("Content-Disposition", equalTo("attachment; filename=\"signed_pdf.pdf\"")).extract()
+				.asByteArray();
+		Assertions.assertTrue(sealedPdf.length > pdf.length);
+	}
+
+	@Test
+	public void testSealPdfBinaryInvalidDocValues() {
+		given().contentType("application/pdf").header("X-Seal-Doc-Values", "{no json").body(new byte[] { 1 }).when()
+				.post("/seal_service/seal").then().statusCode(400);
+	}
+
+	@Test
+	public void testSealPdfOverloaded() {
+		// a seal in progress holding the whole memory budget
+		try (var permit = this.admission.tryAcquire(Long.MAX_VALUE / 8)) {
+			Assertions.assertNotNull(permit);
+			// rejected by its Content-Length, before the (invalid) body is read
+			given().contentType(ContentType.JSON).body("{no json").when().post("/seal_service/seal").then()
+					.statusCode(503);
+		}
+		given().contentType(ContentType.JSON).body("{no json").when().post("/seal_service/seal").then()
+				.statusCode(400);
+	}
+
+	@Test
+	public void testSealPdfBatch() throws IOException {
+		final var signatureRequest = new SealRequest();
+		try (var pdfIs = SealServiceTest.class.getResourceAsStream("/pdf/Zeugnisbewertung_Musterbescheinigung.pdf")) {
+			signatureRequest.pdf = IOUtils.toByteArray(pdfIs);
+		}
+		try (var jsonIs = SealServiceTest.class.getResourceAsStream("/profiles_msgs/ZAB001.json")) {
+			signatureRequest.docValues = new ObjectMapper().readValue(jsonIs, Map.class);
+		}
+		final var brokenRequest = new SealRequest();
+		brokenRequest.pdf = "no pdf".getBytes(StandardCharsets.UTF_8);
+
+		final var objectMapper = new ObjectMapper();
+		final var ndjson = new StringBuilder();
+		ndjson.append(objectMapper.writeValueAsString(signatureRequest)).append('\n');
+		ndjson.append(objectMapper.writeValueAsString(brokenRequest)).append('\n');
+		ndjson.append(objectMapper.writeValueAsString(signatureRequest)).append('\n');
+
+		final var zip = given().contentType("application/x-ndjson").body(ndjson.toString()).when()
+				.post("/seal_service/seal/batch").then().statusCode(200).contentType("application/zip").extract()
+				.asByteArray();
+
+		final Map<String, byte[]> entries = new HashMap<>();
+		try (var zipIs = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (var entry = zipIs.getNextEntry(); entry != null; entry = zipIs.getNextEntry()) {
+				final var bytes = new ByteArrayOutputStream();
+				zipIs.transferTo(bytes);
+				entries.put(entry.getName(), bytes.toByteArray());
+			}
+		}
+		Assertions.assertEquals(4, entries.size(), entries.keySet().toString());
+		Assertions.assertTrue(entries.get("00001.pdf").length > signatureRequest.pdf.length);
+		Assertions.assertTrue(entries.containsKey("00002.error.txt"));
+		Assertions.assertTrue(entries.get("00003.pdf").length > signatureRequest.pdf.length);
+		final var results = new String(entries.get("results.ndjson"), StandardCharsets.UTF_8).lines().toList();
+		Assertions.assertEquals(3, results.size());
+	}
+
+}
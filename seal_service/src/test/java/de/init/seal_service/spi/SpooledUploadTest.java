@@ -0,0 +1,57 @@
+package de.init.seal_service.spi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpooledUploadTest {
+
+	private static final int THRESHOLD = 64 * 1024;
+
+	private static byte[] read(final RandomAccessRead source) throws IOException {
+		final var data = new byte[(int) source.length()];
+		source.readFully(data);
+		return data;
+	}
+
+	private static Set<Path> spooledFiles() throws IOException {
+		try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+			return files.filter(file -> file.getFileName().toString().startsWith("seal-upload-"))
+					.collect(Collectors.toSet());
+		}
+	}
+
+	@Test
+	public void testLargeBodyIsSpooled() throws IOException {
+		final var body = new byte[3 * THRESHOLD + 17];
+		new Random(1).nextBytes(body);
+		final var before = spooledFiles();
+		try (var source = SpooledUpload.read(new ByteArrayInputStream(body), THRESHOLD)) {
+			Assertions.assertInstanceOf(SpooledUpload.class, source);
+			Assertions.assertEquals(1, spooledFiles().stream().filter(file -> !before.contains(file)).count());
+			Assertions.assertArrayEquals(body, read(source));
+		}
+		// the temporary file is deleted with the source
+		Assertions.assertEquals(before, spooledFiles());
+	}
+
+	@Test
+	public void testSmallBodyStaysInMemory() throws IOException {
+		final var body = new byte[THRESHOLD - 1];
+		new Random(2).nextBytes(body);
+		try (var source = SpooledUpload.read(new ByteArrayInputStream(body), THRESHOLD)) {
+			Assertions.assertInstanceOf(RandomAccessReadBuffer.class, source);
+			Assertions.assertArrayEquals(body, read(source));
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package de.init.seal_service.spi;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.init.seal_service.benchmark.Benchmark;
+
+/**
+ * Heap of an upload until PDFBox can parse it, for 1, 10 and 50 MB: base64
+ * JSON body (decoded by Jackson, like the JSON endpoint) compared with the
+ * binary body spooled by {@link SpooledUpload}.
+ */
+@Tag("benchmark")
+public class UploadBenchmark {
+
+	private static final Logger LOGGER = Logger.getLogger(UploadBenchmark.class);
+
+	private static final int THRESHOLD = 1024 * 1024;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private RandomAccessRead readBinary(final byte[] body) throws Exception {
+		return SpooledUpload.read(new ByteArrayInputStream(body), THRESHOLD);
+	}
+
+	private RandomAccessRead readJson(final byte[] body) throws Exception {
+		return new RandomAccessReadBuffer(
+				this.objectMapper.readValue(new ByteArrayInputStream(body), SealRequest.class).pdf);
+	}
+
+	@Test
+	public void benchmarkUpload() throws Exception {
+		for (final int megabytes : new int[] { 1, 10, 50 }) {
+			final var pdf = new byte[megabytes * 1024 * 1024];
+			new Random(megabytes).nextBytes(pdf);
+			final var json = ("{\"pdf\":\"" + Base64.getEncoder().encodeToString(pdf) + "\",\"docValues\":{}}")
+					.getBytes(StandardCharsets.US_ASCII);
+
+			LOGGER.info(megabytes + " MB retained while parsing: JSON " + Benchmark.retainedBytes(() -> readJson(json))
+					+ " bytes, binary " + Benchmark.retainedBytes(() -> readBinary(pdf)) + " bytes");
+			Benchmark.run(megabytes + " MB JSON body", () -> {
+				try (var source = readJson(json)) {
+					Benchmark.consume(source);
+				}
+			});
+			Benchmark.run(megabytes + " MB binary body", () -> {
+				try (var source = readBinary(pdf)) {
+					Benchmark.consume(source);
+				}
+			});
+		}
+	}
+
+}
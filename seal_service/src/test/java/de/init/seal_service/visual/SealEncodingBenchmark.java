@@ -0,0 +1,121 @@
+package de.init.seal_service.visual;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.time.LocalDate;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.xml.bind.JAXBContext;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.init.seal_service.benchmark.Benchmark;
+import de.init.seal_service.visual.profile.Profile;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+/**
+ * Visual seal: profile lookup, encoding and ECDSA signing, each compared with
+ * the per-seal work it replaced.
+ */
+@QuarkusTest
+@Tag("benchmark")
+public class SealEncodingBenchmark {
+
+	private static final String DOC_PROFILE_NR = "ZAB001";
+
+	private static SealEncodingStream encode() {
+		final var encodingStream = new SealEncodingStream();
+		encodingStream.encodeByte((char) 0xDC);
+		encodingStream.encodeByte((char) 0x03);
+		encodingStream.encodeC40("D<<");
+		encodingStream.encodeC40("DEZB03001");
+		encodingStream.encodeDate(LocalDate.of(2023, 6, 1));
+		encodingStream.encodeDate(LocalDate.of(2023, 6, 1));
+		encodingStream.encodeByte((char) 0x01);
+		encodingStream.encodeByte((char) 200);
+		encodingStream.encodeMessageC40((char) 0x00, "ZAB001");
+		encodingStream.encodeMessageC40((char) 0x04, "2023/17856");
+		encodingStream.encodeMessageString((char) 0x05, "Musterfrau");
+		encodingStream.encodeMessageString((char) 0x06, "Erika");
+		encodingStream.encodeMessageDate((char) 0x07, LocalDate.parse("1995-01-01"));
+		encodingStream.encodeMessageString((char) 0x08, "bakalavr miznarodnych vidnosyn");
+		encodingStream.encodeMessageString((char) 0x09,
+				"Die Bewertung entspricht einem deutschen Hochschulabschluss Bachelor-Ebene.");
+		return encodingStream;
+	}
+
+	private static PrivateKey loadPrivateKey() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		final var pin = "123456".toCharArray();
+		final var keystore = KeyStore.getInstance("PKCS12");
+		try (var is = SealEncodingBenchmark.class.getResourceAsStream("/keystore_visual/zab_visual_private.p12")) {
+			keystore.load(is, pin);
+		}
+		return (PrivateKey) keystore.getKey("001", pin);
+	}
+
+	@Inject
+	SealEncoder sealEncoder;
+
+	@Inject
+	SealProfileRegistry sealProfileRegistry;
+
+	@Test
+	public void benchmarkEncode() throws Exception {
+		final Map<String, String> docValues;
+		try (var jsonIs = SealEncodingBenchmark.class.getResourceAsStream("/profiles_msgs/" + DOC_PROFILE_NR + ".json")) {
+			docValues = new ObjectMapper().readValue(jsonIs, new TypeReference<Map<String, String>>() {
+			});
+		}
+		Benchmark.run("encode (registry, pooled signer)", () -> Benchmark.consume(this.sealEncoder.encode(docValues)));
+	}
+
+	@Test
+	public void benchmarkEncodingStream() throws Exception {
+		Assertions.assertArrayEquals(encode().toString().getBytes(StandardCharsets.ISO_8859_1), encode().toByteArray());
+		// the bytes to sign and for the DataMatrix, before via String
+		Benchmark.run("encoding stream, toString().getBytes()",
+				() -> Benchmark.consume(encode().toString().getBytes(StandardCharsets.ISO_8859_1)));
+		Benchmark.run("encoding stream, toByteArray()", () -> Benchmark.consume(encode().toByteArray()));
+	}
+
+	@Test
+	public void benchmarkProfile() throws Exception {
+		final var profileFile = SealEncodingBenchmark.class.getResource("/profiles/" + DOC_PROFILE_NR + ".xml");
+		// before: new JAXB context and unmarshalling per seal
+		Benchmark.run("profile, JAXB per seal", () -> Benchmark.consume(SealProfile.of(DOC_PROFILE_NR,
+				(Profile) JAXBContext.newInstance(Profile.class).createUnmarshaller().unmarshal(profileFile))));
+		Benchmark.run("profile, registry",
+				() -> Benchmark.consume(this.sealProfileRegistry.getProfile(DOC_PROFILE_NR)));
+	}
+
+	@Test
+	public void benchmarkSign() throws Exception {
+		final var privateKey = loadPrivateKey();
+		final var data = encode().toByteArray();
+		final var sealSigner = new SealSigner(privateKey, 16);
+		for (final int threads : new int[] { 1, 2, 4, 8 }) {
+			// before: provider lookup and new SecureRandom per signature
+			Benchmark.run("sign, new Signature per seal", threads, () -> {
+				final var signature = Signature.getInstance(SealSigner.ALGORITHM, "BC");
+				signature.initSign(privateKey, new SecureRandom());
+				signature.update(data);
+				Benchmark.consume(signature.sign());
+			});
+			Benchmark.run("sign, SealSigner pool", threads, () -> Benchmark.consume(sealSigner.sign(data)));
+		}
+	}
+
+}
@@ -1,7 +1,10 @@
 package de.init.seal_service.visual;
 
 import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.Signature;
 import java.time.LocalDate;
+import java.util.HexFormat;
 
 import javax.inject.Inject;
 
@@ -68,4 +71,80 @@ public class SealEncodingStreamTest {
 		Assertions.assertEquals(538, seal.getBytes(StandardCharsets.ISO_8859_1).length);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testGoldenVectorHeaderAndMessages() {
+		final var encodingStream = new SealEncodingStream();
+		encodingStream.encodeByte((char) 0xDC);
+		encodingStream.encodeByte((char) 0x03);
+		encodingStream.encodeC40("D<<");
+		encodingStream.encodeC40("DEZB03001");
+		encodingStream.encodeDate(LocalDate.parse("2023-08-02"));
+		encodingStream.encodeDate(LocalDate.parse("2023-08-02"));
+		encodingStream.encodeByte((char) 0x01);
+		encodingStream.encodeByte((char) 200);
+		encodingStream.encodeMessageC40((char) 0x00, "ZAB001");
+		encodingStream.encodeMessageC40((char) 0x04, "2023/17856");
+		encodingStream.encodeMessageString((char) 0x05, "Musterfrau");
+		encodingStream.encodeMessageDate((char) 0x07, LocalDate.parse("1995-01-01"));
+		encodingStream.encodeMessageString((char) 0x0b, "Test: ÄÖÜäöüß'´`@^°¹³²þ T\nTEST");
+
+		// output of the former StringBuilder based encoding
+		final var expected = "dc036abc6d385e6819a67a68077a680701c80004f60019a6040826272c3e46aafe37050a4d7573746572667261"
+				+ "7507030f711b0b2b546573743a20c384c396c39cc3a4c3b6c3bcc39f27c2b460405ec2b0c2b9c2b3c2b2c3be20540a54455354";
+		Assertions.assertEquals(expected, HexFormat.of().formatHex(encodingStream.toByteArray()));
+		Assertions.assertEquals(expected,
+				HexFormat.of().formatHex(encodingStream.toString().getBytes(StandardCharsets.ISO_8859_1)));
+		Assertions.assertEquals(expected.length() / 2, encodingStream.size());
+	}
+
+	@Test
+	public void testGoldenVectorLengthsAndSignature() {
+		final var encodingStream = new SealEncodingStream();
+		final var bs = new byte[256];
+		for (var i = 0; i <= 255; ++i) {
+			bs[i] = (byte) i;
+		}
+		encodingStream.encodeMessageBytes((char) 0x0a, bs);
+		final var signature = new byte[64];
+		for (var i = 0; i < 64; ++i) {
+			signature[i] = (byte) (0xff - i);
+		}
+		encodingStream.encodeMessageSignature(signature);
+		// C40 with two and one remaining chars, 3 byte TLV length
+		encodingStream.encodeC40("AB");
+		encodingStream.encodeC40("Z");
+		encodingStream.encodeMessageLength(0x10000);
+
+		final var hex = HexFormat.of();
+		final var expected = new StringBuilder("0a820100");
+		for (var i = 0; i <= 255; ++i) {
+			expected.append(hex.toHexDigits((byte) i));
+		}
+		expected.append("ff40");
+		for (var i = 0; i < 64; ++i) {
+			expected.append(hex.toHexDigits((byte) (0xff - i)));
+		}
+		expected.append("59d9").append("fe5b").append("83010000");
+		Assertions.assertEquals(334, encodingStream.size());
+		Assertions.assertEquals(expected.toString(), hex.formatHex(encodingStream.toByteArray()));
+	}
+
+	@Test
+	public void testSignStreamEqualsSignBytes() throws Exception {
+		final var encodingStream = new SealEncodingStream();
+		encodingStream.encodeMessageString((char) 0x05, "Musterfrau");
+		final var signature = this.sealEncoder.sign(encodingStream);
+		Assertions.assertEquals(64, signature.length);
+
+		// verify the signature over the copied bytes
+		final var keystore = KeyStore.getInstance("PKCS12");
+		try (var is = SealEncodingStreamTest.class.getResourceAsStream("/keystore_visual/zab_visual_public.p12")) {
+			keystore.load(is, "123456".toCharArray());
+		}
+		final var verifier = Signature.getInstance("SHA256WITHPLAIN-ECDSA", "BC");
+		verifier.initVerify(keystore.getCertificate("001"));
+		verifier.update(encodingStream.toByteArray());
+		Assertions.assertTrue(verifier.verify(signature));
+	}
+
+}
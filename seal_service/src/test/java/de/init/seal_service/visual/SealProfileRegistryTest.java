@@ -0,0 +1,41 @@
+package de.init.seal_service.visual;
+
+import javax.inject.Inject;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.init.seal_service.visual.profile.TypeType;
+import io.quarkus.test.junit.QuarkusTest;
+
+@QuarkusTest
+public class SealProfileRegistryTest {
+
+	@Inject
+	SealProfileRegistry sealProfileRegistry;
+
+	@Test
+	public void testGetProfile() {
+		final var profile = this.sealProfileRegistry.getProfile("ZAB001");
+
+		Assertions.assertEquals("ZAB001", profile.getDocProfileNr());
+		Assertions.assertEquals(6, profile.getEntries().size());
+		final var first = profile.getEntries().get(0);
+		Assertions.assertEquals("Urkundennummer", first.name());
+		Assertions.assertEquals(4, first.tag());
+		Assertions.assertEquals(TypeType.STRING, first.type());
+		Assertions.assertEquals(15, first.length());
+		Assertions.assertFalse(first.optional());
+		Assertions.assertEquals(-1, profile.getEntries().get(3).length());
+
+		// parsed once, same plan for every seal
+		Assertions.assertSame(profile, this.sealProfileRegistry.getProfile("ZAB001"));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> profile.getEntries().clear());
+	}
+
+	@Test
+	public void testGetUnknownProfile() {
+		Assertions.assertThrows(RuntimeException.class, () -> this.sealProfileRegistry.getProfile("XYZ999"));
+	}
+
+}
@@ -0,0 +1,108 @@
+package de.init.seal_service.visual;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class SealSignerTest {
+
+	private static final int POOL_SIZE = 4;
+
+	private static final int THREADS = 8;
+
+	private static final int SIGNATURES = 200;
+
+	private static PrivateKey privateKey;
+
+	private static Certificate certificate;
+
+	@BeforeAll
+	public static void loadKeys() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		final var pin = "123456".toCharArray();
+		final var privateKeystore = KeyStore.getInstance("PKCS12");
+		try (var is = SealSignerTest.class.getResourceAsStream("/keystore_visual/zab_visual_private.p12")) {
+			privateKeystore.load(is, pin);
+		}
+		privateKey = (PrivateKey) privateKeystore.getKey("001", pin);
+		final var publicKeystore = KeyStore.getInstance("PKCS12");
+		try (var is = SealSignerTest.class.getResourceAsStream("/keystore_visual/zab_visual_public.p12")) {
+			publicKeystore.load(is, pin);
+		}
+		certificate = publicKeystore.getCertificate("001");
+	}
+
+	private static boolean verify(final byte[] data, final byte[] signature) throws Exception {
+		final var verifier = Signature.getInstance(SealSigner.ALGORITHM, "BC");
+		verifier.initVerify(certificate);
+		verifier.update(data);
+		return verifier.verify(signature);
+	}
+
+	@Test
+	public void testConcurrentSign() throws Exception {
+		final var sealSigner = new SealSigner(privateKey, POOL_SIZE);
+		final var executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final List<Future<Boolean>> futures = new ArrayList<>();
+			for (var i = 0; i < SIGNATURES; ++i) {
+				final var data = ("seal " + i).getBytes(StandardCharsets.UTF_8);
+				futures.add(executor.submit(() -> {
+					final var signature = sealSigner.sign(data);
+					return signature.length == 64 && verify(data, signature);
+				}));
+			}
+			for (final Future<Boolean> future : futures) {
+				Assertions.assertTrue(future.get(30, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		// instances are reused, but no more than the pool size are kept
+		Assertions.assertTrue(sealSigner.getIdle() > 0 && sealSigner.getIdle() <= POOL_SIZE,
+				"idle: " + sealSigner.getIdle());
+	}
+
+	@Test
+	public void testSignEncodingStream() throws Exception {
+		final var sealSigner = new SealSigner(privateKey, POOL_SIZE);
+		final var encodingStream = new SealEncodingStream();
+		encodingStream.encodeMessageString((char) 0x05, "Musterfrau");
+		final var signature = sealSigner.sign(encodingStream);
+		Assertions.assertTrue(verify(encodingStream.toByteArray(), signature));
+		// randomized ECDSA
+		Assertions.assertFalse(Arrays.equals(signature, sealSigner.sign(encodingStream)));
+	}
+
+	@Test
+	public void testDeterministicSign() throws Exception {
+		final var sealSigner = new SealSigner(privateKey, POOL_SIZE, SealSigner.Mode.DETERMINISTIC);
+		final var data = "Musterfrau".getBytes(StandardCharsets.UTF_8);
+		final var signature = sealSigner.sign(data);
+		Assertions.assertEquals(64, signature.length);
+		Assertions.assertTrue(verify(data, signature));
+		// same data, same signature, also for pooled instances
+		for (var i = 0; i < 3; ++i) {
+			Assertions.assertArrayEquals(signature, sealSigner.sign(data));
+		}
+		final var otherData = "Erika".getBytes(StandardCharsets.UTF_8);
+		final var otherSignature = sealSigner.sign(otherData);
+		Assertions.assertFalse(Arrays.equals(signature, otherSignature));
+		Assertions.assertTrue(verify(otherData, otherSignature));
+	}
+
+}